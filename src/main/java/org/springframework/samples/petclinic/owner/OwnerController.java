@@ -15,6 +15,9 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.samples.petclinic.utility.PrefixIndex;
+import org.springframework.samples.petclinic.utility.UnitOfWork;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -24,10 +27,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.validation.Valid;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -41,13 +48,26 @@ class OwnerController {
 
 	private static final String VIEWS_OWNER_CREATE_OR_UPDATE_FORM = "owners/createOrUpdateOwnerForm";
 
+	static final int DEFAULT_PAGE_SIZE = 20;
+
+	static final int MAX_PAGE_SIZE = 100;
+
+	static final int MAX_SUGGESTIONS = 25;
+
 	private final OwnerRepository owners;
 
 	private VisitRepository visits;
 
-	public OwnerController(OwnerRepository clinicService, VisitRepository visits) {
+	private final OwnerService ownerService;
+
+	private final OwnerNameIndex ownerNames;
+
+	public OwnerController(OwnerRepository clinicService, VisitRepository visits, OwnerService ownerService,
+			OwnerNameIndex ownerNames) {
 		this.owners = clinicService;
 		this.visits = visits;
+		this.ownerService = ownerService;
+		this.ownerNames = ownerNames;
 	}
 
 	@InitBinder
@@ -68,7 +88,7 @@ class OwnerController {
 			return VIEWS_OWNER_CREATE_OR_UPDATE_FORM;
 		}
 		else {
-			this.owners.save(owner);
+			this.ownerService.saveOwner(owner);
 			return "redirect:/owners/" + owner.getId();
 		}
 	}
@@ -79,36 +99,81 @@ class OwnerController {
 		return "owners/findOwners";
 	}
 
+	/**
+	 * Finds the owners by last name prefix, one keyset page at a time: a page is asked for
+	 * by the last name and id of the last owner of the previous page, and holds at most
+	 * {@value #MAX_PAGE_SIZE} owners.
+	 */
 	@GetMapping("/owners")
-	public String processFindForm(Owner owner, BindingResult result, Map<String, Object> model) {
+	public String processFindForm(Owner owner, BindingResult result,
+			@RequestParam(name = "afterLastName", required = false) String afterLastName,
+			@RequestParam(name = "afterId", defaultValue = "0") int afterId,
+			@RequestParam(name = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size, Map<String, Object> model) {
 
 		// allow parameterless GET request for /owners to return all records
 		if (owner.getLastName() == null) {
 			owner.setLastName(""); // empty string signifies broadest possible search
 		}
 
-		// find owners by last name
-		Collection<Owner> results = this.owners.findByLastName(owner.getLastName());
-		if (results.isEmpty()) {
-			// no owners found
-			result.rejectValue("lastName", "notFound", "not found");
-			return "owners/findOwners";
+		if (afterLastName == null) {
+			// first page: two matches at most tell none, one and many apart
+			List<Integer> probe = this.owners.findIdsByLastName(owner.getLastName(), "", 0, PageRequest.of(0, 2));
+			if (probe.isEmpty()) {
+				// no owners found
+				result.rejectValue("lastName", "notFound", "not found");
+				return "owners/findOwners";
+			}
+			else if (probe.size() == 1) {
+				// 1 owner found
+				return "redirect:/owners/" + probe.get(0);
+			}
 		}
-		else if (results.size() == 1) {
-			// 1 owner found
-			owner = results.iterator().next();
-			return "redirect:/owners/" + owner.getId();
+
+		// multiple owners found, one more than a page telling whether a next page follows
+		int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		List<Integer> ids = this.owners.findIdsByLastName(owner.getLastName(),
+				(afterLastName != null) ? afterLastName : "", afterId, PageRequest.of(0, pageSize + 1));
+		boolean hasNext = ids.size() > pageSize;
+		if (hasNext) {
+			ids = ids.subList(0, pageSize);
 		}
-		else {
-			// multiple owners found
-			model.put("selections", results);
-			return "owners/ownersList";
+		List<Owner> selections = new ArrayList<>(ids.size());
+		if (!ids.isEmpty()) {
+			Map<Integer, Owner> found = new HashMap<>();
+			for (Owner selection : this.owners.findAllById(ids)) {
+				found.put(selection.getId(), selection);
+			}
+			for (Integer id : ids) {
+				Owner selection = found.get(id);
+				if (selection != null) {
+					selections.add(selection);
+				}
+			}
 		}
+		model.put("selections", selections);
+		model.put("size", pageSize);
+		if (hasNext && !selections.isEmpty()) {
+			Owner last = selections.get(selections.size() - 1);
+			model.put("nextLastName", last.getLastName());
+			model.put("nextId", last.getId());
+		}
+		return "owners/ownersList";
+	}
+
+	/**
+	 * Suggests owners for a last name prefix from the in-memory {@link OwnerNameIndex},
+	 * without querying the data store.
+	 * @return the ids and full names of at most {@value #MAX_SUGGESTIONS} owners, as JSON
+	 */
+	@GetMapping("/owners/names")
+	public @ResponseBody List<PrefixIndex.Match> findOwnerNames(@RequestParam(name = "prefix") String prefix,
+			@RequestParam(name = "limit", defaultValue = "10") int limit) {
+		return this.ownerNames.find(prefix, Math.min(limit, MAX_SUGGESTIONS));
 	}
 
 	@GetMapping("/owners/{ownerId}/edit")
 	public String initUpdateOwnerForm(@PathVariable("ownerId") int ownerId, Model model) {
-		Owner owner = this.owners.findById(ownerId);
+		Owner owner = UnitOfWork.find(Owner.class, ownerId, this.owners::findById);
 		model.addAttribute(owner);
 		return VIEWS_OWNER_CREATE_OR_UPDATE_FORM;
 	}
@@ -121,7 +186,7 @@ class OwnerController {
 		}
 		else {
 			owner.setId(ownerId);
-			this.owners.save(owner);
+			this.ownerService.saveOwner(owner);
 			return "redirect:/owners/{ownerId}";
 		}
 	}
@@ -134,7 +199,7 @@ class OwnerController {
 	@GetMapping("/owners/{ownerId}")
 	public ModelAndView showOwner(@PathVariable("ownerId") int ownerId) {
 		ModelAndView mav = new ModelAndView("owners/ownerDetails");
-		Owner owner = this.owners.findById(ownerId);
+		Owner owner = UnitOfWork.find(Owner.class, ownerId, this.owners::findById);
 		for (Pet pet : owner.getPets()) {
 			pet.setVisitsInternal(visits.findByPetId(pet.getId()));
 		}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.samples.petclinic.utility.PrefixIndex;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The last names of all owners in memory, for the type-ahead of the owner search: a
+ * {@link PrefixIndex} of the last names to the owner ids, labelled with the full names.
+ * The index is built on startup by streaming the names from the owners table, and kept
+ * current by {@link #update(Owner)}, which {@link OwnerService#saveOwner(Owner)} calls
+ * after every save of an owner. Lookups read the current index without locking; until it
+ * is built, they find nothing.
+ *
+ * @see OwnerController#findOwnerNames(String, int)
+ */
+@Component
+public class OwnerNameIndex implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(OwnerNameIndex.class);
+
+	private final OwnerRepository owners;
+
+	private final Object monitor = new Object();
+
+	private volatile PrefixIndex index = PrefixIndex.EMPTY;
+
+	/** The owners saved while the index is built, applied to it afterwards. */
+	private Map<Integer, Owner> savedWhileBuilding;
+
+	public OwnerNameIndex(OwnerRepository owners) {
+		this.owners = owners;
+	}
+
+	/**
+	 * Builds the index from the owners table, in the transaction the stream of names
+	 * needs.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void run(ApplicationArguments args) {
+		long startedAt = System.nanoTime();
+		synchronized (monitor) {
+			savedWhileBuilding = new HashMap<>();
+		}
+		PrefixIndex.Builder builder = PrefixIndex.builder();
+		try (Stream<Object[]> names = owners.streamNames()) {
+			names.forEach(name -> builder.add((Integer) name[0], (String) name[2],
+					label((String) name[1], (String) name[2])));
+		}
+		PrefixIndex built = builder.build();
+		synchronized (monitor) {
+			for (Owner owner : savedWhileBuilding.values()) {
+				built = with(built, owner);
+			}
+			savedWhileBuilding = null;
+			index = built;
+		}
+		log.info("Indexed {} owner names in {} ms", built.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+	}
+
+	/**
+	 * Indexes the current last name of a saved owner.
+	 */
+	public void update(Owner owner) {
+		if (owner.getId() == null) {
+			return;
+		}
+		synchronized (monitor) {
+			index = with(index, owner);
+			if (savedWhileBuilding != null) {
+				savedWhileBuilding.put(owner.getId(), owner);
+			}
+		}
+	}
+
+	/**
+	 * Returns the first owners whose last name starts with a prefix, ignoring case and
+	 * accents, in the order of their last names.
+	 */
+	public List<PrefixIndex.Match> find(String prefix, int limit) {
+		return index.find(prefix, limit);
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	private static PrefixIndex with(PrefixIndex index, Owner owner) {
+		return index.with(owner.getId(), owner.getLastName(), label(owner.getFirstName(), owner.getLastName()));
+	}
+
+	private static String label(String firstName, String lastName) {
+		return (firstName != null) ? firstName + " " + lastName : lastName;
+	}
+
+}
@@ -16,8 +16,17 @@
 package org.springframework.samples.petclinic.owner;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
@@ -33,6 +42,7 @@ import org.springframework.transaction.annotation.Transactional;
  * @author Sam Brannen
  * @author Michael Isvy
  */
+@CacheConfig(cacheNames = "owners", cacheManager = "timedCacheManager")
 public interface OwnerRepository extends Repository<Owner, Integer> {
 
 	/**
@@ -46,6 +56,33 @@ public interface OwnerRepository extends Repository<Owner, Integer> {
 	@Transactional(readOnly = true)
 	Collection<Owner> findByLastName(@Param("lastName") String lastName);
 
+	/**
+	 * Retrieve one page of the ids of the {@link Owner}s whose last name <i>starts</i>
+	 * with the given name, ordered by last name and id. The page starts after the given
+	 * last name and id, the last of the previous page, so that the data store seeks to it
+	 * in the index on last name and id however deep it lies, instead of reading and
+	 * skipping the owners before it. The first page starts after the empty last name.
+	 * @param lastName Value to search for
+	 * @param afterLastName the last name of the last owner of the previous page
+	 * @param afterId the id of the last owner of the previous page
+	 * @param pageable the size of the page
+	 * @return the ids of the page (or an empty List if none found)
+	 */
+	@Query("SELECT owner.id FROM Owner owner WHERE owner.lastName LIKE :lastName% AND (owner.lastName > :afterLastName "
+			+ "OR (owner.lastName = :afterLastName AND owner.id > :afterId)) ORDER BY owner.lastName, owner.id")
+	@Transactional(readOnly = true)
+	List<Integer> findIdsByLastName(@Param("lastName") String lastName, @Param("afterLastName") String afterLastName,
+			@Param("afterId") int afterId, Pageable pageable);
+
+	/**
+	 * Retrieve {@link Owner}s with their pets from the data store by id.
+	 * @param ids the ids to search for
+	 * @return the {@link Owner}s found, in no particular order
+	 */
+	@Query("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.id IN :ids")
+	@Transactional(readOnly = true)
+	List<Owner> findAllById(@Param("ids") Collection<Integer> ids);
+
 	/**
 	 * Retrieve an {@link Owner} from the data store by id.
 	 * @param id the id to search for
@@ -53,12 +90,32 @@ public interface OwnerRepository extends Repository<Owner, Integer> {
 	 */
 	@Query("SELECT owner FROM Owner owner left join fetch owner.pets WHERE owner.id =:id")
 	@Transactional(readOnly = true)
+	@Cacheable
 	Owner findById(@Param("id") Integer id);
 
+	/**
+	 * Retrieve the ids of all {@link Owner}s from the data store.
+	 * @return the ids, in no particular order
+	 */
+	@Query("SELECT owner.id FROM Owner owner")
+	@Transactional(readOnly = true)
+	List<Integer> findAllIds();
+
+	/**
+	 * Stream the id, first name and last name of every {@link Owner}, without loading the
+	 * owners, fetched from the data store in batches. The stream must be consumed and
+	 * closed within a transaction.
+	 * @return the rows, in no particular order
+	 */
+	@Query("SELECT owner.id, owner.firstName, owner.lastName FROM Owner owner")
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	Stream<Object[]> streamNames();
+
 	/**
 	 * Save an {@link Owner} to the data store, either inserting or updating it.
 	 * @param owner the {@link Owner} to save
 	 */
+	@CacheEvict(key = "#p0.id")
 	void save(Owner owner);
 
 }
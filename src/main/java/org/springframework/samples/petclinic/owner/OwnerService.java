@@ -0,0 +1,30 @@
+package org.springframework.samples.petclinic.owner;
+
+import org.springframework.samples.petclinic.utility.UnitOfWork;
+import org.springframework.stereotype.Service;
+
+/**
+ * Saves owners together with what is derived from them: the request's unit of work and
+ * the {@link OwnerNameIndex}, so that no caller of the repository leaves either stale.
+ */
+@Service
+public class OwnerService {
+
+	private final OwnerRepository owners;
+
+	private final OwnerNameIndex ownerNames;
+
+	public OwnerService(OwnerRepository owners, OwnerNameIndex ownerNames) {
+		this.owners = owners;
+		this.ownerNames = ownerNames;
+	}
+
+	public void saveOwner(Owner owner) {
+		this.owners.save(owner);
+		this.ownerNames.update(owner);
+		if (owner.getId() != null) {
+			UnitOfWork.evict(Owner.class, owner.getId());
+		}
+	}
+
+}
@@ -31,6 +31,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.Version;
 
 import org.springframework.beans.support.MutableSortDefinition;
 import org.springframework.beans.support.PropertyComparator;
@@ -66,6 +67,10 @@ public class Pet extends NamedEntity {
 	@Transient
 	private Set<Visit> visits = new LinkedHashSet<>();
 
+	@Version
+	@Column(name = "version")
+	private int version;
+
 	public void setBirthDate(LocalDate birthDate) {
 		this.birthDate = birthDate;
 	}
@@ -74,6 +79,18 @@ public class Pet extends NamedEntity {
 		return this.birthDate;
 	}
 
+	/**
+	 * Returns the optimistic lock version, incremented by every update of this pet.
+	 * Caches use it to tell newer copies from older ones.
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
 	public PetType getType() {
 		return this.type;
 	}
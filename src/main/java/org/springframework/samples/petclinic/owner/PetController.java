@@ -15,9 +15,11 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.util.StringUtils;
+import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
@@ -105,10 +107,20 @@ class PetController {
 			model.put("pet", pet);
 			return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
 		}
-		else {
+		try {
 			petService.savePet(pet, owner);
-			return "redirect:/owners/{ownerId}";
 		}
+		catch (OptimisticLockingFailureException ex) {
+			// the form was read before another update: show the pet as it is now
+			Pet current = petService.findPet(pet.getId());
+			BindingResult conflict = new BeanPropertyBindingResult(current, "pet");
+			conflict.reject("concurrentModification",
+					"Someone else has changed this meanwhile; the current details are shown below");
+			model.put("pet", current);
+			model.put(BindingResult.MODEL_KEY_PREFIX + "pet", conflict);
+			return VIEWS_PETS_CREATE_OR_UPDATE_FORM;
+		}
+		return "redirect:/owners/{ownerId}";
 	}
 
 }
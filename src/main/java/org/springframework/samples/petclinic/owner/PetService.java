@@ -2,31 +2,64 @@ package org.springframework.samples.petclinic.owner;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.samples.petclinic.utility.IdFilter;
 import org.springframework.samples.petclinic.utility.PetTimedCache;
+import org.springframework.samples.petclinic.utility.UnitOfWork;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PetService {
 
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+
 	private final PetTimedCache pets;
 
 	private final OwnerRepository owners;
 
 	private final Logger log;
 
+	private final IdFilter petIds;
+
+	private final IdFilter ownerIds;
+
 	@Autowired
 	public PetService(
 		PetTimedCache pets,
 		OwnerRepository owners,
+		PetRepository petRepository,
 		Logger criticalLogger) {
+		this(pets, owners, criticalLogger, IdFilter.of(petRepository.findAllIds(), FALSE_POSITIVE_RATE),
+			IdFilter.of(owners.findAllIds(), FALSE_POSITIVE_RATE));
+	}
+
+	public PetService(
+		PetTimedCache pets,
+		OwnerRepository owners,
+		Logger criticalLogger) {
+		this(pets, owners, criticalLogger, IdFilter.acceptingAll(), IdFilter.acceptingAll());
+	}
+
+	private PetService(
+		PetTimedCache pets,
+		OwnerRepository owners,
+		Logger criticalLogger,
+		IdFilter petIds,
+		IdFilter ownerIds) {
 		this.pets = pets;
 		this.owners = owners;
 		this.log = criticalLogger;
+		this.petIds = petIds;
+		this.ownerIds = ownerIds;
 	}
 
 	public Owner findOwner(int ownerId) {
 		log.info("find owner {}", ownerId);
-		return this.owners.findById(ownerId);
+		if (!ownerIds.mightExist(ownerId)) {
+			return null;
+		}
+		return UnitOfWork.find(Owner.class, ownerId, this.owners::findById);
 	}
 
 	public Pet newPet(Owner owner) {
@@ -38,13 +71,28 @@ public class PetService {
 
 	public Pet findPet(int petId) {
 		log.info("find pet by id {}", petId);
-		return this.pets.get(petId);
+		if (!petIds.mightExist(petId)) {
+			return null;
+		}
+		return UnitOfWork.find(Pet.class, petId, this.pets::get);
 	}
 
+	@CacheEvict(cacheNames = "owners", cacheManager = "timedCacheManager", key = "#p1.id")
 	public void savePet(Pet pet, Owner owner) {
 		log.info("save pet {}", pet.getId());
 		owner.addPet(pet);
-		this.pets.save(pet);
+		try {
+			this.pets.save(pet);
+		}
+		catch (OptimisticLockingFailureException ex) {
+			UnitOfWork.evict(Pet.class, pet.getId());
+			throw ex;
+		}
+		UnitOfWork.evict(Owner.class, owner.getId());
+		if (pet.getId() != null) {
+			UnitOfWork.evict(Pet.class, pet.getId());
+			this.petIds.add(pet.getId());
+		}
 	}
 
 }
@@ -16,27 +16,51 @@
 
 package org.springframework.samples.petclinic.system;
 
+import javax.cache.Caching;
 import javax.cache.configuration.MutableConfiguration;
 
-import org.springframework.boot.autoconfigure.cache.JCacheManagerCustomizer;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.jcache.JCacheCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.samples.petclinic.utility.CacheScheduler;
+import org.springframework.samples.petclinic.utility.TimedCacheManager;
+import org.springframework.samples.petclinic.utility.TimedCachesProperties;
 
 /**
- * Cache configuration intended for caches providing the JCache API. This configuration
- * creates the used cache for the application and enables statistics that become
- * accessible via JMX.
+ * Cache configuration with two cache managers. The primary one provides the JCache API:
+ * this configuration creates the used cache for the application and enables statistics
+ * that become accessible via JMX. The {@link TimedCacheManager} backs the entity caches
+ * that methods select with {@code cacheManager = "timedCacheManager"}; its caches share
+ * the expiry scheduler of the pet cache.
+ * <p>
+ * Spring Boot only auto-configures a cache manager when none is defined, so the JCache
+ * one is declared here as well.
  */
 @Configuration(proxyBeanMethods = false)
 @EnableCaching
 class CacheConfiguration {
 
 	@Bean
-	public JCacheManagerCustomizer petclinicCacheConfigurationCustomizer() {
-		return cm -> {
-			cm.createCache("vets", cacheConfiguration());
-		};
+	public javax.cache.CacheManager jCacheManager() {
+		javax.cache.CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+		// the default manager is shared by the application contexts of the JVM
+		if (cacheManager.getCache("vets") == null) {
+			cacheManager.createCache("vets", cacheConfiguration());
+		}
+		return cacheManager;
+	}
+
+	@Bean
+	@Primary
+	public JCacheCacheManager cacheManager(javax.cache.CacheManager jCacheManager) {
+		return new JCacheCacheManager(jCacheManager);
+	}
+
+	@Bean
+	public TimedCacheManager timedCacheManager(TimedCachesProperties properties, CacheScheduler scheduler) {
+		return new TimedCacheManager(properties, scheduler);
 	}
 
 	/**
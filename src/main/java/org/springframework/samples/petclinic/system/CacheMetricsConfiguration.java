@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.samples.petclinic.utility.PetTimedCache;
+import org.springframework.samples.petclinic.utility.TimedCacheMetrics;
+import org.springframework.samples.petclinic.utility.TimedSpringCache;
+
+/**
+ * Publishes the pet cache statistics through Micrometer, next to the statistics Spring
+ * Boot already binds for the caches of the cache managers, and exposes all of them per
+ * cache through the {@link CacheStatisticsEndpoint}. Boot binds the timed caches of a
+ * cache manager through the {@link CacheMeterBinderProvider} declared here.
+ */
+@Configuration(proxyBeanMethods = false)
+class CacheMetricsConfiguration {
+
+	private static final int HOT_KEYS = 10;
+
+	@Bean
+	public TimedCacheMetrics petTimedCacheMetrics(PetTimedCache pets) {
+		return new TimedCacheMetrics(pets, HOT_KEYS);
+	}
+
+	@Bean
+	public CacheMeterBinderProvider<TimedSpringCache> timedCacheMeterBinderProvider() {
+		return (cache, tags) -> new TimedCacheMetrics(cache.getNativeCache(), cache.getName(), tags, HOT_KEYS);
+	}
+
+	@Bean
+	public CacheStatisticsEndpoint cacheStatisticsEndpoint(MeterRegistry registry) {
+		return new CacheStatisticsEndpoint(registry);
+	}
+
+}
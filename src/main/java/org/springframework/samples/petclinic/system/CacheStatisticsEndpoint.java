@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+/**
+ * Actuator endpoint at {@code /actuator/cachestats} that groups the {@code cache.*}
+ * meters by cache, so the statistics of every cache, whether the pet cache or a JCache
+ * cache such as {@code vets}, can be read in one place.
+ * <p>
+ * Each meter is listed under its name and the tags that are not common to the cache,
+ * e.g. {@code cache.gets[result=hit]}; meters with several statistics, such as timers,
+ * list one value per statistic.
+ */
+@Endpoint(id = "cachestats")
+public class CacheStatisticsEndpoint {
+
+	private static final String CACHE_TAG = "cache";
+
+	private static final String CACHE_MANAGER_TAG = "cacheManager";
+
+	private static final String NAME_TAG = "name";
+
+	private final MeterRegistry registry;
+
+	public CacheStatisticsEndpoint(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@ReadOperation
+	public Map<String, Map<String, Double>> caches() {
+		Map<String, Map<String, Double>> caches = new TreeMap<>();
+		for (Meter meter : registry.getMeters()) {
+			String cache = meter.getId().getTag(CACHE_TAG);
+			if ((cache != null) && meter.getId().getName().startsWith("cache.")) {
+				addStatistics(caches.computeIfAbsent(cache, c -> new TreeMap<>()), meter);
+			}
+		}
+		return caches;
+	}
+
+	@ReadOperation
+	public Map<String, Double> cache(@Selector String cache) {
+		return caches().get(cache);
+	}
+
+	private static void addStatistics(Map<String, Double> statistics, Meter meter) {
+		String key = meter.getId().getName() + describe(meter.getId().getTags());
+		Iterable<Measurement> measurements = meter.measure();
+		long count = StreamSupport.stream(measurements.spliterator(), false).count();
+		for (Measurement measurement : measurements) {
+			double value = measurement.getValue();
+			if (!Double.isNaN(value)) {
+				statistics.put((count == 1) ? key : key + "." + measurement.getStatistic().getTagValueRepresentation(),
+						value);
+			}
+		}
+	}
+
+	private static String describe(Iterable<Tag> tags) {
+		String described = StreamSupport.stream(tags.spliterator(), false)
+				.filter(tag -> !CACHE_TAG.equals(tag.getKey()) && !CACHE_MANAGER_TAG.equals(tag.getKey())
+						&& !NAME_TAG.equals(tag.getKey()))
+				.map(tag -> tag.getKey() + "=" + tag.getValue()).collect(Collectors.joining(","));
+		return described.isEmpty() ? "" : "[" + described + "]";
+	}
+
+}
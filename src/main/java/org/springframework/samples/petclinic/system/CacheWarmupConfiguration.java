@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.samples.petclinic.utility.CacheScheduler;
+import org.springframework.samples.petclinic.utility.CacheWarmup;
+import org.springframework.samples.petclinic.utility.PetTimedCache;
+import org.springframework.samples.petclinic.utility.TimedCachesProperties;
+import org.springframework.samples.petclinic.vet.VetRepository;
+
+/**
+ * Warms the pet cache up from its saved hot set and preloads the {@code vets} cache on
+ * startup, before the application reports itself ready. The warm-up progress is shown by
+ * the {@code cacheWarmup} health indicator, which is part of the readiness group.
+ */
+@Configuration(proxyBeanMethods = false)
+class CacheWarmupConfiguration {
+
+	@Bean
+	public CacheWarmup cacheWarmup(TimedCachesProperties properties, CacheScheduler scheduler, PetTimedCache pets,
+			VetRepository vets) {
+		return new CacheWarmup(properties.getWarmup(), scheduler).cache(pets, Integer::valueOf).preload("vets",
+				vets::findAll);
+	}
+
+	@Bean
+	public CacheWarmupHealthIndicator cacheWarmupHealthIndicator(CacheWarmup cacheWarmup) {
+		return new CacheWarmupHealthIndicator(cacheWarmup);
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.samples.petclinic.utility.CacheWarmup;
+
+/**
+ * Reports the progress of the {@link CacheWarmup} under {@code /actuator/health}, out of
+ * service until the warm-up is over.
+ */
+public class CacheWarmupHealthIndicator implements HealthIndicator {
+
+	private final CacheWarmup warmup;
+
+	public CacheWarmupHealthIndicator(CacheWarmup warmup) {
+		this.warmup = warmup;
+	}
+
+	@Override
+	public Health health() {
+		CacheWarmup.State state = warmup.getState();
+		Health.Builder builder = ((state == CacheWarmup.State.PENDING) || (state == CacheWarmup.State.WARMING))
+				? Health.outOfService() : Health.up();
+		return builder.withDetail("state", state).withDetail("total", warmup.getTotal())
+				.withDetail("loaded", warmup.getLoaded()).withDetail("failed", warmup.getFailed())
+				.withDetail("elapsed", warmup.getElapsed().toMillis() + "ms").build();
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.samples.petclinic.utility.UnitOfWork;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Gives every web request a {@link UnitOfWork}, so that the owners and pets it looks up
+ * several times, such as the owner of the pet forms, are loaded once per request.
+ * Hibernate reports every SQL statement it prepares to the unit of work of the current
+ * request. Requests handled without a meter registry, as in web slice tests, are not
+ * measured.
+ */
+@Configuration(proxyBeanMethods = false)
+class UnitOfWorkConfiguration implements WebMvcConfigurer {
+
+	private final ObjectProvider<MeterRegistry> registry;
+
+	UnitOfWorkConfiguration(ObjectProvider<MeterRegistry> registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new UnitOfWorkInterceptor(this.registry.getIfAvailable()));
+	}
+
+	@Bean
+	HibernatePropertiesCustomizer unitOfWorkStatementCounter() {
+		return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new UnitOfWorkStatementCounter());
+	}
+
+}
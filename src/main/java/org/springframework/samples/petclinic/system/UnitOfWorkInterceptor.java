@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.samples.petclinic.utility.UnitOfWork;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Binds a {@link UnitOfWork} to every handled request, and records its counts once the
+ * request completed as distribution summaries tagged with the URI pattern of the
+ * handler: {@code unit.of.work.statements}, the SQL statements the request ran,
+ * {@code unit.of.work.loads}, its lookups that called a loader, cached or not, and
+ * {@code unit.of.work.hits}, its lookups that the unit of work answered. Comparing the
+ * statements per URI before and after a change measures the queries it saves.
+ */
+class UnitOfWorkInterceptor implements HandlerInterceptor {
+
+	private static final Logger log = LoggerFactory.getLogger(UnitOfWorkInterceptor.class);
+
+	private final MeterRegistry registry;
+
+	UnitOfWorkInterceptor(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (request.getAttribute(UnitOfWork.ATTRIBUTE) == null) {
+			request.setAttribute(UnitOfWork.ATTRIBUTE, new UnitOfWork());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		UnitOfWork unitOfWork = (UnitOfWork) request.getAttribute(UnitOfWork.ATTRIBUTE);
+		if (unitOfWork == null) {
+			return;
+		}
+		request.removeAttribute(UnitOfWork.ATTRIBUTE);
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		String uri = (pattern != null) ? pattern.toString() : "UNKNOWN";
+		if (log.isDebugEnabled()) {
+			log.debug("unit-of-work uri={} statements={} loads={} hits={}", uri, unitOfWork.getStatements(),
+					unitOfWork.getLoads(), unitOfWork.getHits());
+		}
+		if (registry != null) {
+			DistributionSummary.builder("unit.of.work.statements").tag("uri", uri)
+					.description("The SQL statements run per request").register(registry)
+					.record(unitOfWork.getStatements());
+			DistributionSummary.builder("unit.of.work.loads").tag("uri", uri)
+					.description("The entity lookups per request that called a loader, which may hit a cache")
+					.register(registry).record(unitOfWork.getLoads());
+			DistributionSummary.builder("unit.of.work.hits").tag("uri", uri)
+					.description("The entity lookups per request served without a load").register(registry)
+					.record(unitOfWork.getHits());
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.system;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.samples.petclinic.utility.UnitOfWork;
+
+/**
+ * Counts the SQL statements Hibernate prepares in the {@link UnitOfWork} of the current
+ * request, leaving them unchanged. Statements run outside of a request, such as those of
+ * the cache warm-up, are not counted.
+ */
+class UnitOfWorkStatementCounter implements StatementInspector {
+
+	@Override
+	public String inspect(String sql) {
+		UnitOfWork unitOfWork = UnitOfWork.current();
+		if (unitOfWork != null) {
+			unitOfWork.recordStatement();
+		}
+		return sql;
+	}
+
+}
@@ -0,0 +1,93 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * An intrusive doubly linked deque of cache entries ordered from least to most recently
+ * used. The links live in the entries themselves, so moving an entry to the back is O(1)
+ * and allocation free.
+ * <p>
+ * This class is not thread-safe; the owning cache guards it with its eviction lock.
+ */
+final class AccessOrderDeque<E extends AccessOrderDeque.Linked<E>> {
+
+	private E first;
+
+	private E last;
+
+	boolean isEmpty() {
+		return first == null;
+	}
+
+	E peekFirst() {
+		return first;
+	}
+
+	boolean contains(E e) {
+		return (e.getPreviousInAccessOrder() != null) || (e.getNextInAccessOrder() != null) || (e == first);
+	}
+
+	void addLast(E e) {
+		E l = last;
+		last = e;
+		if (l == null) {
+			first = e;
+		}
+		else {
+			l.setNextInAccessOrder(e);
+			e.setPreviousInAccessOrder(l);
+		}
+	}
+
+	void moveToBack(E e) {
+		if (e != last) {
+			unlink(e);
+			addLast(e);
+		}
+	}
+
+	void remove(E e) {
+		if (contains(e)) {
+			unlink(e);
+		}
+	}
+
+	private void unlink(E e) {
+		E prev = e.getPreviousInAccessOrder();
+		E next = e.getNextInAccessOrder();
+		if (prev == null) {
+			first = next;
+		}
+		else {
+			prev.setNextInAccessOrder(next);
+			e.setPreviousInAccessOrder(null);
+		}
+		if (next == null) {
+			last = prev;
+		}
+		else {
+			next.setPreviousInAccessOrder(prev);
+			e.setNextInAccessOrder(null);
+		}
+	}
+
+	void clear() {
+		while (first != null) {
+			unlink(first);
+		}
+	}
+
+	/**
+	 * An element that carries its own links in access order.
+	 */
+	interface Linked<E> {
+
+		E getPreviousInAccessOrder();
+
+		void setPreviousInAccessOrder(E previous);
+
+		E getNextInAccessOrder();
+
+		void setNextInAccessOrder(E next);
+
+	}
+
+}
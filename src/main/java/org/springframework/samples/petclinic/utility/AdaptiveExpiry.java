@@ -0,0 +1,83 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An expiry that caches an entry for a fraction of the time since its key was last
+ * written, clamped between a minimum and a maximum: a value unchanged for days is
+ * unlikely to change within the next hours, while one saved a minute ago may well be
+ * saved again soon. This is the heuristic freshness of HTTP caches, which cache a
+ * response for a tenth of the time since its last modification.
+ * <p>
+ * The write times are kept in a fixed table of the size of the cache, indexed by the
+ * hash of the key, so that keys never written cost nothing. Keys sharing a slot share
+ * the latest of their write times, which can only shorten their time to live. Keys not
+ * written since the cache was created count as written at its creation, so that the
+ * times to live grow from the minimum as the cache ages rather than starting at the
+ * maximum for entries that may have been written just before a restart.
+ * <p>
+ * This class is thread-safe; writes are recorded without locking.
+ */
+public final class AdaptiveExpiry<K, V> implements TimedCache.Expiry<K, V> {
+
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	private final AtomicLongArray lastWrites;
+
+	private final int mask;
+
+	private final long minimumNanos;
+
+	private final long maximumNanos;
+
+	private final double writeAgeFactor;
+
+	/**
+	 * @param maximumSize the maximum size of the cache, sizing the table of write times
+	 * @param startedAt the time of the cache ticker counted as the last write of every key
+	 */
+	public AdaptiveExpiry(TimedCacheProperties.Adaptive properties, long maximumSize, long startedAt) {
+		long minimumNanos = properties.getMinimum().toNanos();
+		long maximumNanos = properties.getMaximum().toNanos();
+		if ((minimumNanos < 0) || (maximumNanos < minimumNanos)) {
+			throw new IllegalArgumentException("The adaptive expiry needs 0 <= minimum <= maximum");
+		}
+		if (!(properties.getWriteAgeFactor() > 0)) {
+			throw new IllegalArgumentException("The write age factor must be positive");
+		}
+		int capacity = (int) Math.min(Math.max(maximumSize, 1), MAXIMUM_CAPACITY);
+		this.lastWrites = new AtomicLongArray(1 << -Integer.numberOfLeadingZeros(capacity - 1));
+		this.mask = lastWrites.length() - 1;
+		for (int i = 0; i < lastWrites.length(); i++) {
+			lastWrites.lazySet(i, startedAt);
+		}
+		this.minimumNanos = minimumNanos;
+		this.maximumNanos = maximumNanos;
+		this.writeAgeFactor = properties.getWriteAgeFactor();
+	}
+
+	@Override
+	public long timeToLive(K key, V value, long now) {
+		long writeAge = Math.max(now - lastWrites.get(indexOf(key)), 0);
+		long timeToLive = (long) (writeAge * writeAgeFactor);
+		return Math.min(Math.max(timeToLive, minimumNanos), maximumNanos);
+	}
+
+	/**
+	 * Records a write, keeping the latest time if the slot was written concurrently.
+	 * Times are compared by their difference, as ticker values may overflow.
+	 */
+	@Override
+	public void recordWrite(K key, long now) {
+		lastWrites.accumulateAndGet(indexOf(key), now,
+				(previous, current) -> (current - previous > 0) ? current : previous);
+	}
+
+	private int indexOf(K key) {
+		int x = key.hashCode();
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return ((x >>> 16) ^ x) & mask;
+	}
+
+}
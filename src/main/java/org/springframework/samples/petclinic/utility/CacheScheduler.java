@@ -0,0 +1,157 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the background work of all {@link TimedCache}s on shared threads: one thread
+ * cleans up every registered cache at each tick of the finest {@link TimerWheel} wheel,
+ * and a bounded pool reloads the entries refreshed ahead of their expiry. The clean-up
+ * thread also runs other periodic cache maintenance, such as saving the hot sets of the
+ * {@link CacheWarmup}.
+ * <p>
+ * The threads exist only while the scheduler runs. It starts before the web server and
+ * stops after it; refreshes submitted while it is stopped are rejected, which makes the
+ * caches skip them.
+ */
+@Component
+@EnableConfigurationProperties(TimedCachesProperties.class)
+public class CacheScheduler implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(CacheScheduler.class);
+
+	private final Set<TimedCache<?, ?>> caches = new CopyOnWriteArraySet<>();
+
+	private final int refreshThreads;
+
+	private final int refreshQueueCapacity;
+
+	private final Object monitor = new Object();
+
+	private ScheduledExecutorService cleaner;
+
+	private volatile ThreadPoolExecutor refresher;
+
+	@Autowired
+	public CacheScheduler(TimedCachesProperties properties) {
+		this(properties.getRefreshThreads(), properties.getRefreshQueueCapacity());
+	}
+
+	public CacheScheduler(int refreshThreads, int refreshQueueCapacity) {
+		this.refreshThreads = refreshThreads;
+		this.refreshQueueCapacity = refreshQueueCapacity;
+	}
+
+	void register(TimedCache<?, ?> cache) {
+		caches.add(cache);
+	}
+
+	void unregister(TimedCache<?, ?> cache) {
+		caches.remove(cache);
+	}
+
+	/**
+	 * Runs a background reload.
+	 * @throws RejectedExecutionException if the scheduler is not running or too many
+	 * reloads are pending
+	 */
+	void refresh(Runnable reload) {
+		ThreadPoolExecutor executor = refresher;
+		if (executor == null) {
+			throw new RejectedExecutionException("The cache scheduler is not running");
+		}
+		executor.execute(reload);
+	}
+
+	/**
+	 * Runs a task periodically on the clean-up thread until the scheduler stops.
+	 * @throws RejectedExecutionException if the scheduler is not running
+	 */
+	ScheduledFuture<?> schedule(Runnable task, Duration interval) {
+		synchronized (monitor) {
+			if (cleaner == null) {
+				throw new RejectedExecutionException("The cache scheduler is not running");
+			}
+			long nanos = interval.toNanos();
+			return cleaner.scheduleWithFixedDelay(task, nanos, nanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Cleans up every registered cache once.
+	 */
+	void cleanUp() {
+		for (TimedCache<?, ?> cache : caches) {
+			try {
+				cache.cleanUp();
+			}
+			catch (RuntimeException ex) {
+				log.warn("Cleaning up cache " + cache.getName() + " failed", ex);
+			}
+		}
+	}
+
+	@Override
+	public void start() {
+		synchronized (monitor) {
+			if (cleaner != null) {
+				return;
+			}
+			CustomizableThreadFactory cleanerThreads = new CustomizableThreadFactory("cache-cleaner-");
+			cleanerThreads.setDaemon(true);
+			cleaner = new ScheduledThreadPoolExecutor(1, cleanerThreads);
+			long tick = TimerWheel.SPANS[0];
+			cleaner.scheduleWithFixedDelay(this::cleanUp, tick, tick, TimeUnit.NANOSECONDS);
+
+			CustomizableThreadFactory refreshThreadFactory = new CustomizableThreadFactory("cache-refresh-");
+			refreshThreadFactory.setDaemon(true);
+			refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(refreshQueueCapacity), refreshThreadFactory);
+		}
+	}
+
+	@Override
+	public void stop() {
+		synchronized (monitor) {
+			if (cleaner == null) {
+				return;
+			}
+			cleaner.shutdownNow();
+			cleaner = null;
+			refresher.shutdownNow();
+			refresher = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		synchronized (monitor) {
+			return cleaner != null;
+		}
+	}
+
+	/**
+	 * Starts before and stops after the web server, which uses the highest phases.
+	 */
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+}
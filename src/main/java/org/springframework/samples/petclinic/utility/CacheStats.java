@@ -0,0 +1,176 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on counters of a cache. They are striped {@link LongAdder}s, so recording from
+ * many threads neither contends nor allocates once the stripes exist.
+ */
+public final class CacheStats {
+
+	/**
+	 * Why an entry left the cache.
+	 */
+	public enum RemovalCause {
+
+		/** Its time to live, including any stale grace period, elapsed. */
+		EXPIRED,
+
+		/** The size or weight bound was exceeded. */
+		SIZE,
+
+		/** It was invalidated, e.g. because the value no longer exists. */
+		EXPLICIT,
+
+		/** A newer version of the value replaced it. */
+		REPLACED
+
+	}
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder puts = new LongAdder();
+
+	private final LongAdder demotions = new LongAdder();
+
+	private final LongAdder promotions = new LongAdder();
+
+	private final LongAdder loadSuccesses = new LongAdder();
+
+	private final LongAdder loadFailures = new LongAdder();
+
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	private final LongAdder[] removals = new LongAdder[RemovalCause.values().length];
+
+	private volatile LoadTimeListener loadTimeListener;
+
+	CacheStats() {
+		for (int i = 0; i < removals.length; i++) {
+			removals[i] = new LongAdder();
+		}
+	}
+
+	void recordHit() {
+		hits.increment();
+	}
+
+	void recordMiss() {
+		misses.increment();
+	}
+
+	void recordPut() {
+		puts.increment();
+	}
+
+	void recordDemotion() {
+		demotions.increment();
+	}
+
+	void recordPromotion() {
+		promotions.increment();
+	}
+
+	void recordLoadSuccess(long loadTimeNanos) {
+		loadSuccesses.increment();
+		totalLoadTime.add(loadTimeNanos);
+		notifyLoad(loadTimeNanos, true);
+	}
+
+	void recordLoadFailure(long loadTimeNanos) {
+		loadFailures.increment();
+		totalLoadTime.add(loadTimeNanos);
+		notifyLoad(loadTimeNanos, false);
+	}
+
+	private void notifyLoad(long loadTimeNanos, boolean success) {
+		LoadTimeListener listener = loadTimeListener;
+		if (listener != null) {
+			listener.onLoad(loadTimeNanos, success);
+		}
+	}
+
+	/**
+	 * Registers the listener that receives the time of every load, e.g. to feed a
+	 * latency histogram; replaces any previous one.
+	 */
+	void setLoadTimeListener(LoadTimeListener loadTimeListener) {
+		this.loadTimeListener = loadTimeListener;
+	}
+
+	void recordRemoval(RemovalCause cause) {
+		removals[cause.ordinal()].increment();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getPutCount() {
+		return puts.sum();
+	}
+
+	/**
+	 * Returns the number of entries moved from the heap to the off-heap tier.
+	 */
+	public long getDemotionCount() {
+		return demotions.sum();
+	}
+
+	/**
+	 * Returns the number of entries moved back from the off-heap tier to the heap.
+	 */
+	public long getPromotionCount() {
+		return promotions.sum();
+	}
+
+	public long getLoadSuccessCount() {
+		return loadSuccesses.sum();
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailures.sum();
+	}
+
+	/**
+	 * Returns the time spent loading values, in nanoseconds.
+	 */
+	public long getTotalLoadTime() {
+		return totalLoadTime.sum();
+	}
+
+	public long getRemovalCount(RemovalCause cause) {
+		return removals[cause.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of entries removed because they expired or to keep the cache
+	 * within its bounds.
+	 */
+	public long getEvictionCount() {
+		return getRemovalCount(RemovalCause.EXPIRED) + getRemovalCount(RemovalCause.SIZE);
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats[hits=" + getHitCount() + ", misses=" + getMissCount() + ", puts=" + getPutCount()
+				+ ", loadSuccesses=" + getLoadSuccessCount() + ", loadFailures=" + getLoadFailureCount()
+				+ ", totalLoadTime=" + getTotalLoadTime() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	/**
+	 * Receives the duration of each load.
+	 */
+	interface LoadTimeListener {
+
+		void onLoad(long loadTimeNanos, boolean success);
+
+	}
+
+}
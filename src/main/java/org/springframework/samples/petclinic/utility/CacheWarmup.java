@@ -0,0 +1,346 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Warms the caches up on startup from their hot sets: the keys of the most frequently
+ * read entries of each registered {@link TimedCache}, saved to one file per cache at
+ * intervals and at shutdown. On startup, the keys are loaded in parallel batches, each
+ * with one {@link TimedCache#getAll(java.util.Collection) bulk lookup}, together with
+ * the preloads, such as cached queries without parameters.
+ * <p>
+ * The warm-up is an {@link ApplicationRunner}: Spring Boot runs it once the web server
+ * is up and the application is reported live, and only reports the application ready
+ * when it is done. The readiness probe so waits for warm caches, up to the configured
+ * timeout, while the liveness probe is not held back. The progress is available from the
+ * getters.
+ */
+public class CacheWarmup implements ApplicationRunner, SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(CacheWarmup.class);
+
+	private static final String SUFFIX = ".hot";
+
+	private final TimedCachesProperties.Warmup properties;
+
+	private final CacheScheduler scheduler;
+
+	private final List<HotSet<?>> hotSets = new ArrayList<>();
+
+	private final Map<String, Runnable> preloads = new LinkedHashMap<>();
+
+	private final AtomicInteger total = new AtomicInteger();
+
+	private final AtomicInteger loaded = new AtomicInteger();
+
+	private final AtomicInteger failed = new AtomicInteger();
+
+	private final Object monitor = new Object();
+
+	private volatile State state;
+
+	private volatile long startedAt;
+
+	private volatile long finishedAt;
+
+	private ScheduledFuture<?> saving;
+
+	public CacheWarmup(TimedCachesProperties.Warmup properties, CacheScheduler scheduler) {
+		this.properties = properties;
+		this.scheduler = scheduler;
+		this.state = (properties.getDirectory() != null) ? State.PENDING : State.DISABLED;
+	}
+
+	/**
+	 * Registers a cache whose hot set is saved and loaded back on startup.
+	 * @param keyParser parses the keys back from their saved {@code toString()} form
+	 */
+	public <K> CacheWarmup cache(TimedCache<K, ?> cache, Function<String, K> keyParser) {
+		hotSets.add(new HotSet<>(cache, keyParser));
+		return this;
+	}
+
+	/**
+	 * Registers a task run on startup along with the loads of the hot sets, typically a
+	 * call to a cached method without parameters.
+	 */
+	public CacheWarmup preload(String name, Runnable preload) {
+		preloads.put(name, preload);
+		return this;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) throws InterruptedException {
+		warmUp();
+	}
+
+	/**
+	 * Loads the saved hot sets and runs the preloads, waiting at most for the configured
+	 * timeout. Does nothing if the warm-up is disabled or already ran.
+	 */
+	public void warmUp() throws InterruptedException {
+		synchronized (monitor) {
+			if (state != State.PENDING) {
+				return;
+			}
+			state = State.WARMING;
+		}
+		startedAt = System.nanoTime();
+		List<Runnable> tasks = new ArrayList<>();
+		preloads.forEach((name, preload) -> tasks.add(() -> run(name, preload)));
+		for (HotSet<?> hotSet : hotSets) {
+			hotSet.addBatches(tasks);
+		}
+		total.addAndGet(preloads.size());
+
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-warmup-");
+		threadFactory.setDaemon(true);
+		ExecutorService executor = Executors.newFixedThreadPool(properties.getThreads(), threadFactory);
+		try {
+			tasks.forEach(executor::execute);
+			executor.shutdown();
+			boolean done = executor.awaitTermination(properties.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+			state = done ? State.WARM : State.TIMED_OUT;
+		}
+		finally {
+			executor.shutdownNow();
+			finishedAt = System.nanoTime();
+		}
+		if (state == State.TIMED_OUT) {
+			log.warn("Cache warm-up timed out after {}ms with {} of {} entries loaded", getElapsed().toMillis(),
+					loaded.get(), total.get());
+		}
+		else {
+			log.info("Warmed up the caches with {} entries in {}ms, {} failed", loaded.get(),
+					getElapsed().toMillis(), failed.get());
+		}
+	}
+
+	private void run(String name, Runnable preload) {
+		try {
+			preload.run();
+			loaded.incrementAndGet();
+		}
+		catch (RuntimeException ex) {
+			failed.incrementAndGet();
+			log.warn("Preloading " + name + " failed", ex);
+		}
+	}
+
+	/**
+	 * Saves the hot sets of the caches. Does nothing until the warm-up is over, so that
+	 * the hot sets of a previous run are not replaced by those of caches still warming
+	 * up.
+	 */
+	public void save() {
+		State current = state;
+		if ((current != State.WARM) && (current != State.TIMED_OUT)) {
+			return;
+		}
+		for (HotSet<?> hotSet : hotSets) {
+			try {
+				hotSet.save();
+			}
+			catch (IOException | RuntimeException ex) {
+				log.warn("Saving the hot set of cache " + hotSet.cache.getName() + " failed", ex);
+			}
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the number of keys and preloads to load; known once the warm-up started.
+	 */
+	public int getTotal() {
+		return total.get();
+	}
+
+	public int getLoaded() {
+		return loaded.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the time the warm-up took so far.
+	 */
+	public Duration getElapsed() {
+		long started = startedAt;
+		if (started == 0) {
+			return Duration.ZERO;
+		}
+		long finished = finishedAt;
+		return Duration.ofNanos(((finished != 0) ? finished : System.nanoTime()) - started);
+	}
+
+	@Override
+	public void start() {
+		synchronized (monitor) {
+			if ((state == State.DISABLED) || (saving != null)) {
+				return;
+			}
+			saving = scheduler.schedule(this::save, properties.getSaveInterval());
+		}
+	}
+
+	/**
+	 * Stops the periodic saves and saves the hot sets one last time.
+	 */
+	@Override
+	public void stop() {
+		synchronized (monitor) {
+			if (saving == null) {
+				return;
+			}
+			saving.cancel(false);
+			saving = null;
+		}
+		save();
+	}
+
+	@Override
+	public boolean isRunning() {
+		synchronized (monitor) {
+			return saving != null;
+		}
+	}
+
+	/**
+	 * Stops before the {@link CacheScheduler} it depends on and before the caches are
+	 * closed.
+	 */
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	/**
+	 * The progress of a warm-up.
+	 */
+	public enum State {
+
+		/** No hot set directory is configured. */
+		DISABLED,
+
+		/** The application has not started yet. */
+		PENDING,
+
+		/** The hot sets are being loaded. */
+		WARMING,
+
+		/** Every hot set was loaded. */
+		WARM,
+
+		/** The timeout elapsed before every hot set was loaded. */
+		TIMED_OUT
+
+	}
+
+	private final class HotSet<K> {
+
+		private final TimedCache<K, ?> cache;
+
+		private final Function<String, K> keyParser;
+
+		HotSet(TimedCache<K, ?> cache, Function<String, K> keyParser) {
+			this.cache = cache;
+			this.keyParser = keyParser;
+		}
+
+		private Path file() {
+			return properties.getDirectory().resolve(cache.getName() + SUFFIX);
+		}
+
+		void addBatches(List<Runnable> tasks) {
+			List<K> keys = read();
+			total.addAndGet(keys.size());
+			for (int from = 0; from < keys.size(); from += properties.getBatchSize()) {
+				List<K> batch = keys.subList(from, Math.min(from + properties.getBatchSize(), keys.size()));
+				tasks.add(() -> load(batch));
+			}
+		}
+
+		private List<K> read() {
+			Path file = file();
+			List<K> keys = new ArrayList<>();
+			if (!Files.exists(file)) {
+				return keys;
+			}
+			try {
+				for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+					try {
+						keys.add(keyParser.apply(line));
+					}
+					catch (RuntimeException ex) {
+						log.debug("Skipping key {} of the hot set of cache {}", line, cache.getName());
+					}
+				}
+			}
+			catch (IOException ex) {
+				log.warn("Reading the hot set of cache " + cache.getName() + " failed", ex);
+			}
+			return keys;
+		}
+
+		private void load(List<K> batch) {
+			try {
+				cache.getAll(batch);
+				loaded.addAndGet(batch.size());
+			}
+			catch (RuntimeException ex) {
+				failed.addAndGet(batch.size());
+				log.debug("Warming up keys {} of cache {} failed: {}", batch, cache.getName(), ex.toString());
+			}
+		}
+
+		/**
+		 * Writes the hot set to a temporary file first, so that a crash while saving
+		 * leaves the previous hot set intact.
+		 */
+		void save() throws IOException {
+			List<String> lines = new ArrayList<>();
+			for (K key : cache.hottest(properties.getHotSetSize())) {
+				lines.add(key.toString());
+			}
+			Files.createDirectories(properties.getDirectory());
+			Path file = file();
+			Path temporary = Files.createTempFile(properties.getDirectory(), cache.getName(), SUFFIX + ".tmp");
+			try {
+				Files.write(temporary, lines, StandardCharsets.UTF_8);
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe {@link IdentityMap}, meant as a registry of reference entities shared by
+ * the request threads, such as pet types, specialties and vets: read often, written
+ * rarely.
+ * <p>
+ * The entities are held in a {@link ConcurrentHashMap} by id, so that lookups never lock
+ * and scale with the number of reading threads. Writes are serialized by a lock that
+ * readers never take. Iteration walks a snapshot: an array of the entities taken on the
+ * first iteration after a write, under the write lock, and shared by the following
+ * iterations until the next write. An iterator so sees the entities of one point in time,
+ * never fails and does not support removal.
+ * <p>
+ * Unlike an {@link IdentityMap}, entities without an id are rejected, and the iteration
+ * order is unspecified.
+ */
+public class ConcurrentIdentityMap<Entity extends BaseEntity> implements Collection<Entity> {
+
+	private static final Object[] EMPTY = {};
+
+	private final ConcurrentHashMap<Integer, Entity> entities = new ConcurrentHashMap<>();
+
+	private final Object writeLock = new Object();
+
+	/** The entities as of the last write, or {@code null} until the next iteration. */
+	private volatile Object[] snapshot = EMPTY;
+
+	@Override
+	public int size() {
+		return entities.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return entities.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (o instanceof BaseEntity) {
+			Integer id = ((BaseEntity) o).getId();
+			return (id != null) && entities.containsKey(id);
+		}
+		else {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the entity with the given id, or {@code null} if there is none.
+	 */
+	public Entity get(Integer id) {
+		return (id != null) ? entities.get(id) : null;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the entities, which does not reflect later
+	 * writes.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<Entity> iterator() {
+		return (Iterator<Entity>) (Iterator<?>) Collections.unmodifiableList(Arrays.asList(snapshot())).iterator();
+	}
+
+	@Override
+	public Object[] toArray() {
+		Object[] current = snapshot();
+		return Arrays.copyOf(current, current.length);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] ts) {
+		Object[] current = snapshot();
+		if (ts.length < current.length) {
+			return (T[]) Arrays.copyOf(current, current.length, ts.getClass());
+		}
+		System.arraycopy(current, 0, ts, 0, current.length);
+		if (ts.length > current.length) {
+			ts[current.length] = null;
+		}
+		return ts;
+	}
+
+	private Object[] snapshot() {
+		Object[] current = snapshot;
+		if (current == null) {
+			synchronized (writeLock) {
+				current = snapshot;
+				if (current == null) {
+					current = entities.values().toArray();
+					snapshot = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Adds an entity, replacing the entity with the same id if there is one.
+	 * @return always {@code true}, as the collection holds the given entity afterwards
+	 * @throws IllegalArgumentException if the entity has no id
+	 */
+	@Override
+	public boolean add(Entity entity) {
+		Integer id = entity.getId();
+		if (id == null) {
+			throw new IllegalArgumentException("Only entities with an id can be registered");
+		}
+		synchronized (writeLock) {
+			entities.put(id, entity);
+			snapshot = null;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object object) {
+		if (!contains(object)) {
+			return false;
+		}
+		synchronized (writeLock) {
+			if (entities.remove(((BaseEntity) object).getId()) == null) {
+				return false;
+			}
+			snapshot = null;
+			return true;
+		}
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> collection) {
+		for (Object object : collection) {
+			if (!contains(object)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the entities in one write, so that no snapshot holds only some of them.
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Entity> collection) {
+		for (Entity entity : collection) {
+			if (entity.getId() == null) {
+				throw new IllegalArgumentException("Only entities with an id can be registered");
+			}
+		}
+		synchronized (writeLock) {
+			for (Entity entity : collection) {
+				entities.put(entity.getId(), entity);
+			}
+			snapshot = null;
+		}
+		return !collection.isEmpty();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> collection) {
+		synchronized (writeLock) {
+			boolean collectionChanged = false;
+			for (Object object : collection) {
+				if (contains(object)) {
+					collectionChanged |= entities.remove(((BaseEntity) object).getId()) != null;
+				}
+			}
+			if (collectionChanged) {
+				snapshot = null;
+			}
+			return collectionChanged;
+		}
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> collection) {
+		synchronized (writeLock) {
+			boolean collectionChanged = entities.values().removeIf(entity -> !collection.contains(entity));
+			if (collectionChanged) {
+				snapshot = null;
+			}
+			return collectionChanged;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (writeLock) {
+			entities.clear();
+			snapshot = EMPTY;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(snapshot());
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * A probabilistic multiset for estimating the popularity of a key within a time window.
+ * Counters are 4 bits wide and packed sixteen to a {@code long}; every key maps to four
+ * counters and its frequency is the minimum of them (a Count-Min sketch). When the
+ * number of increments reaches the sample size all counters are halved, so that the
+ * history of keys that are no longer accessed fades away.
+ * <p>
+ * This class is not thread-safe; the owning cache guards it with its eviction lock.
+ * See "TinyLFU: A Highly Efficient Cache Admission Policy" by Einziger, Friedman and
+ * Manes.
+ */
+final class FrequencySketch {
+
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	private final long[] table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private int size;
+
+	FrequencySketch(long maximumSize) {
+		int maximum = (int) Math.min(Math.max(maximumSize, 1), MAXIMUM_CAPACITY);
+		this.table = new long[ceilingPowerOfTwo(maximum)];
+		this.tableMask = table.length - 1;
+		this.sampleSize = 10 * maximum;
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of a key, up to 15.
+	 * @param key the hash code of the key
+	 * @return the estimated frequency
+	 */
+	int frequency(int key) {
+		int hash = spread(key);
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increments the popularity of a key if it does not exceed the maximum of 15. The
+	 * sketch is periodically aged once the sample size is reached.
+	 * @param key the hash code of the key
+	 */
+	void increment(int key) {
+		int hash = spread(key);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && (++size == sampleSize)) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = (0xfL << offset);
+		if ((table[i] & mask) != mask) {
+			table[i] += (1L << offset);
+			return true;
+		}
+		return false;
+	}
+
+	private void reset() {
+		int count = 0;
+		for (int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+
+	private int indexOf(int item, int i) {
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += (hash >>> 32);
+		return ((int) hash) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+
+}
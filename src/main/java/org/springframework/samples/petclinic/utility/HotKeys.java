@@ -0,0 +1,87 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tracks the most frequently read keys in fixed space with the Space-Saving algorithm.
+ * A key that is not tracked replaces the one with the lowest count and inherits that
+ * count, so counts overestimate by at most the lowest count while every key read more
+ * often than that is guaranteed to be tracked.
+ * <p>
+ * It is fed with sampled reads only, each weighted by the sample rate, so recording
+ * stays off the common hit path.
+ */
+final class HotKeys {
+
+	private final Object[] keys;
+
+	private final long[] counts;
+
+	private final long weight;
+
+	private int size;
+
+	HotKeys(int capacity, long weight) {
+		this.keys = new Object[capacity];
+		this.counts = new long[capacity];
+		this.weight = weight;
+	}
+
+	synchronized void record(Object key) {
+		int minimum = 0;
+		for (int i = 0; i < size; i++) {
+			if (keys[i].equals(key)) {
+				counts[i] += weight;
+				return;
+			}
+			if (counts[i] < counts[minimum]) {
+				minimum = i;
+			}
+		}
+		if (size < keys.length) {
+			keys[size] = key;
+			counts[size] = weight;
+			size++;
+		}
+		else {
+			keys[minimum] = key;
+			counts[minimum] += weight;
+		}
+	}
+
+	/**
+	 * Returns up to {@code limit} keys, the most frequently read first.
+	 */
+	synchronized List<HotKey> top(int limit) {
+		List<HotKey> top = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			top.add(new HotKey(keys[i], counts[i]));
+		}
+		top.sort(Comparator.comparingLong(HotKey::getEstimatedReads).reversed());
+		return (top.size() > limit) ? top.subList(0, limit) : top;
+	}
+
+	static final class HotKey {
+
+		private final Object key;
+
+		private final long estimatedReads;
+
+		HotKey(Object key, long estimatedReads) {
+			this.key = key;
+			this.estimatedReads = estimatedReads;
+		}
+
+		Object getKey() {
+			return key;
+		}
+
+		long getEstimatedReads() {
+			return estimatedReads;
+		}
+
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of the ids of the existing rows of a table, so that lookups of ids that
+ * were never issued can be answered without a query. It may wrongly report that an id
+ * exists, at the configured rate, but never that an existing one does not.
+ * <p>
+ * The ids are assumed to be positive and issued in increasing order, as identity columns
+ * do. The filter only answers for the ids up to the highest one it accounts for; newer
+ * ids are reported as existing, so that rows inserted without going through
+ * {@link #add(int)} are still found. Adding the id that directly follows advances that
+ * limit; an id past a gap does not, because the ids in the gap may have been issued
+ * elsewhere.
+ * <p>
+ * Bits are set with compare-and-set and tested without locking.
+ */
+public final class IdFilter {
+
+	private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+	private static final int MINIMUM_BITS = 1 << 10;
+
+	private static final int MAXIMUM_BITS = 1 << 30;
+
+	private final AtomicLongArray words;
+
+	private final int bitMask;
+
+	private final int hashes;
+
+	/** The highest id such that every existing id up to it was added. */
+	private final AtomicInteger highestId;
+
+	private IdFilter(int bits, int hashes, int highestId) {
+		this.words = new AtomicLongArray(Math.max(1, bits >>> 6));
+		this.bitMask = bits - 1;
+		this.hashes = hashes;
+		this.highestId = new AtomicInteger(highestId);
+	}
+
+	/**
+	 * Creates a filter of the given ids, sized for twice as many so that it keeps its
+	 * accuracy while new ids are added.
+	 * @param ids every existing id
+	 * @param falsePositiveRate the rate at which an id that does not exist is reported as
+	 * existing
+	 */
+	public static IdFilter of(Collection<Integer> ids, double falsePositiveRate) {
+		long expected = Math.max(2L * ids.size(), 1);
+		long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / LN2_SQUARED);
+		int size = MINIMUM_BITS;
+		while ((size < bits) && (size < MAXIMUM_BITS)) {
+			size <<= 1;
+		}
+		int hashes = (int) Math.max(1, Math.round((double) size / expected * Math.log(2)));
+		int highestId = 0;
+		for (Integer id : ids) {
+			highestId = Math.max(highestId, id);
+		}
+		IdFilter filter = new IdFilter(size, Math.min(hashes, 16), highestId);
+		for (Integer id : ids) {
+			filter.set(id);
+		}
+		return filter;
+	}
+
+	/**
+	 * Creates a filter that reports every id as existing.
+	 */
+	public static IdFilter acceptingAll() {
+		return new IdFilter(64, 1, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Returns whether a row with the id may exist; {@code false} means it certainly does
+	 * not.
+	 */
+	public boolean mightExist(int id) {
+		if (id > highestId.get()) {
+			return true;
+		}
+		int hash = spread(id);
+		int step = spread(hash) | 1;
+		for (int i = 0; i < hashes; i++) {
+			int bit = (hash + i * step) & bitMask;
+			if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records the id of a saved row.
+	 */
+	public void add(int id) {
+		set(id);
+		highestId.compareAndSet(id - 1, id);
+	}
+
+	private void set(int id) {
+		int hash = spread(id);
+		int step = spread(hash) | 1;
+		for (int i = 0; i < hashes; i++) {
+			int bit = (hash + i * step) & bitMask;
+			int index = bit >>> 6;
+			long mask = 1L << bit;
+			for (;;) {
+				long word = words.get(index);
+				if (((word & mask) != 0) || words.compareAndSet(index, word, word | mask)) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mixes the bits of an id (the finalizer of MurmurHash3), so that consecutive ids
+	 * spread over the whole filter.
+	 */
+	private static int spread(int id) {
+		int h = id;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
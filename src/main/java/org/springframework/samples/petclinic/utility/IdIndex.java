@@ -0,0 +1,160 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table from {@code int} ids to {@code int} slots, held in two
+ * parallel arrays, so that a mapping costs two array elements instead of a hash node
+ * and two boxed integers, and lookups allocate nothing.
+ * <p>
+ * Ids are placed by Fibonacci hashing and probed linearly. A removal shifts the
+ * following mappings of its cluster back instead of leaving a tombstone, so that the
+ * table never needs rehashing to reclaim removed slots. The table doubles once it is
+ * two thirds full.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class IdIndex {
+
+	private static final int MINIMUM_CAPACITY = 16;
+
+	/** Marks an absent id; slots are stored plus one so that zero means empty. */
+	static final int ABSENT = -1;
+
+	private int[] ids;
+
+	/** The slot of each id plus one, or zero where the table is empty. */
+	private int[] slots;
+
+	private int shift;
+
+	private int size;
+
+	IdIndex() {
+		allocate(MINIMUM_CAPACITY);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot of an id, or {@link #ABSENT}.
+	 */
+	int get(int id) {
+		int mask = slots.length - 1;
+		for (int i = indexOf(id); slots[i] != 0; i = (i + 1) & mask) {
+			if (ids[i] == id) {
+				return slots[i] - 1;
+			}
+		}
+		return ABSENT;
+	}
+
+	/**
+	 * Maps an id to a slot.
+	 * @return the previous slot of the id, or {@link #ABSENT}
+	 */
+	int put(int id, int slot) {
+		return put(id, slot, true);
+	}
+
+	/**
+	 * Maps an id to a slot unless it is mapped already.
+	 * @return the current slot of the id, or {@link #ABSENT} if it was added
+	 */
+	int putIfAbsent(int id, int slot) {
+		return put(id, slot, false);
+	}
+
+	private int put(int id, int slot, boolean replace) {
+		int mask = slots.length - 1;
+		int i = indexOf(id);
+		for (; slots[i] != 0; i = (i + 1) & mask) {
+			if (ids[i] == id) {
+				int previous = slots[i] - 1;
+				if (replace) {
+					slots[i] = slot + 1;
+				}
+				return previous;
+			}
+		}
+		ids[i] = id;
+		slots[i] = slot + 1;
+		if (++size * 3 > slots.length * 2) {
+			resize();
+		}
+		return ABSENT;
+	}
+
+	/**
+	 * Removes the mapping of an id.
+	 * @return its slot, or {@link #ABSENT}
+	 */
+	int remove(int id) {
+		int mask = slots.length - 1;
+		int i = indexOf(id);
+		for (; slots[i] != 0; i = (i + 1) & mask) {
+			if (ids[i] == id) {
+				int slot = slots[i] - 1;
+				shiftBack(i);
+				size--;
+				return slot;
+			}
+		}
+		return ABSENT;
+	}
+
+	/**
+	 * Empties a freed table position by moving back the following mappings of its
+	 * cluster that may not be placed between their home position and the freed one.
+	 */
+	private void shiftBack(int free) {
+		int mask = slots.length - 1;
+		for (int i = (free + 1) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			int home = indexOf(ids[i]);
+			// the mapping may move if the freed position lies cyclically in [home, i)
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				ids[free] = ids[i];
+				slots[free] = slots[i];
+				free = i;
+			}
+		}
+		slots[free] = 0;
+	}
+
+	void clear() {
+		if (size > 0) {
+			Arrays.fill(slots, 0);
+			size = 0;
+		}
+	}
+
+	private void resize() {
+		int[] oldIds = ids;
+		int[] oldSlots = slots;
+		allocate(oldSlots.length * 2);
+		int mask = slots.length - 1;
+		for (int j = 0; j < oldSlots.length; j++) {
+			if (oldSlots[j] != 0) {
+				int i = indexOf(oldIds[j]);
+				while (slots[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				ids[i] = oldIds[j];
+				slots[i] = oldSlots[j];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		ids = new int[capacity];
+		slots = new int[capacity];
+		shift = Integer.numberOfLeadingZeros(capacity - 1);
+	}
+
+	private int indexOf(int id) {
+		return (id * 0x9E3779B9) >>> shift;
+	}
+
+}
@@ -1,115 +1,455 @@
 package org.springframework.samples.petclinic.utility;
+
 import org.springframework.samples.petclinic.model.BaseEntity;
 
-import java.util.*;
-import java.util.function.Supplier;
-import java.util.stream.Collector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.function.Function;
 
 /**
- * This is a utility class to provide a sortable map
- * for more information see https://docs.oracle.com/javase/8/docs/api/java/util/Collection.html
+ * A sortable collection of entities holding at most one entity per id: adding an entity
+ * whose id is already present replaces the previous one.
+ * <p>
+ * The entities are kept in an array list, and an {@link IdIndex} maps every id to its
+ * slot in the list, so that adding, replacing, finding and removing an entity take
+ * constant time. The index holds the ids as primitive {@code int}s in two flat arrays,
+ * costing 12 to 24 bytes per entity depending on its load, without boxing.
+ * A removal moves the last entity into the freed slot, so the iteration order is the
+ * insertion order only until the first removal, or the order of the last
+ * {@link #sort(Comparator) sort}. The iterators are fail-fast: they throw a
+ * {@link ConcurrentModificationException} once an entity is added or removed other than
+ * through them; replacing an entity is not such a modification.
+ * <p>
+ * For an order kept up to date as entities come and go, rather than re-sorting after
+ * every change, a {@link #sortedView(Function, Comparator) sorted view} can be
+ * registered for each order needed. Every view is a balanced tree updated on each add,
+ * replace and remove in logarithmic time, and supports range and prefix iteration.
+ * <p>
+ * This class is not thread-safe. For more information on the contract see
+ * https://docs.oracle.com/javase/8/docs/api/java/util/Collection.html
  */
 public class IdentityMap<Entity extends BaseEntity> implements Collection<Entity> {
 
-	private ArrayList<Entity> entities = new ArrayList<>();
-	private Set<Integer> ids = new HashSet<>();
+	private final ArrayList<Entity> entities = new ArrayList<>();
+
+	private final IdIndex slots = new IdIndex();
+
+	/** The slot of the entity without an id, which the index cannot hold. */
+	private int unsavedSlot = IdIndex.ABSENT;
+
+	private final List<SortedView<?>> views = new ArrayList<>(1);
 
+	private int modCount;
 
 	@Override
 	public int size() {
-		return ids.size();
+		return entities.size();
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return ids.isEmpty();
+		return entities.isEmpty();
 	}
 
 	@Override
 	public boolean contains(Object o) {
-		if(o instanceof BaseEntity) {
-			return ids.contains(((BaseEntity) o).getId());
-		} else {
+		if (o instanceof BaseEntity) {
+			return slotOf(((BaseEntity) o).getId()) != IdIndex.ABSENT;
+		}
+		else {
 			return false;
 		}
 	}
 
+	/**
+	 * Returns the entity with the given id, or {@code null} if there is none.
+	 */
+	public Entity get(Integer id) {
+		int slot = slotOf(id);
+		return (slot != IdIndex.ABSENT) ? entities.get(slot) : null;
+	}
+
 	@Override
 	public Iterator<Entity> iterator() {
-		throw new UnsupportedOperationException();
+		return new Itr();
 	}
 
 	@Override
 	public Object[] toArray() {
-		throw new UnsupportedOperationException();
+		return entities.toArray();
 	}
 
 	@Override
 	public <T> T[] toArray(T[] ts) {
-		throw new UnsupportedOperationException();
+		return entities.toArray(ts);
 	}
 
+	/**
+	 * Adds an entity, replacing the entity with the same id if there is one.
+	 * @return always {@code true}, as the collection holds the given entity afterwards
+	 */
 	@Override
 	public boolean add(Entity entity) {
-		if(!ids.contains(entity)) {
-			ids.add(entity.getId());
+		int slot = putSlotIfAbsent(entity.getId(), entities.size());
+		if (slot == IdIndex.ABSENT) {
 			entities.add(entity);
-		} else {
-			entities.removeIf(entity::sameId);
-			this.add(entity);
+			modCount++;
+		}
+		else {
+			Entity previous = entities.set(slot, entity);
+			for (SortedView<?> view : views) {
+				view.remove(previous);
+			}
+		}
+		for (SortedView<?> view : views) {
+			view.add(entity);
 		}
 		return true;
 	}
 
 	@Override
 	public boolean remove(Object object) {
-		if(object instanceof BaseEntity) {
-			if(ids.remove(((BaseEntity) object).getId())) {
-				return entities.removeIf(((BaseEntity) object)::sameId);
+		if (object instanceof BaseEntity) {
+			int slot = removeId(((BaseEntity) object).getId());
+			if (slot != IdIndex.ABSENT) {
+				removeSlot(slot);
+				return true;
 			}
 		}
 		return false;
 	}
 
+	/**
+	 * Removes the entity of a slot whose id was already removed from the index, by
+	 * moving the last entity into the slot.
+	 */
+	private void removeSlot(int slot) {
+		Entity removed = entities.get(slot);
+		for (SortedView<?> view : views) {
+			view.remove(removed);
+		}
+		Entity last = entities.remove(entities.size() - 1);
+		if (slot < entities.size()) {
+			entities.set(slot, last);
+			putSlot(last.getId(), slot);
+		}
+		modCount++;
+	}
+
+	private int slotOf(Integer id) {
+		return (id != null) ? slots.get(id) : unsavedSlot;
+	}
+
+	private void putSlot(Integer id, int slot) {
+		if (id != null) {
+			slots.put(id, slot);
+		}
+		else {
+			unsavedSlot = slot;
+		}
+	}
+
+	private int putSlotIfAbsent(Integer id, int slot) {
+		if (id != null) {
+			return slots.putIfAbsent(id, slot);
+		}
+		int current = unsavedSlot;
+		if (current == IdIndex.ABSENT) {
+			unsavedSlot = slot;
+		}
+		return current;
+	}
+
+	private int removeId(Integer id) {
+		if (id != null) {
+			return slots.remove(id);
+		}
+		int slot = unsavedSlot;
+		unsavedSlot = IdIndex.ABSENT;
+		return slot;
+	}
+
 	@Override
 	public boolean containsAll(Collection<?> collection) {
-		for(Object object: collection) {
-			if(!contains(object))
+		for (Object object : collection) {
+			if (!contains(object)) {
 				return false;
+			}
 		}
 		return true;
 	}
 
 	@Override
 	public boolean addAll(Collection<? extends Entity> collection) {
-		boolean collectionChaged = false;
-		for(Entity entity: collection) {
-			collectionChaged |= add(entity);
+		boolean collectionChanged = false;
+		for (Entity entity : collection) {
+			collectionChanged |= add(entity);
 		}
-		return collectionChaged;
+		return collectionChanged;
 	}
 
 	@Override
 	public boolean removeAll(Collection<?> collection) {
-		boolean collectionChaged = false;
-		for(Object object: collection) {
-			collectionChaged |= remove(object);
+		boolean collectionChanged = false;
+		for (Object object : collection) {
+			collectionChanged |= remove(object);
 		}
-		return collectionChaged;
+		return collectionChanged;
 	}
 
+	/**
+	 * Removes the entities not contained in the given collection, which is asked once
+	 * per entity.
+	 */
 	@Override
 	public boolean retainAll(Collection<?> collection) {
-		throw new UnsupportedOperationException();
+		boolean collectionChanged = false;
+		// backwards, so that the entity moved into a freed slot was already retained
+		for (int slot = entities.size() - 1; slot >= 0; slot--) {
+			Entity entity = entities.get(slot);
+			if (!collection.contains(entity)) {
+				removeId(entity.getId());
+				removeSlot(slot);
+				collectionChanged = true;
+			}
+		}
+		return collectionChanged;
 	}
 
 	@Override
 	public void clear() {
-		ids.clear();
+		slots.clear();
+		unsavedSlot = IdIndex.ABSENT;
 		entities.clear();
+		for (SortedView<?> view : views) {
+			view.clear();
+		}
+		modCount++;
 	}
 
+	/**
+	 * Sorts the entities, which are then iterated in the given order until the next
+	 * removal. This takes {@code O(n log n)} on every call; a
+	 * {@link #sortedView(Function, Comparator) sorted view} stays sorted instead.
+	 */
 	public void sort(Comparator<Entity> comparator) {
 		entities.sort(comparator);
+		for (int slot = 0; slot < entities.size(); slot++) {
+			putSlot(entities.get(slot).getId(), slot);
+		}
+		modCount++;
+	}
+
+	/**
+	 * Registers a view of the entities sorted by a key, kept sorted as entities are added,
+	 * replaced and removed. Entities with equal keys are ordered by id.
+	 * <p>
+	 * The key of an entity is read when it is added: an entity whose key changed must be
+	 * added again to move in the view.
+	 * @param key extracts the sort key of an entity, which may be {@code null}
+	 * @param order the order of the keys; {@code null} keys come first
+	 */
+	public <K> SortedView<K> sortedView(Function<? super Entity, ? extends K> key, Comparator<? super K> order) {
+		SortedView<K> view = new SortedView<>(key, order);
+		for (Entity entity : entities) {
+			view.add(entity);
+		}
+		views.add(view);
+		return view;
+	}
+
+	/**
+	 * Unregisters a sorted view, which then no longer follows the changes of this map.
+	 */
+	public void removeSortedView(SortedView<?> view) {
+		views.remove(view);
+	}
+
+	@Override
+	public String toString() {
+		return entities.toString();
+	}
+
+	/**
+	 * The entities of an {@link IdentityMap} sorted by a key. The iterators are
+	 * read-only and fail-fast.
+	 */
+	public final class SortedView<K> implements Iterable<Entity> {
+
+		private final Function<? super Entity, ? extends K> key;
+
+		private final Comparator<? super K> order;
+
+		private final NavigableSet<Node<Entity, K>> tree;
+
+		/** The nodes by entity id, as the key of a replaced entity may have changed. */
+		private final Map<Integer, Node<Entity, K>> nodes = new HashMap<>();
+
+		SortedView(Function<? super Entity, ? extends K> key, Comparator<? super K> order) {
+			this.key = key;
+			this.order = Comparator.nullsFirst(order);
+			this.tree = new TreeSet<>(this::compare);
+		}
+
+		private int compare(Node<Entity, K> a, Node<Entity, K> b) {
+			int result = order.compare(a.key, b.key);
+			return (result != 0) ? result : Integer.compare(a.id, b.id);
+		}
+
+		void add(Entity entity) {
+			Node<Entity, K> node = new Node<>(key.apply(entity), entity.getId(), entity);
+			nodes.put(entity.getId(), node);
+			tree.add(node);
+		}
+
+		void remove(Entity entity) {
+			Node<Entity, K> node = nodes.remove(entity.getId());
+			if (node != null) {
+				tree.remove(node);
+			}
+		}
+
+		void clear() {
+			nodes.clear();
+			tree.clear();
+		}
+
+		public int size() {
+			return tree.size();
+		}
+
+		@Override
+		public Iterator<Entity> iterator() {
+			return entities(tree);
+		}
+
+		/**
+		 * Returns the entities whose key is at least {@code from} and less than
+		 * {@code to}, in order.
+		 * @param from the inclusive lower bound, or {@code null} for none
+		 * @param to the exclusive upper bound, or {@code null} for none
+		 */
+		public Iterable<Entity> range(K from, K to) {
+			if (from == null) {
+				return (to == null) ? this : () -> entities(tree.headSet(bound(to), false));
+			}
+			if (to == null) {
+				return () -> entities(tree.tailSet(bound(from), true));
+			}
+			if (order.compare(from, to) >= 0) {
+				return Collections.emptyList();
+			}
+			return () -> entities(tree.subSet(bound(from), true, bound(to), false));
+		}
+
+		/**
+		 * Returns the entities whose key starts with the given prefix, in order. Only
+		 * applies to views of {@code String} keys in their natural order.
+		 */
+		@SuppressWarnings("unchecked")
+		public Iterable<Entity> prefix(String prefix) {
+			return range((K) prefix, (K) (prefix + Character.MAX_VALUE));
+		}
+
+		/**
+		 * Returns a node sorting before every entity with the given key, as entity ids
+		 * are compared after the keys.
+		 */
+		private Node<Entity, K> bound(K key) {
+			return new Node<>(key, Integer.MIN_VALUE, null);
+		}
+
+	}
+
+	private static final class Node<E, K> {
+
+		final K key;
+
+		final int id;
+
+		final E entity;
+
+		Node(K key, Integer id, E entity) {
+			this.key = key;
+			this.id = (id != null) ? id : Integer.MIN_VALUE;
+			this.entity = entity;
+		}
+
+	}
+
+	private static <E, K> Iterator<E> entities(Collection<Node<E, K>> nodes) {
+		Iterator<Node<E, K>> iterator = nodes.iterator();
+		return new Iterator<E>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next().entity;
+			}
+
+		};
+	}
+
+	private final class Itr implements Iterator<Entity> {
+
+		private int cursor;
+
+		private int lastReturned = -1;
+
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return cursor < entities.size();
+		}
+
+		@Override
+		public Entity next() {
+			checkForComodification();
+			if (cursor >= entities.size()) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = cursor++;
+			return entities.get(lastReturned);
+		}
+
+		/**
+		 * Removes the last returned entity. The last entity moves into its slot, which
+		 * is therefore visited again.
+		 */
+		@Override
+		public void remove() {
+			if (lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			checkForComodification();
+			removeId(entities.get(lastReturned).getId());
+			removeSlot(lastReturned);
+			cursor = lastReturned;
+			lastReturned = -1;
+			expectedModCount = modCount;
+		}
+
+		private void checkForComodification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
 	}
+
 }
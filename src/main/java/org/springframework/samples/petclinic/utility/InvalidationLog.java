@@ -0,0 +1,252 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps the {@link TimedCache}s of several application nodes sharing one database
+ * consistent: a save on one node appends the id and version of the saved entity to the
+ * {@code cache_invalidation} table, and every node polls the table for new rows and
+ * evicts the cached entities older than the saved version. The node that saved keeps
+ * its copy, which already is the saved version.
+ * <p>
+ * A poll reads the rows past the last one seen by primary key, in batches, so that it
+ * uses the primary key index and stays cheap however long the table is. Identity values
+ * are allocated before their insert commits, so a row may become visible after rows
+ * with higher ids; the skipped ids are polled again for a few seconds. Rows older than
+ * the retention are deleted.
+ * <p>
+ * The polls run on the clean-up thread of the {@link CacheScheduler}. A load that read
+ * the database before a save on another node and completes after its invalidation was
+ * polled still installs the previous version, which then lives until it expires.
+ */
+@Component
+@EnableConfigurationProperties(TimedCachesProperties.class)
+public class InvalidationLog implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(InvalidationLog.class);
+
+	private static final String INSERT = "INSERT INTO cache_invalidation (cache_name, entity_id, version) "
+			+ "VALUES (?, ?, ?)";
+
+	private static final String POLL = "SELECT id, cache_name, entity_id, version FROM cache_invalidation "
+			+ "WHERE id > ? ORDER BY id LIMIT ?";
+
+	private static final String LAST_ID = "SELECT MAX(id) FROM cache_invalidation";
+
+	private static final String PRUNE = "DELETE FROM cache_invalidation WHERE created_at < ?";
+
+	private static final long GAP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private static final int MAX_GAP = 1_000;
+
+	private final JdbcTemplate jdbc;
+
+	private final TimedCachesProperties.Invalidation properties;
+
+	private final CacheScheduler scheduler;
+
+	private final Map<String, VersionedCache<?>> caches = new ConcurrentHashMap<>();
+
+	/** The ids skipped by the polls, with the time until which they are polled again. */
+	private final NavigableMap<Long, Long> gaps = new TreeMap<>();
+
+	private final Object monitor = new Object();
+
+	private long lastId;
+
+	private List<ScheduledFuture<?>> tasks;
+
+	@Autowired
+	public InvalidationLog(JdbcTemplate jdbc, TimedCachesProperties properties, CacheScheduler scheduler) {
+		this.jdbc = jdbc;
+		this.properties = properties.getInvalidation();
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Registers a cache keyed by entity id, evicted by the saves of the other nodes.
+	 * @param version returns the version of a cached entity
+	 */
+	public <V> void register(TimedCache<Integer, V> cache, ToIntFunction<? super V> version) {
+		caches.put(cache.getName(), new VersionedCache<>(cache, version));
+	}
+
+	/**
+	 * Tells the other nodes that an entity was saved. A failure is logged rather than
+	 * thrown, as the save itself succeeded; the other nodes then serve the previous
+	 * version until it expires.
+	 */
+	public void publish(String cacheName, int id, int version) {
+		if (!properties.isEnabled()) {
+			return;
+		}
+		try {
+			jdbc.update(INSERT, cacheName, id, version);
+		}
+		catch (DataAccessException ex) {
+			log.warn("Publishing the save of " + cacheName + " " + id + " failed", ex);
+		}
+	}
+
+	/**
+	 * Reads the rows added since the previous poll and evicts the entities they name.
+	 */
+	void poll() {
+		try {
+			long now = System.nanoTime();
+			long cursor = gaps.isEmpty() ? lastId : Math.min(lastId, gaps.firstKey() - 1);
+			List<Invalidation> batch;
+			do {
+				batch = jdbc.query(POLL, (rs, row) -> new Invalidation(rs.getLong(1), rs.getString(2), rs.getInt(3),
+						rs.getInt(4)), cursor, properties.getBatchSize());
+				for (Invalidation invalidation : batch) {
+					cursor = invalidation.id;
+					if (accept(invalidation.id, now)) {
+						evict(invalidation);
+					}
+				}
+			}
+			while (batch.size() == properties.getBatchSize());
+			gaps.values().removeIf(deadline -> deadline - now < 0);
+		}
+		catch (DataAccessException ex) {
+			log.warn("Polling the cache invalidations failed", ex);
+		}
+	}
+
+	/**
+	 * Returns whether a row was not seen yet, advancing past it and remembering the ids
+	 * skipped to reach it.
+	 */
+	private boolean accept(long id, long now) {
+		if (id <= lastId) {
+			return gaps.remove(id) != null;
+		}
+		if (id - lastId <= MAX_GAP) {
+			for (long skipped = lastId + 1; skipped < id; skipped++) {
+				gaps.put(skipped, now + GAP_TIMEOUT_NANOS);
+			}
+		}
+		lastId = id;
+		return true;
+	}
+
+	private void evict(Invalidation invalidation) {
+		VersionedCache<?> cache = caches.get(invalidation.cacheName);
+		if (cache != null) {
+			cache.evictOlderThan(invalidation.entityId, invalidation.version);
+		}
+	}
+
+	/**
+	 * Deletes the rows older than the retention.
+	 */
+	void prune() {
+		try {
+			jdbc.update(PRUNE, new Timestamp(System.currentTimeMillis() - properties.getRetention().toMillis()));
+		}
+		catch (DataAccessException ex) {
+			log.warn("Pruning the cache invalidations failed", ex);
+		}
+	}
+
+	/**
+	 * Starts polling from the last row, as the caches of a starting node are empty.
+	 */
+	@Override
+	public void start() {
+		synchronized (monitor) {
+			if (!properties.isEnabled() || (tasks != null)) {
+				return;
+			}
+			Long last = jdbc.queryForObject(LAST_ID, Long.class);
+			lastId = (last != null) ? last : 0;
+			gaps.clear();
+			tasks = new ArrayList<>();
+			tasks.add(scheduler.schedule(this::poll, properties.getPollInterval()));
+			tasks.add(scheduler.schedule(this::prune, properties.getRetention()));
+		}
+	}
+
+	@Override
+	public void stop() {
+		synchronized (monitor) {
+			if (tasks == null) {
+				return;
+			}
+			tasks.forEach(task -> task.cancel(false));
+			tasks = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		synchronized (monitor) {
+			return tasks != null;
+		}
+	}
+
+	/**
+	 * Starts after and stops before the {@link CacheScheduler} it depends on.
+	 */
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	private static final class Invalidation {
+
+		final long id;
+
+		final String cacheName;
+
+		final int entityId;
+
+		final int version;
+
+		Invalidation(long id, String cacheName, int entityId, int version) {
+			this.id = id;
+			this.cacheName = cacheName;
+			this.entityId = entityId;
+			this.version = version;
+		}
+
+	}
+
+	private static final class VersionedCache<V> {
+
+		private final TimedCache<Integer, V> cache;
+
+		private final ToIntFunction<? super V> version;
+
+		VersionedCache(TimedCache<Integer, V> cache, ToIntFunction<? super V> version) {
+			this.cache = cache;
+			this.version = version;
+		}
+
+		void evictOlderThan(int id, int saved) {
+			cache.recordWrite(id);
+			cache.invalidateIf(id, value -> version.applyAsInt(value) < saved);
+		}
+
+	}
+
+}
@@ -0,0 +1,302 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A concurrent open-addressing hash table of nodes that carry their own key. Each slot
+ * holds a single reference, so a mapping costs one array slot instead of a hash node,
+ * and lookups allocate nothing. {@link Integer} keys can also be looked up by their
+ * primitive value, which does not box it; a node may then keep its key as an
+ * {@code int} too, by overriding the hashing and matching of {@link Keyed}.
+ * <p>
+ * The table is split into segments. Writers lock their segment and probe linearly;
+ * removed slots are marked with a tombstone and reclaimed when the segment is rehashed.
+ * A segment is not sized by powers of two, which would leave a table just rehashed three
+ * quarters empty: it is rehashed to a load of five eighths when three quarters of its
+ * slots are used, so that it stays between the two and a mapping costs 5.3 to 6.4 bytes
+ * of table with compressed references.
+ * Readers do not lock: slots are read with volatile semantics and a resize publishes a
+ * fresh table, so a reader either sees a node or misses a write that raced with it.
+ */
+final class NodeMap<K, N extends NodeMap.Keyed<K>> {
+
+	private static final Object TOMBSTONE = new Object();
+
+	private static final int SEGMENT_SHIFT = 28;
+
+	private static final int SEGMENTS = 1 << (32 - SEGMENT_SHIFT);
+
+	private static final int MINIMUM_CAPACITY = 16;
+
+	/** The bits of a hash that pick the slot; the upper ones pick the segment. */
+	private static final long SLOT_BITS = (1L << SEGMENT_SHIFT) - 1;
+
+	private final Segment[] segments;
+
+	NodeMap() {
+		segments = new Segment[SEGMENTS];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	N get(Object key) {
+		int hash = hash(key.hashCode());
+		AtomicReferenceArray<Object> table = segmentFor(hash).table;
+		int length = table.length();
+		for (int index = indexFor(hash, length);; index = next(index, length)) {
+			Object slot = table.get(index);
+			if (slot == null) {
+				return null;
+			}
+			if ((slot != TOMBSTONE) && ((N) slot).hasKey(key)) {
+				return (N) slot;
+			}
+		}
+	}
+
+	/**
+	 * Looks up the node of an {@link Integer} key by its primitive value.
+	 */
+	@SuppressWarnings("unchecked")
+	N get(int key) {
+		int hash = hash(key);
+		AtomicReferenceArray<Object> table = segmentFor(hash).table;
+		int length = table.length();
+		for (int index = indexFor(hash, length);; index = next(index, length)) {
+			Object slot = table.get(index);
+			if (slot == null) {
+				return null;
+			}
+			if ((slot != TOMBSTONE) && ((N) slot).hasKey(key)) {
+				return (N) slot;
+			}
+		}
+	}
+
+	/**
+	 * Maps the node's key to the node.
+	 * @return the node previously mapped to the key, or {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	N put(N node) {
+		int hash = hash(node.keyHashCode());
+		Segment segment = segmentFor(hash);
+		segment.lock();
+		try {
+			return (N) segment.put(node, hash);
+		}
+		finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * Removes the mapping of the key if it is the given node.
+	 * @return whether the node was removed
+	 */
+	boolean remove(Object key, N node) {
+		int hash = hash(key.hashCode());
+		Segment segment = segmentFor(hash);
+		segment.lock();
+		try {
+			return segment.remove(key, node, hash);
+		}
+		finally {
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * Removes the mapping of the node's key if it is the node, without asking the node
+	 * for a boxed key.
+	 * @return whether the node was removed
+	 */
+	boolean remove(N node) {
+		int hash = hash(node.keyHashCode());
+		Segment segment = segmentFor(hash);
+		segment.lock();
+		try {
+			return segment.remove(node, hash);
+		}
+		finally {
+			segment.unlock();
+		}
+	}
+
+	int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.count;
+		}
+		return size;
+	}
+
+	/**
+	 * Visits the mapped nodes; concurrent writes may or may not be seen.
+	 */
+	@SuppressWarnings("unchecked")
+	void forEach(Consumer<? super N> action) {
+		for (Segment segment : segments) {
+			AtomicReferenceArray<Object> table = segment.table;
+			for (int i = 0; i < table.length(); i++) {
+				Object slot = table.get(i);
+				if ((slot != null) && (slot != TOMBSTONE)) {
+					action.accept((N) slot);
+				}
+			}
+		}
+	}
+
+	private Segment segmentFor(int hash) {
+		return segments[hash >>> SEGMENT_SHIFT];
+	}
+
+	/**
+	 * Spreads the bits of a hash code, so that sequential keys do not cluster.
+	 */
+	private static int hash(int hashCode) {
+		int h = hashCode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Maps the slot bits of a hash onto a table of any length, by multiplying rather than
+	 * masking.
+	 */
+	private static int indexFor(int hash, int length) {
+		return (int) (((hash & SLOT_BITS) * length) >>> SEGMENT_SHIFT);
+	}
+
+	private static int next(int index, int length) {
+		return (index + 1 == length) ? 0 : index + 1;
+	}
+
+	/**
+	 * A node that knows its own key. A node keeping a primitive key overrides the other
+	 * methods, so that the map never boxes it.
+	 */
+	interface Keyed<K> {
+
+		K getKey();
+
+		default int keyHashCode() {
+			return getKey().hashCode();
+		}
+
+		default boolean hasKey(Object key) {
+			Object own = getKey();
+			return (own == key) || own.equals(key);
+		}
+
+		default boolean hasKey(int key) {
+			Object own = getKey();
+			return (own instanceof Integer) && (((Integer) own) == key);
+		}
+
+	}
+
+	private static final class Segment extends ReentrantLock {
+
+		volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(MINIMUM_CAPACITY);
+
+		volatile int count;
+
+		/** Slots that are not null, including tombstones. */
+		int used;
+
+		Object put(Keyed<?> node, int hash) {
+			Object key = node.getKey();
+			AtomicReferenceArray<Object> tab = table;
+			int length = tab.length();
+			int free = -1;
+			for (int index = indexFor(hash, length);; index = next(index, length)) {
+				Object slot = tab.get(index);
+				if (slot == null) {
+					if (free < 0) {
+						free = index;
+						used++;
+					}
+					break;
+				}
+				if (slot == TOMBSTONE) {
+					if (free < 0) {
+						free = index;
+					}
+				}
+				else if (((Keyed<?>) slot).hasKey(key)) {
+					tab.set(index, node);
+					return slot;
+				}
+			}
+			tab.set(free, node);
+			count = count + 1;
+			if (used > (length - (length >>> 2))) {
+				rehash();
+			}
+			return null;
+		}
+
+		boolean remove(Object key, Keyed<?> node, int hash) {
+			AtomicReferenceArray<Object> tab = table;
+			int length = tab.length();
+			for (int index = indexFor(hash, length);; index = next(index, length)) {
+				Object slot = tab.get(index);
+				if (slot == null) {
+					return false;
+				}
+				if ((slot != TOMBSTONE) && ((Keyed<?>) slot).hasKey(key)) {
+					if ((node != null) && (slot != node)) {
+						return false;
+					}
+					tab.set(index, TOMBSTONE);
+					count = count - 1;
+					return true;
+				}
+			}
+		}
+
+		boolean remove(Keyed<?> node, int hash) {
+			AtomicReferenceArray<Object> tab = table;
+			int length = tab.length();
+			for (int index = indexFor(hash, length);; index = next(index, length)) {
+				Object slot = tab.get(index);
+				if (slot == null) {
+					return false;
+				}
+				if (slot == node) {
+					tab.set(index, TOMBSTONE);
+					count = count - 1;
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Copies the live nodes into a new table loaded to five eighths, dropping the
+		 * tombstones, and publishes it.
+		 */
+		private void rehash() {
+			AtomicReferenceArray<Object> old = table;
+			int capacity = Math.max(MINIMUM_CAPACITY, count + ((count * 3 + 4) / 5));
+			AtomicReferenceArray<Object> tab = new AtomicReferenceArray<>(capacity);
+			for (int i = 0; i < old.length(); i++) {
+				Object slot = old.get(i);
+				if ((slot != null) && (slot != TOMBSTONE)) {
+					int index = indexFor(hash(((Keyed<?>) slot).keyHashCode()), capacity);
+					while (tab.get(index) != null) {
+						index = next(index, capacity);
+					}
+					tab.lazySet(index, slot);
+				}
+			}
+			used = count;
+			table = tab;
+		}
+
+	}
+
+}
@@ -0,0 +1,384 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A store of serialized snapshots outside the Java heap, used as the second tier of the
+ * {@link PetTimedCache}. Memory is split into slabs of fixed-size slots; a snapshot
+ * occupies one slot behind a header holding its key, version, expiry and checksum, so
+ * the garbage collector only sees the small on-heap index.
+ * <p>
+ * The slabs are either direct buffers or regions of a memory-mapped file. A mapped tier
+ * rebuilds its index from the slot headers when reopened, which keeps it warm across a
+ * restart; expiry times are wall-clock millis for that reason. When every slot is
+ * taken, slots are reused in round-robin order, which approximates FIFO eviction.
+ */
+final class OffHeapTier implements Closeable {
+
+	private static final int MAGIC = 0x50455431;
+
+	private static final int KEY_OFFSET = 4;
+
+	private static final int VERSION_OFFSET = 8;
+
+	private static final int EXPIRES_AT_OFFSET = 12;
+
+	private static final int LENGTH_OFFSET = 20;
+
+	private static final int CRC_OFFSET = 24;
+
+	static final int HEADER_SIZE = 28;
+
+	static final int SLAB_SIZE = 64 * 1024 * 1024;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final NodeMap<Integer, Slot> index = new NodeMap<>();
+
+	private final ByteBuffer[] slabs;
+
+	private final FileChannel channel;
+
+	private final int slotSize;
+
+	private final int slotsPerSlab;
+
+	private final int slots;
+
+	private final int[] free;
+
+	private int freeCount;
+
+	private int hand;
+
+	private boolean closed;
+
+	private OffHeapTier(ByteBuffer[] slabs, FileChannel channel, int slotSize, int slots) {
+		this.slabs = slabs;
+		this.channel = channel;
+		this.slotSize = slotSize;
+		this.slotsPerSlab = SLAB_SIZE / slotSize;
+		this.slots = slots;
+		this.free = new int[slots];
+	}
+
+	/**
+	 * Creates a tier in direct buffers.
+	 */
+	static OffHeapTier allocate(long capacity, int slotSize) {
+		int slots = slotCount(capacity, slotSize);
+		int slotsPerSlab = SLAB_SIZE / slotSize;
+		ByteBuffer[] slabs = new ByteBuffer[(slots + slotsPerSlab - 1) / slotsPerSlab];
+		for (int i = 0; i < slabs.length; i++) {
+			int slabSlots = Math.min(slotsPerSlab, slots - i * slotsPerSlab);
+			slabs[i] = ByteBuffer.allocateDirect(slabSlots * slotSize);
+		}
+		OffHeapTier tier = new OffHeapTier(slabs, null, slotSize, slots);
+		tier.recover(Long.MAX_VALUE);
+		return tier;
+	}
+
+	/**
+	 * Opens a tier mapped to a file, keeping the snapshots that it already holds and that
+	 * have not expired. A file of a different size is discarded.
+	 * @param nowMillis the current wall-clock time
+	 */
+	static OffHeapTier map(Path file, long capacity, int slotSize, long nowMillis) throws IOException {
+		int slots = slotCount(capacity, slotSize);
+		long size = (long) slots * slotSize;
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() != size) {
+				channel.truncate(0);
+			}
+			int slotsPerSlab = SLAB_SIZE / slotSize;
+			ByteBuffer[] slabs = new ByteBuffer[(slots + slotsPerSlab - 1) / slotsPerSlab];
+			for (int i = 0; i < slabs.length; i++) {
+				long position = (long) i * slotsPerSlab * slotSize;
+				slabs[i] = channel.map(FileChannel.MapMode.READ_WRITE, position,
+						Math.min((long) slotsPerSlab * slotSize, size - position));
+			}
+			OffHeapTier tier = new OffHeapTier(slabs, channel, slotSize, slots);
+			tier.recover(nowMillis);
+			return tier;
+		}
+		catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	private static int slotCount(long capacity, int slotSize) {
+		if ((slotSize <= HEADER_SIZE) || (slotSize > SLAB_SIZE)) {
+			throw new IllegalArgumentException("Slot size must be between " + (HEADER_SIZE + 1) + " and "
+					+ SLAB_SIZE + " bytes: " + slotSize);
+		}
+		long slots = capacity / slotSize;
+		if ((slots < 1) || (slots > Integer.MAX_VALUE)) {
+			throw new IllegalArgumentException("Capacity must hold between 1 and " + Integer.MAX_VALUE
+					+ " slots: " + capacity);
+		}
+		return (int) slots;
+	}
+
+	/**
+	 * Indexes the valid, unexpired snapshots found in the slots and frees the others.
+	 * When a key appears twice, the higher version wins.
+	 */
+	private void recover(long nowMillis) {
+		for (int slot = slots - 1; slot >= 0; slot--) {
+			ByteBuffer slab = slab(slot);
+			int offset = offset(slot);
+			if ((slab.getInt(offset) != MAGIC) || (slab.getLong(offset + EXPIRES_AT_OFFSET) <= nowMillis)
+					|| !checksumMatches(slab, offset)) {
+				release(slot);
+				continue;
+			}
+			int key = slab.getInt(offset + KEY_OFFSET);
+			int version = slab.getInt(offset + VERSION_OFFSET);
+			Slot existing = index.get(key);
+			if ((existing != null) && (existing.version >= version)) {
+				release(slot);
+			}
+			else {
+				if (existing != null) {
+					release(existing.slot);
+				}
+				index.put(new Slot(key, slot, version));
+			}
+		}
+	}
+
+	private boolean checksumMatches(ByteBuffer slab, int offset) {
+		int length = slab.getInt(offset + LENGTH_OFFSET);
+		if ((length < 0) || (length > slotSize - HEADER_SIZE)) {
+			return false;
+		}
+		return slab.getInt(offset + CRC_OFFSET) == checksum(slab, offset + HEADER_SIZE, length);
+	}
+
+	private static int checksum(ByteBuffer slab, int offset, int length) {
+		ByteBuffer payload = slab.duplicate();
+		payload.limit(offset + length).position(offset);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Stores a snapshot, replacing the one of the same key.
+	 * @return whether the snapshot was stored; it is not if it does not fit in a slot
+	 */
+	boolean put(int key, int version, long expiresAtMillis, byte[] payload) {
+		if (payload.length > slotSize - HEADER_SIZE) {
+			return false;
+		}
+		lock.lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			Slot existing = index.get(key);
+			int slot = (existing != null) ? existing.slot : allocate();
+			ByteBuffer slab = slab(slot);
+			int offset = offset(slot);
+			slab.putInt(offset, 0);
+			slab.putInt(offset + KEY_OFFSET, key);
+			slab.putInt(offset + VERSION_OFFSET, version);
+			slab.putLong(offset + EXPIRES_AT_OFFSET, expiresAtMillis);
+			slab.putInt(offset + LENGTH_OFFSET, payload.length);
+			ByteBuffer target = slab.duplicate();
+			target.position(offset + HEADER_SIZE);
+			target.put(payload);
+			slab.putInt(offset + CRC_OFFSET, checksum(slab, offset + HEADER_SIZE, payload.length));
+			slab.putInt(offset, MAGIC);
+			index.put(new Slot((existing != null) ? existing.key : Integer.valueOf(key), slot, version));
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns the snapshot of a key, as done when it is promoted back to the
+	 * heap.
+	 * @param nowMillis the current wall-clock time; an expired snapshot is dropped
+	 * @return the snapshot, or {@code null} if there is none or it expired
+	 */
+	Snapshot take(int key, long nowMillis) {
+		if (index.get(key) == null) {
+			return null;
+		}
+		lock.lock();
+		try {
+			Slot existing = index.get(key);
+			if ((existing == null) || closed) {
+				return null;
+			}
+			ByteBuffer slab = slab(existing.slot);
+			int offset = offset(existing.slot);
+			long expiresAt = slab.getLong(offset + EXPIRES_AT_OFFSET);
+			Snapshot snapshot = null;
+			if (expiresAt > nowMillis) {
+				byte[] payload = new byte[slab.getInt(offset + LENGTH_OFFSET)];
+				ByteBuffer source = slab.duplicate();
+				source.position(offset + HEADER_SIZE);
+				source.get(payload);
+				snapshot = new Snapshot(existing.version, expiresAt, payload);
+			}
+			remove(existing);
+			return snapshot;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	void remove(int key) {
+		if (index.get(key) == null) {
+			return;
+		}
+		lock.lock();
+		try {
+			Slot existing = index.get(key);
+			if ((existing != null) && !closed) {
+				remove(existing);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every snapshot.
+	 */
+	void clear() {
+		lock.lock();
+		try {
+			if (!closed) {
+				index.forEach(this::remove);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		return index.size();
+	}
+
+	boolean isPersistent() {
+		return channel != null;
+	}
+
+	/**
+	 * Flushes a mapped tier to its file and stops accepting snapshots.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (channel != null) {
+				for (ByteBuffer slab : slabs) {
+					((MappedByteBuffer) slab).force();
+				}
+				channel.close();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void remove(Slot existing) {
+		index.remove(existing.key, existing);
+		release(existing.slot);
+	}
+
+	private void release(int slot) {
+		slab(slot).putInt(offset(slot), 0);
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * Takes a free slot, or reuses the slot under the hand and drops its snapshot.
+	 */
+	private int allocate() {
+		if (freeCount > 0) {
+			return free[--freeCount];
+		}
+		int slot = hand;
+		hand = (hand + 1) % slots;
+		int key = slab(slot).getInt(offset(slot) + KEY_OFFSET);
+		Slot victim = index.get(key);
+		if ((victim != null) && (victim.slot == slot)) {
+			index.remove(key, victim);
+		}
+		return slot;
+	}
+
+	private ByteBuffer slab(int slot) {
+		return slabs[slot / slotsPerSlab];
+	}
+
+	private int offset(int slot) {
+		return (slot % slotsPerSlab) * slotSize;
+	}
+
+	/**
+	 * A snapshot taken out of the tier.
+	 */
+	static final class Snapshot {
+
+		final int version;
+
+		final long expiresAtMillis;
+
+		final byte[] payload;
+
+		Snapshot(int version, long expiresAtMillis, byte[] payload) {
+			this.version = version;
+			this.expiresAtMillis = expiresAtMillis;
+			this.payload = payload;
+		}
+
+	}
+
+	private static final class Slot implements NodeMap.Keyed<Integer> {
+
+		final Integer key;
+
+		final int slot;
+
+		final int version;
+
+		Slot(Integer key, int slot, int version) {
+			this.key = key;
+			this.slot = slot;
+			this.version = version;
+		}
+
+		@Override
+		public Integer getKey() {
+			return key;
+		}
+
+	}
+
+}
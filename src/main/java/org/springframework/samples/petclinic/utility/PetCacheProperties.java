@@ -0,0 +1,83 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the {@link PetTimedCache}, bound from {@code petclinic.cache.pets.*}.
+ */
+@ConfigurationProperties("petclinic.cache.pets")
+public class PetCacheProperties extends TimedCacheProperties {
+
+	private final OffHeap offHeap = new OffHeap();
+
+	public OffHeap getOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Settings of the off-heap second tier that pets evicted from the heap are demoted
+	 * to.
+	 */
+	public static class OffHeap {
+
+		/**
+		 * Whether pets evicted to keep the cache within its bounds are demoted off-heap
+		 * instead of discarded.
+		 */
+		private boolean enabled;
+
+		/**
+		 * Memory reserved for the off-heap tier.
+		 */
+		private DataSize capacity = DataSize.ofMegabytes(64);
+
+		/**
+		 * Size of the slot holding one pet, including a 28 byte header. Pets that do not
+		 * fit are not demoted.
+		 */
+		private DataSize slotSize = DataSize.ofBytes(512);
+
+		/**
+		 * File the tier is mapped to, so that it survives a restart. Direct buffers are
+		 * used when not set.
+		 */
+		private Path file;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public DataSize getCapacity() {
+			return capacity;
+		}
+
+		public void setCapacity(DataSize capacity) {
+			this.capacity = capacity;
+		}
+
+		public DataSize getSlotSize() {
+			return slotSize;
+		}
+
+		public void setSlotSize(DataSize slotSize) {
+			this.slotSize = slotSize;
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		public void setFile(Path file) {
+			this.file = file;
+		}
+
+	}
+
+}
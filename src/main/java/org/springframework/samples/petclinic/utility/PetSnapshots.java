@@ -0,0 +1,113 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+/**
+ * Encodes a {@link Pet} with its type and owner into a compact binary snapshot and back.
+ * Only the columns are written, not the owner's other pets or the pet's visits, which
+ * are loaded separately.
+ */
+final class PetSnapshots {
+
+	private PetSnapshots() {
+	}
+
+	static byte[] encode(Pet pet) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writeInteger(out, pet.getId());
+			out.writeInt(pet.getVersion());
+			writeString(out, pet.getName());
+			LocalDate birthDate = pet.getBirthDate();
+			out.writeBoolean(birthDate != null);
+			if (birthDate != null) {
+				out.writeLong(birthDate.toEpochDay());
+			}
+			PetType type = pet.getType();
+			out.writeBoolean(type != null);
+			if (type != null) {
+				writeInteger(out, type.getId());
+				writeString(out, type.getName());
+			}
+			Owner owner = pet.getOwner();
+			out.writeBoolean(owner != null);
+			if (owner != null) {
+				writeInteger(out, owner.getId());
+				writeString(out, owner.getFirstName());
+				writeString(out, owner.getLastName());
+				writeString(out, owner.getAddress());
+				writeString(out, owner.getCity());
+				writeString(out, owner.getTelephone());
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	static Pet decode(byte[] snapshot) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+			Pet pet = new Pet();
+			pet.setId(readInteger(in));
+			pet.setVersion(in.readInt());
+			pet.setName(readString(in));
+			if (in.readBoolean()) {
+				pet.setBirthDate(LocalDate.ofEpochDay(in.readLong()));
+			}
+			if (in.readBoolean()) {
+				PetType type = new PetType();
+				type.setId(readInteger(in));
+				type.setName(readString(in));
+				pet.setType(type);
+			}
+			if (in.readBoolean()) {
+				Owner owner = new Owner();
+				owner.setId(readInteger(in));
+				owner.setFirstName(readString(in));
+				owner.setLastName(readString(in));
+				owner.setAddress(readString(in));
+				owner.setCity(readString(in));
+				owner.setTelephone(readString(in));
+				owner.addPet(pet);
+			}
+			return pet;
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeInt(value);
+		}
+	}
+
+	private static Integer readInteger(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readInt() : null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
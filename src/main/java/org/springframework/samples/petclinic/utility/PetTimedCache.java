@@ -1,99 +1,259 @@
 package org.springframework.samples.petclinic.utility;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetRepository;
 import org.springframework.stereotype.Component;
 
-import java.text.SimpleDateFormat;
-	import java.util.Date;
-	import java.util.Map;
-	import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
+ * A read-through {@link TimedCache} of {@link Pet}s loaded from the
+ * {@link PetRepository}. Lookups by the primitive pet id do not box it on a hit, and
+ * {@link #getAll(Collection) bulk lookups} load all their misses with one {@code IN}
+ * query per chunk of ids.
+ * <p>
+ * Saves write through and install the saved pet. Installs are ordered by the
+ * {@link Pet#getVersion() version} of the pets, so a load that read the database before
+ * a concurrent save cannot bring back the previous state.
+ * <p>
+ * Optionally, pets evicted from the heap to respect the bounds are demoted to an
+ * {@link OffHeapTier} as {@link PetSnapshots snapshots} and promoted back by the next
+ * miss, which saves the database query. A tier mapped to a file is reopened warm after a
+ * restart. Being {@link java.io.Closeable}, the cache is closed with the application
+ * context, which flushes such a tier.
+ * <p>
+ * With an {@link InvalidationLog}, saves are published to the other nodes sharing the
+ * database, and their saves evict the older versions of the pets cached here.
  *
  * @author Vivekananthan M
  */
 @Component
-public class PetTimedCache {
+@EnableConfigurationProperties(PetCacheProperties.class)
+public class PetTimedCache extends TimedCache<Integer, Pet> {
 
-	private final static Logger log = LoggerFactory.getLogger(PetTimedCache.class);
-	private final PetRepository repository;
+	/**
+	 * Maximum number of ids bound to one {@code IN} query.
+	 */
+	static final int MAX_IDS_PER_QUERY = 500;
 
-	private Map<Integer, Long> timeMap = new ConcurrentHashMap<Integer, Long>();
-	private Map<Integer, Pet> actualMap = new ConcurrentHashMap<Integer, Pet>();
+	private final PetRepository repository;
 
-	private long expiryInMillis = 10000;
-	private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("hh:mm:ss:SSS");
+	private final InvalidationLog invalidations;
 
 	@Autowired
-	public PetTimedCache(PetRepository repository) {
+	public PetTimedCache(PetRepository repository, PetCacheProperties properties, CacheScheduler scheduler,
+			ObjectProvider<InvalidationLog> invalidations) {
+		this(repository, properties, scheduler, invalidations.getIfAvailable());
+	}
+
+	public PetTimedCache(PetRepository repository, PetCacheProperties properties, CacheScheduler scheduler) {
+		this(repository, properties, scheduler, (InvalidationLog) null);
+	}
+
+	PetTimedCache(PetRepository repository, PetCacheProperties properties, CacheScheduler scheduler,
+			InvalidationLog invalidations) {
+		super(builder(repository, properties, System::currentTimeMillis).scheduler(scheduler));
 		this.repository = repository;
-		initialize();
+		this.invalidations = invalidations;
+		if (invalidations != null) {
+			invalidations.register(this, Pet::getVersion);
+		}
+	}
+
+	public PetTimedCache(PetRepository repository) {
+		this(repository, new PetCacheProperties(), null);
 	}
 
 	public PetTimedCache(long expiryInMillis, PetRepository repository) {
-		this.expiryInMillis = expiryInMillis;
+		this(repository, withExpiry(expiryInMillis), null);
+	}
+
+	PetTimedCache(PetRepository repository, PetCacheProperties properties, LongSupplier ticker,
+			Executor refreshExecutor) {
+		this(repository, properties, ticker, () -> TimeUnit.NANOSECONDS.toMillis(ticker.getAsLong()),
+				refreshExecutor);
+	}
+
+	/**
+	 * @param ticker the nanosecond clock driving expiration
+	 * @param wallClock the millisecond clock of the off-heap expiry times, which outlive
+	 * the process when the tier is mapped to a file
+	 */
+	PetTimedCache(PetRepository repository, PetCacheProperties properties, LongSupplier ticker, LongSupplier wallClock,
+			Executor refreshExecutor) {
+		super(builder(repository, properties, wallClock).ticker(ticker).wallClock(wallClock)
+				.refreshExecutor(refreshExecutor));
 		this.repository = repository;
-		initialize();
+		this.invalidations = null;
 	}
 
-	void initialize() {
-		new CleanerThread().start();
+	private static TimedCache.Builder<Integer, Pet> builder(PetRepository repository, PetCacheProperties properties,
+			LongSupplier wallClock) {
+		return TimedCache.<Integer, Pet>builder("pets", properties).loader(repository::findById)
+				.bulkLoader(MAX_IDS_PER_QUERY, ids -> byId(repository.findByIds(ids)))
+				.weigher(PetTimedCache::weigh).versionOrder(Comparator.comparingInt(Pet::getVersion))
+				.secondTier(secondTier(properties.getOffHeap(), wallClock));
 	}
 
-	private Pet put(Pet pet) {
-		Integer key = pet.getId();
-		Date date = new Date();
-		timeMap.put(key, date.getTime());
-		log.info("Inserting : " + SIMPLE_DATE_FORMAT.format(date) + " : " + key + " : " + pet);
-		Pet returnVal = actualMap.put(key, pet);
-		return returnVal;
+	private static TimedCache.SecondTier<Integer, Pet> secondTier(PetCacheProperties.OffHeap offHeap,
+			LongSupplier wallClock) {
+		if (!offHeap.isEnabled()) {
+			return null;
+		}
+		long capacity = offHeap.getCapacity().toBytes();
+		int slotSize = (int) offHeap.getSlotSize().toBytes();
+		if (offHeap.getFile() == null) {
+			return new OffHeapPets(OffHeapTier.allocate(capacity, slotSize));
+		}
+		try {
+			return new OffHeapPets(OffHeapTier.map(offHeap.getFile(), capacity, slotSize, wallClock.getAsLong()));
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Cannot map the off-heap pet cache to " + offHeap.getFile(), ex);
+		}
 	}
 
-	public Pet get(Integer key) {
-		if(actualMap.containsKey(key)) {
-			log.info("cache hit");
-			return actualMap.get(key);
-		} else {
-			log.info("cache miss");
-			Pet pet = repository.findById(key);
-			if(pet != null) {
-				put(pet);
-			}
-			return pet;
+	private static Map<Integer, Pet> byId(List<Pet> pets) {
+		Map<Integer, Pet> byId = new HashMap<>(pets.size() * 2);
+		for (Pet pet : pets) {
+			byId.put(pet.getId(), pet);
 		}
+		return byId;
+	}
+
+	private static PetCacheProperties withExpiry(long expiryInMillis) {
+		PetCacheProperties properties = new PetCacheProperties();
+		properties.setExpiry(Duration.ofMillis(expiryInMillis));
+		return properties;
+	}
+
+	public Pet get(int key) {
+		return getInt(key);
 	}
 
+	/**
+	 * Returns the pets with the given ids, from the cache or loaded together.
+	 * @return the pets found, ordered by id
+	 */
+	@Override
+	public Map<Integer, Pet> getAll(Collection<? extends Integer> ids) {
+		return super.getAll(new TreeSet<>(ids));
+	}
+
+	/**
+	 * Saves a pet and updates the cache with the saved version. A save that fails its
+	 * version check drops the cached pet, whose version is then known to be stale, so
+	 * that the next read loads the current one.
+	 * @param pet the pet to save
+	 * @throws OptimisticLockingFailureException if the pet was updated since it was
+	 * read
+	 */
 	public void save(Pet pet) {
-		repository.save(pet);
+		Pet saved;
+		try {
+			saved = repository.save(pet);
+		}
+		catch (OptimisticLockingFailureException ex) {
+			if (pet.getId() != null) {
+				invalidate(pet.getId());
+			}
+			throw ex;
+		}
+		if ((saved != null) && (saved.getId() != null)) {
+			recordWrite(saved.getId());
+			put(saved.getId(), saved);
+			if (invalidations != null) {
+				invalidations.publish(getName(), saved.getId(), saved.getVersion());
+			}
+		}
+		else if (pet.getId() != null) {
+			recordWrite(pet.getId());
+			invalidate(pet.getId());
+		}
+	}
+
+	/**
+	 * Estimates the heap retained by a cached pet: the entry and entity headers, its
+	 * strings and the eagerly loaded owner.
+	 */
+	static int weigh(Pet pet) {
+		int weight = 256 + weigh(pet.getName());
+		Owner owner = pet.getOwner();
+		if (owner != null) {
+			weight += 128 + weigh(owner.getFirstName()) + weigh(owner.getLastName()) + weigh(owner.getAddress())
+					+ weigh(owner.getCity()) + weigh(owner.getTelephone());
+		}
+		return weight;
 	}
 
-	class CleanerThread extends Thread {
+	private static int weigh(String value) {
+		return (value == null) ? 0 : 40 + 2 * value.length();
+	}
+
+	/**
+	 * Adapts the {@link OffHeapTier} to pets, storing their {@link PetSnapshots
+	 * snapshots} with their version.
+	 */
+	private static final class OffHeapPets implements TimedCache.SecondTier<Integer, Pet> {
+
+		private final OffHeapTier tier;
+
+		OffHeapPets(OffHeapTier tier) {
+			this.tier = tier;
+		}
+
 		@Override
-		public void run() {
-			log.info("Initiating Cleaner Thread...");
-			while (true) {
-				cleanMap();
-				try {
-					Thread.sleep(expiryInMillis / 2);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+		public boolean put(Integer key, Pet pet, long expiresAtMillis) {
+			return tier.put(key, pet.getVersion(), expiresAtMillis, PetSnapshots.encode(pet));
 		}
 
-		private void cleanMap() {
-			long currentTime = new Date().getTime();
-			for (Integer key : timeMap.keySet()) {
-				if (currentTime > (timeMap.get(key) + expiryInMillis)) {
-					Pet value = actualMap.remove(key);
-					timeMap.remove(key);
-					log.info("Removing : " + SIMPLE_DATE_FORMAT.format(new Date()) + " : " + key + " : " + value);
-				}
-			}
+		@Override
+		public TimedCache.Demoted<Pet> take(Integer key, long nowMillis) {
+			OffHeapTier.Snapshot snapshot = tier.take(key, nowMillis);
+			return (snapshot == null) ? null
+					: new TimedCache.Demoted<>(PetSnapshots.decode(snapshot.payload), snapshot.expiresAtMillis);
+		}
+
+		@Override
+		public void remove(Integer key) {
+			tier.remove(key);
+		}
+
+		@Override
+		public void clear() {
+			tier.clear();
 		}
+
+		@Override
+		public int size() {
+			return tier.size();
+		}
+
+		@Override
+		public boolean isPersistent() {
+			return tier.isPersistent();
+		}
+
+		@Override
+		public void close() throws IOException {
+			tier.close();
+		}
+
 	}
+
 }
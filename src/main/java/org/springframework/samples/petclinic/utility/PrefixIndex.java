@@ -0,0 +1,451 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * An index of names by prefix: the {@link #normalize(String) normalized} names with the
+ * id and the label of what they name, sorted by name and id in parallel arrays. A lookup
+ * is a binary search for the first name with the prefix, followed by a walk over the
+ * names that share it, so that it costs a few dozen string comparisons, without
+ * allocating but for its results.
+ * <p>
+ * An index is immutable, and so may be read by any number of threads; an update returns
+ * a new index. The sorted arrays are shared by the indexes derived from one another: an
+ * update only copies a small sorted delta of the names written since the arrays were
+ * built, and the sorted positions of the names it supersedes, which are found by id
+ * through a permutation of the positions sorted by id. Lookups merge the delta into the
+ * walk. Once the delta holds more names than the square root of the size, which balances
+ * the copies of the delta against those of the arrays, the next update merges it into
+ * new arrays in linear time.
+ */
+public final class PrefixIndex {
+
+	/** An index without names. */
+	public static final PrefixIndex EMPTY = new PrefixIndex(Sorted.EMPTY, Sorted.EMPTY, Sorted.NO_POSITIONS);
+
+	/** The smallest delta that is merged, so that small indexes are not merged often. */
+	private static final int MINIMUM_MERGED_DELTA = 32;
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private static final Comparator<Entry> ORDER = Comparator.comparing((Entry entry) -> entry.key)
+			.thenComparingInt(entry -> entry.id);
+
+	/** The names sorted when the index was built or last merged. */
+	private final Sorted base;
+
+	/** The names written since, one per id. */
+	private final Sorted delta;
+
+	/** The ascending positions of the base names that the delta supersedes. */
+	private final int[] superseded;
+
+	private PrefixIndex(Sorted base, Sorted delta, int[] superseded) {
+		this.base = base;
+		this.delta = delta;
+		this.superseded = superseded;
+	}
+
+	/**
+	 * Normalizes a name or prefix for lookups: trimmed, lower case and without accents,
+	 * so that "M&uuml;ller" is found by "mul".
+	 */
+	public static String normalize(String name) {
+		if (name == null) {
+			return "";
+		}
+		String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+		return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public int size() {
+		return base.size() - superseded.length + delta.size();
+	}
+
+	/**
+	 * Returns the first matches of a prefix, in the order of their names and ids.
+	 * @param prefix the prefix, normalized by this method
+	 * @param limit the maximum number of matches
+	 */
+	public List<Match> find(String prefix, int limit) {
+		String key = normalize(prefix);
+		List<Match> matches = new ArrayList<>(Math.max(0, Math.min(limit, 16)));
+		int i = base.lowerBound(key, Integer.MIN_VALUE);
+		int j = delta.lowerBound(key, Integer.MIN_VALUE);
+		int skip = lowerBound(superseded, i);
+		while (matches.size() < limit) {
+			if ((skip < superseded.length) && (superseded[skip] == i)) {
+				i++;
+				skip++;
+				continue;
+			}
+			boolean fromBase = (i < base.size()) && base.keys[i].startsWith(key);
+			boolean fromDelta = (j < delta.size()) && delta.keys[j].startsWith(key);
+			if (fromBase && fromDelta) {
+				fromBase = Sorted.compare(base, i, delta, j) < 0;
+			}
+			if (fromBase) {
+				matches.add(new Match(base.ids[i], base.labels[i]));
+				i++;
+			}
+			else if (fromDelta) {
+				matches.add(new Match(delta.ids[j], delta.labels[j]));
+				j++;
+			}
+			else {
+				break;
+			}
+		}
+		return Collections.unmodifiableList(matches);
+	}
+
+	/**
+	 * Returns an index with the given name and label for an id, replacing the current
+	 * ones of the id if it has any.
+	 */
+	public PrefixIndex with(int id, String name, String label) {
+		int[] superseded = this.superseded;
+		int position = base.positionOf(id);
+		if (position >= 0) {
+			int at = lowerBound(superseded, position);
+			if ((at == superseded.length) || (superseded[at] != position)) {
+				superseded = insert(superseded, at, position);
+			}
+		}
+		Sorted delta = this.delta.with(id, normalize(name), label);
+		if (delta.size() > Math.max(MINIMUM_MERGED_DELTA, (int) Math.sqrt(base.size()))) {
+			return new PrefixIndex(Sorted.merge(base, superseded, delta), Sorted.EMPTY, Sorted.NO_POSITIONS);
+		}
+		return new PrefixIndex(base, delta, superseded);
+	}
+
+	/**
+	 * Returns the position of the first value of an ascending array not below the given
+	 * one.
+	 */
+	private static int lowerBound(int[] values, int value) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < value) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static int[] insert(int[] values, int at, int value) {
+		int[] inserted = new int[values.length + 1];
+		System.arraycopy(values, 0, inserted, 0, at);
+		inserted[at] = value;
+		System.arraycopy(values, at, inserted, at + 1, values.length - at);
+		return inserted;
+	}
+
+	@Override
+	public String toString() {
+		return "PrefixIndex[" + size() + " names]";
+	}
+
+	/**
+	 * A name found by a prefix: the id and label it was added with.
+	 */
+	public static final class Match {
+
+		private final int id;
+
+		private final String label;
+
+		Match(int id, String label) {
+			this.id = id;
+			this.label = label;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		@Override
+		public String toString() {
+			return id + "=" + label;
+		}
+
+	}
+
+	/**
+	 * Collects the names of an index in any order, and sorts them once on
+	 * {@link #build()}. A name added twice for an id replaces the first one.
+	 */
+	public static final class Builder {
+
+		private final List<Entry> entries = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		public Builder add(int id, String name, String label) {
+			entries.add(new Entry(normalize(name), id, label));
+			return this;
+		}
+
+		public PrefixIndex build() {
+			Entry[] sorted = entries.toArray(new Entry[0]);
+			// stable, so that the last entry of an id is the one kept below
+			Arrays.sort(sorted, Comparator.comparingInt((Entry entry) -> entry.id));
+			int size = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if ((i + 1 == sorted.length) || (sorted[i + 1].id != sorted[i].id)) {
+					sorted[size++] = sorted[i];
+				}
+			}
+			sorted = Arrays.copyOf(sorted, size);
+			Arrays.parallelSort(sorted, ORDER);
+			String[] keys = new String[size];
+			int[] ids = new int[size];
+			String[] labels = new String[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = sorted[i].key;
+				ids[i] = sorted[i].id;
+				labels[i] = sorted[i].label;
+			}
+			return new PrefixIndex(new Sorted(keys, ids, labels, Sorted.positionsById(ids)), Sorted.EMPTY,
+					Sorted.NO_POSITIONS);
+		}
+
+	}
+
+	/**
+	 * Names sorted by name and id in parallel arrays, with their positions sorted by id.
+	 */
+	private static final class Sorted {
+
+		static final int[] NO_POSITIONS = new int[0];
+
+		static final Sorted EMPTY = new Sorted(new String[0], NO_POSITIONS, new String[0], NO_POSITIONS);
+
+		final String[] keys;
+
+		final int[] ids;
+
+		final String[] labels;
+
+		/** The positions of the names, ordered by their ids. */
+		final int[] byId;
+
+		Sorted(String[] keys, int[] ids, String[] labels, int[] byId) {
+			this.keys = keys;
+			this.ids = ids;
+			this.labels = labels;
+			this.byId = byId;
+		}
+
+		int size() {
+			return ids.length;
+		}
+
+		/**
+		 * Returns the position of the name of an id, or -1.
+		 */
+		int positionOf(int id) {
+			int low = 0;
+			int high = byId.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int candidate = ids[byId[middle]];
+				if (candidate < id) {
+					low = middle + 1;
+				}
+				else if (candidate > id) {
+					high = middle - 1;
+				}
+				else {
+					return byId[middle];
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns the position of the first name not ordered before the given name and
+		 * id.
+		 */
+		int lowerBound(String key, int id) {
+			int low = 0;
+			int high = keys.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				int comparison = keys[middle].compareTo(key);
+				if ((comparison < 0) || ((comparison == 0) && (ids[middle] < id))) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns a copy with the given name of an id, in place of its current one.
+		 */
+		Sorted with(int id, String key, String label) {
+			int old = positionOf(id);
+			int at = lowerBound(key, id);
+			int size = (old >= 0) ? ids.length : ids.length + 1;
+			if ((old >= 0) && (old < at)) {
+				at--;
+			}
+			String[] newKeys = new String[size];
+			int[] newIds = new int[size];
+			String[] newLabels = new String[size];
+			// copy the names but the old one of the id, leaving a gap at the new position
+			for (int from = 0, to = 0; from < ids.length; from++) {
+				if (from == old) {
+					continue;
+				}
+				if (to == at) {
+					to++;
+				}
+				newKeys[to] = keys[from];
+				newIds[to] = ids[from];
+				newLabels[to] = labels[from];
+				to++;
+			}
+			newKeys[at] = key;
+			newIds[at] = id;
+			newLabels[at] = label;
+			// move the other positions as the copy did, and put the new one in id order
+			int[] newById = new int[size];
+			int to = 0;
+			boolean placed = false;
+			for (int position : byId) {
+				if (position == old) {
+					continue;
+				}
+				if (!placed && (ids[position] > id)) {
+					newById[to++] = at;
+					placed = true;
+				}
+				int moved = ((old >= 0) && (position > old)) ? position - 1 : position;
+				newById[to++] = (moved >= at) ? moved + 1 : moved;
+			}
+			if (!placed) {
+				newById[to] = at;
+			}
+			return new Sorted(newKeys, newIds, newLabels, newById);
+		}
+
+		/**
+		 * Merges a delta into sorted names, leaving out the superseded positions, in
+		 * linear time.
+		 */
+		static Sorted merge(Sorted base, int[] superseded, Sorted delta) {
+			int size = base.size() - superseded.length + delta.size();
+			String[] keys = new String[size];
+			int[] ids = new int[size];
+			String[] labels = new String[size];
+			// the new position of every base name, or -1 if superseded
+			int[] moved = new int[base.size()];
+			int[] deltaMoved = new int[delta.size()];
+			int i = 0;
+			int j = 0;
+			int skip = 0;
+			for (int to = 0; to < size; to++) {
+				while ((skip < superseded.length) && (superseded[skip] == i)) {
+					moved[i++] = -1;
+					skip++;
+				}
+				if ((j == delta.size()) || ((i < base.size()) && (compare(base, i, delta, j) < 0))) {
+					keys[to] = base.keys[i];
+					ids[to] = base.ids[i];
+					labels[to] = base.labels[i];
+					moved[i++] = to;
+				}
+				else {
+					keys[to] = delta.keys[j];
+					ids[to] = delta.ids[j];
+					labels[to] = delta.labels[j];
+					deltaMoved[j++] = to;
+				}
+			}
+			while (i < base.size()) {
+				moved[i++] = -1;
+			}
+			// merge the orders by id of the base names kept and of the delta
+			int[] byId = new int[size];
+			int b = 0;
+			int d = 0;
+			for (int to = 0; to < size; to++) {
+				while ((b < base.byId.length) && (moved[base.byId[b]] < 0)) {
+					b++;
+				}
+				if ((d == delta.byId.length) || ((b < base.byId.length)
+						&& (base.ids[base.byId[b]] < delta.ids[delta.byId[d]]))) {
+					byId[to] = moved[base.byId[b++]];
+				}
+				else {
+					byId[to] = deltaMoved[delta.byId[d++]];
+				}
+			}
+			return new Sorted(keys, ids, labels, byId);
+		}
+
+		/**
+		 * Returns the positions of some ids ordered by id.
+		 */
+		static int[] positionsById(int[] ids) {
+			long[] packed = new long[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				packed[i] = ((long) ids[i] << 32) | i;
+			}
+			Arrays.sort(packed);
+			int[] positions = new int[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				positions[i] = (int) packed[i];
+			}
+			return positions;
+		}
+
+		static int compare(Sorted left, int i, Sorted right, int j) {
+			int comparison = left.keys[i].compareTo(right.keys[j]);
+			return (comparison != 0) ? comparison : Integer.compare(left.ids[i], right.ids[j]);
+		}
+
+	}
+
+	private static final class Entry {
+
+		final String key;
+
+		final int id;
+
+		final String label;
+
+		Entry(String key, int id, String label) {
+			this.key = key;
+			this.id = id;
+			this.label = label;
+		}
+
+	}
+
+}
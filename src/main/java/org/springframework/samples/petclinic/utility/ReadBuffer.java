@@ -0,0 +1,104 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A striped, lossy buffer that records cache reads so that the eviction policy can be
+ * updated in batches under the eviction lock instead of on every hit. Threads are
+ * spread over stripes by their id; when a stripe is full the read is dropped, which only
+ * makes the policy slightly less precise.
+ */
+final class ReadBuffer<E> {
+
+	static final int SUCCESS = 0;
+
+	static final int FAILED = -1;
+
+	static final int FULL = 1;
+
+	static final int BUFFER_SIZE = 16;
+
+	private static final int MASK = BUFFER_SIZE - 1;
+
+	private static final int STRIPES = Integer.highestOneBit(
+			Math.min(4 * Runtime.getRuntime().availableProcessors(), 64) - 1) << 1;
+
+	private final Stripe<E>[] stripes;
+
+	@SuppressWarnings("unchecked")
+	ReadBuffer() {
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe<>();
+		}
+	}
+
+	/**
+	 * Records a read.
+	 * @param e the entry that was read
+	 * @return {@link #SUCCESS}, {@link #FAILED} if lost to a concurrent offer, or
+	 * {@link #FULL} if the stripe should be drained
+	 */
+	int offer(E e) {
+		return stripes[stripeIndex()].offer(e);
+	}
+
+	/**
+	 * Hands every buffered read to the consumer. Must be called by one thread at a time.
+	 * @param consumer the policy update to apply
+	 */
+	void drainTo(Consumer<E> consumer) {
+		for (Stripe<E> stripe : stripes) {
+			stripe.drainTo(consumer);
+		}
+	}
+
+	private static int stripeIndex() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) ^ hash) & (STRIPES - 1);
+	}
+
+	private static final class Stripe<E> {
+
+		private final AtomicLong readCounter = new AtomicLong();
+
+		private final AtomicLong writeCounter = new AtomicLong();
+
+		private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+
+		int offer(E e) {
+			long head = readCounter.get();
+			long tail = writeCounter.get();
+			if ((tail - head) >= BUFFER_SIZE) {
+				return FULL;
+			}
+			if (writeCounter.compareAndSet(tail, tail + 1)) {
+				buffer.lazySet((int) (tail & MASK), e);
+				return SUCCESS;
+			}
+			return FAILED;
+		}
+
+		void drainTo(Consumer<E> consumer) {
+			long head = readCounter.get();
+			long tail = writeCounter.get();
+			while (head != tail) {
+				int index = (int) (head & MASK);
+				E e = buffer.get(index);
+				if (e == null) {
+					// the writer claimed the slot but has not published yet
+					break;
+				}
+				buffer.lazySet(index, null);
+				consumer.accept(e);
+				head++;
+			}
+			readCounter.lazySet(head);
+		}
+
+	}
+
+}
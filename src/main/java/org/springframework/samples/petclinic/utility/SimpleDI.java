@@ -1,23 +1,101 @@
 package org.springframework.samples.petclinic.utility;
 
-import org.springframework.samples.petclinic.owner.PetRepository;
-
-import java.util.HashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * this simple class shows the main idea behind a Dependency Injection library
+ * <p>
+ * A container of singletons for command line tools and batch jobs that do not need a
+ * Spring context. A type is provided either by an instance, or by a function called
+ * once on the first lookup; a concrete class that is not provided is created by
+ * injecting its constructor with the instances of its parameter types, or with a
+ * {@link Provider} of them for a parameter of type {@code Provider<T>}.
+ * <p>
+ * The types registered as eager are created by {@link #initialize()} on startup, with
+ * their dependencies, the independent ones in parallel; the other types are created on
+ * their first lookup.
  */
 public abstract class SimpleDI {
 
+	/**
+	 * Returns the container of the application.
+	 */
 	public static SimpleDI getDIContainer() throws Exception {
-		// todo return the singleton instance of your implementation of dependency injection container
-		throw new Exception("not implemented");
+		return Holder.CONTAINER;
 	}
 
+	/**
+	 * Provides a type by an instance, replacing the instance of the type if it was
+	 * already created.
+	 */
 	public abstract void provideByInstance(Class<?> typeClass, Object instanceOfType);
 
+	/**
+	 * Provides a type by a function creating its instance, called once on the first
+	 * lookup of the type.
+	 */
 	public abstract void provideByAConstructorFunction(Class<?> typeClass, Callable<Object> providerFunction);
 
+	/**
+	 * Returns the instance of a type, creating it and its dependencies on the first
+	 * lookup.
+	 * @throws IllegalStateException if the type is neither provided nor a concrete class
+	 * with a usable constructor, or if its dependencies form a cycle
+	 * @throws Exception if a provider function or constructor fails
+	 */
 	public abstract Object getInstanceOf(Class<?> requiredType) throws Exception;
+
+	/**
+	 * Returns a provider of the instance of a type, which looks the instance up on every
+	 * {@link Provider#get()} only, as {@link #getInstanceOf(Class)} does.
+	 */
+	public abstract <T> Provider<T> getProviderOf(Class<T> requiredType);
+
+	/**
+	 * Registers types to be created by {@link #initialize()}.
+	 */
+	public abstract void registerEager(Class<?>... typeClasses);
+
+	/**
+	 * Creates the eager types and their dependencies on the common fork-join pool.
+	 * @see #initialize(ForkJoinPool)
+	 */
+	public void initialize() throws Exception {
+		initialize(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates the eager types and their dependencies on a fork-join pool, every type once
+	 * the types it depends on are created, so that independent types are created in
+	 * parallel.
+	 * @throws IllegalStateException if a type cannot be resolved, or if the dependencies
+	 * form a cycle, before any type is created
+	 * @throws Exception if a provider function or constructor fails
+	 */
+	public abstract void initialize(ForkJoinPool pool) throws Exception;
+
+	/**
+	 * Supplies the instance of a type on demand. A constructor parameter of type
+	 * {@code Provider<T>} is injected with a provider of {@code T} instead of an instance,
+	 * so that a rarely used {@code T} is only created when it is first used, and so that
+	 * two types may depend on each other through a provider.
+	 */
+	@FunctionalInterface
+	public interface Provider<T> {
+
+		/**
+		 * Returns the instance, creating it on the first call.
+		 * @throws IllegalStateException if the instance cannot be created
+		 */
+		T get();
+
+	}
+
+	private static final class Holder {
+
+		static final SimpleDI CONTAINER = new SimpleDIContainer();
+
+	}
+
 }
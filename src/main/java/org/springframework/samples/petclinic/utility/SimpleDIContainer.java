@@ -0,0 +1,406 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The {@link SimpleDI} implementation. Created instances are kept in a concurrent map,
+ * which lookups of created instances read without locking. The creation of a type is
+ * published as a future, which lookups of the type from other threads wait for, so that
+ * every type is created once while independent types are created in parallel.
+ * <p>
+ * The constructor of a class and its parameter types are resolved once per class into
+ * an injection plan, holding a {@link MethodHandle} that takes the arguments as an array,
+ * so that later creations of the class do not reflect. The constructor is chosen as
+ * Spring does: the only constructor of the class, else the one annotated with
+ * {@link Autowired}, else the one without parameters.
+ * <p>
+ * The {@link Wired} classes are created by the {@link SimpleDIWiring}s generated at
+ * compile time instead, without reflection. The container loads the generated wirings
+ * listed in {@code META-INF/services} once, when it is created. A {@link Wired} class
+ * without a generated wiring, compiled without the {@link SimpleDIProcessor}, is still
+ * created through its injection plan, with a warning.
+ * <p>
+ * Before a type is first created, the graph of the types it depends on is walked depth
+ * first from the plans and wirings, so that a cycle is reported before any of its types
+ * is created, and so that no two threads wait for each other's creations. Provided types
+ * are leaves of the graph, as are the types injected through a {@link Provider}; a
+ * provider function looking up types in a cycle is reported once the lookup repeats on
+ * the creating thread. {@link #initialize(ForkJoinPool)} creates the graph of the eager
+ * types as a fork-join task per type, run once the tasks of its dependencies complete.
+ */
+final class SimpleDIContainer extends SimpleDI {
+
+	private static final Logger log = LoggerFactory.getLogger(SimpleDIContainer.class);
+
+	private static final Class<?>[] NO_DEPENDENCIES = {};
+
+	private final ConcurrentHashMap<Class<?>, Object> instances = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Class<?>, Callable<Object>> providers = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Class<?>, InjectionPlan> plans = new ConcurrentHashMap<>();
+
+	/** The generated wirings by the binary name of the classes they create. */
+	private final Map<String, SimpleDIWiring> wirings = new HashMap<>();
+
+	/** The creations in progress, completed with the instance. */
+	private final ConcurrentHashMap<Class<?>, CompletableFuture<Object>> creations = new ConcurrentHashMap<>();
+
+	/** The types whose dependency graph was found acyclic. */
+	private final Set<Class<?>> analyzed = ConcurrentHashMap.newKeySet();
+
+	private final Set<Class<?>> eager = ConcurrentHashMap.newKeySet();
+
+	/** The types being created by the current thread, in order. */
+	private final ThreadLocal<Set<Class<?>>> creating = ThreadLocal.withInitial(LinkedHashSet::new);
+
+	SimpleDIContainer() {
+		this(ServiceLoader.load(SimpleDIWiring.class, SimpleDIContainer.class.getClassLoader()));
+	}
+
+	SimpleDIContainer(Iterable<SimpleDIWiring> wirings) {
+		for (SimpleDIWiring wiring : wirings) {
+			for (String type : wiring.types()) {
+				this.wirings.put(type, wiring);
+			}
+		}
+	}
+
+	@Override
+	public void provideByInstance(Class<?> typeClass, Object instanceOfType) {
+		if (!typeClass.isInstance(instanceOfType)) {
+			throw new IllegalArgumentException(instanceOfType + " is not an instance of " + typeClass.getName());
+		}
+		providers.remove(typeClass);
+		instances.put(typeClass, instanceOfType);
+	}
+
+	@Override
+	public void provideByAConstructorFunction(Class<?> typeClass, Callable<Object> providerFunction) {
+		providers.put(typeClass, providerFunction);
+		instances.remove(typeClass);
+	}
+
+	@Override
+	public Object getInstanceOf(Class<?> requiredType) throws Exception {
+		Object instance = instances.get(requiredType);
+		return (instance != null) ? instance : create(requiredType);
+	}
+
+	@Override
+	public <T> Provider<T> getProviderOf(Class<T> requiredType) {
+		return () -> {
+			try {
+				return requiredType.cast(getInstanceOf(requiredType));
+			}
+			catch (RuntimeException ex) {
+				throw ex;
+			}
+			catch (Exception ex) {
+				throw new IllegalStateException("Creating " + requiredType.getName() + " failed", ex);
+			}
+		};
+	}
+
+	@Override
+	public void registerEager(Class<?>... typeClasses) {
+		eager.addAll(Arrays.asList(typeClasses));
+	}
+
+	@Override
+	public void initialize(ForkJoinPool pool) throws Exception {
+		Map<Class<?>, Class<?>[]> graph = analyze(eager);
+		Map<Class<?>, CompletableFuture<Void>> tasks = new HashMap<>();
+		for (Map.Entry<Class<?>, Class<?>[]> node : graph.entrySet()) {
+			Class<?> type = node.getKey();
+			Class<?>[] dependencies = node.getValue();
+			CompletableFuture<?>[] before = new CompletableFuture<?>[dependencies.length];
+			for (int i = 0; i < before.length; i++) {
+				before[i] = tasks.get(dependencies[i]);
+			}
+			tasks.put(type, CompletableFuture.allOf(before).thenRunAsync(() -> {
+				try {
+					getInstanceOf(type);
+				}
+				catch (Exception ex) {
+					throw new CompletionException(ex);
+				}
+			}, pool));
+		}
+		await(CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[0])));
+	}
+
+	private Object create(Class<?> type) throws Exception {
+		if (!analyzed.contains(type)) {
+			analyze(Collections.singleton(type));
+		}
+		Set<Class<?>> created = creating.get();
+		if (created.contains(type)) {
+			throw new IllegalStateException("Dependency cycle: " + cycle(created, type));
+		}
+		CompletableFuture<Object> creation = new CompletableFuture<>();
+		CompletableFuture<Object> other = creations.putIfAbsent(type, creation);
+		if (other != null) {
+			return await(other);
+		}
+		created.add(type);
+		try {
+			// another thread may have completed the creation before this one started
+			Object instance = instances.get(type);
+			if (instance == null) {
+				Callable<Object> provider = providers.get(type);
+				instance = (provider != null) ? provider.call() : construct(type);
+				if (!type.isInstance(instance)) {
+					throw new IllegalStateException("The provider of " + type.getName() + " returned " + instance);
+				}
+				instances.put(type, instance);
+			}
+			creation.complete(instance);
+			return instance;
+		}
+		catch (Exception | Error ex) {
+			creation.completeExceptionally(ex);
+			throw ex;
+		}
+		finally {
+			created.remove(type);
+			creations.remove(type, creation);
+		}
+	}
+
+	private Object construct(Class<?> type) throws Exception {
+		SimpleDIWiring wiring = wirings.get(type.getName());
+		if (wiring != null) {
+			return wiring.create(type.getName(), this);
+		}
+		InjectionPlan plan = plans.computeIfAbsent(type, InjectionPlan::of);
+		Object[] arguments = new Object[plan.dependencies.length];
+		for (int i = 0; i < arguments.length; i++) {
+			arguments[i] = plan.lazy[i] ? getProviderOf(plan.dependencies[i]) : getInstanceOf(plan.dependencies[i]);
+		}
+		try {
+			return (Object) plan.constructor.invokeExact(arguments);
+		}
+		catch (Exception | Error ex) {
+			throw ex;
+		}
+		catch (Throwable ex) {
+			throw new IllegalStateException("Creating " + type.getName() + " failed", ex);
+		}
+	}
+
+	/**
+	 * Returns whether a class is created by a generated wiring.
+	 */
+	boolean isWired(Class<?> type) {
+		return wirings.containsKey(type.getName());
+	}
+
+	/**
+	 * Walks the dependency graph of some types depth first.
+	 * @return the types reachable from the given ones with the types they depend on,
+	 * every type after its dependencies
+	 * @throws IllegalStateException if a type cannot be resolved or the graph has a cycle
+	 */
+	Map<Class<?>, Class<?>[]> analyze(Collection<Class<?>> types) {
+		Map<Class<?>, Class<?>[]> graph = new LinkedHashMap<>();
+		Set<Class<?>> path = new LinkedHashSet<>();
+		for (Class<?> type : types) {
+			visit(type, graph, path);
+		}
+		analyzed.addAll(graph.keySet());
+		return graph;
+	}
+
+	private void visit(Class<?> type, Map<Class<?>, Class<?>[]> graph, Set<Class<?>> path) {
+		if (graph.containsKey(type)) {
+			return;
+		}
+		if (!path.add(type)) {
+			throw new IllegalStateException("Dependency cycle: " + cycle(path, type));
+		}
+		Class<?>[] dependencies = dependenciesOf(type);
+		for (Class<?> dependency : dependencies) {
+			visit(dependency, graph, path);
+		}
+		path.remove(type);
+		graph.put(type, dependencies);
+	}
+
+	/**
+	 * Returns the types a type is injected with instances of, none if it is provided.
+	 */
+	private Class<?>[] dependenciesOf(Class<?> type) {
+		if (instances.containsKey(type) || providers.containsKey(type)) {
+			return NO_DEPENDENCIES;
+		}
+		SimpleDIWiring wiring = wirings.get(type.getName());
+		if (wiring != null) {
+			return wiring.dependencies(type.getName());
+		}
+		return plans.computeIfAbsent(type, InjectionPlan::of).eagerDependencies;
+	}
+
+	private static String cycle(Set<Class<?>> path, Class<?> type) {
+		List<String> names = new ArrayList<>();
+		boolean inCycle = false;
+		for (Class<?> visited : path) {
+			inCycle |= (visited == type);
+			if (inCycle) {
+				names.add(visited.getName());
+			}
+		}
+		names.add(type.getName());
+		return String.join(" -> ", names);
+	}
+
+	/**
+	 * Waits for a creation, rethrowing its failure.
+	 */
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			while ((cause instanceof CompletionException) && (cause.getCause() != null)) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * The constructor of a class and the types of its parameters.
+	 */
+	static final class InjectionPlan {
+
+		private static final MethodType GENERIC = MethodType.methodType(Object.class, Object[].class);
+
+		final MethodHandle constructor;
+
+		/** The parameter types, or the provided types of the {@link Provider} parameters. */
+		final Class<?>[] dependencies;
+
+		/** Whether each parameter is a {@link Provider}. */
+		final boolean[] lazy;
+
+		/** The dependencies that are not lazy. */
+		final Class<?>[] eagerDependencies;
+
+		private InjectionPlan(MethodHandle constructor, Class<?>[] dependencies, boolean[] lazy) {
+			this.constructor = constructor;
+			this.dependencies = dependencies;
+			this.lazy = lazy;
+			List<Class<?>> eager = new ArrayList<>();
+			for (int i = 0; i < dependencies.length; i++) {
+				if (!lazy[i]) {
+					eager.add(dependencies[i]);
+				}
+			}
+			this.eagerDependencies = eager.toArray(NO_DEPENDENCIES);
+		}
+
+		static InjectionPlan of(Class<?> type) {
+			if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isPrimitive()
+					|| type.isArray()) {
+				throw new IllegalStateException("No provider for " + type.getName());
+			}
+			if (type.isAnnotationPresent(Wired.class)) {
+				log.warn("{} is @Wired but has no generated wiring, so it is created through reflection: "
+						+ "compile it with the SimpleDIProcessor", type.getName());
+			}
+			Constructor<?> constructor = constructorOf(type);
+			Class<?>[] dependencies = constructor.getParameterTypes();
+			boolean[] lazy = new boolean[dependencies.length];
+			for (int i = 0; i < dependencies.length; i++) {
+				if (dependencies[i] == Provider.class) {
+					dependencies[i] = providedType(constructor, i);
+					lazy[i] = true;
+				}
+			}
+			try {
+				constructor.setAccessible(true);
+				MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor)
+						.asSpreader(Object[].class, constructor.getParameterCount()).asType(GENERIC);
+				return new InjectionPlan(handle, dependencies, lazy);
+			}
+			catch (IllegalAccessException | RuntimeException ex) {
+				throw new IllegalStateException("Cannot access the constructor of " + type.getName(), ex);
+			}
+		}
+
+		/**
+		 * Returns the type argument of a {@link Provider} parameter.
+		 */
+		private static Class<?> providedType(Constructor<?> constructor, int parameter) {
+			Type[] types = constructor.getGenericParameterTypes();
+			// the generic types leave out synthetic parameters, such as the outer instance
+			Type type = types[parameter - (constructor.getParameterCount() - types.length)];
+			if (type instanceof ParameterizedType) {
+				Type provided = ((ParameterizedType) type).getActualTypeArguments()[0];
+				if (provided instanceof Class) {
+					return (Class<?>) provided;
+				}
+			}
+			throw new IllegalStateException("The Provider parameters of " + constructor.getDeclaringClass().getName()
+					+ " must provide a class or interface without type arguments");
+		}
+
+		static Constructor<?> constructorOf(Class<?> type) {
+			Constructor<?>[] constructors = type.getDeclaredConstructors();
+			if (constructors.length == 1) {
+				return constructors[0];
+			}
+			Constructor<?> noArguments = null;
+			for (Constructor<?> constructor : constructors) {
+				if (constructor.isAnnotationPresent(Autowired.class)) {
+					return constructor;
+				}
+				if (constructor.getParameterCount() == 0) {
+					noArguments = constructor;
+				}
+			}
+			if (noArguments == null) {
+				throw new IllegalStateException(
+						"No constructor of " + type.getName() + " is annotated with @Autowired or without parameters");
+			}
+			return noArguments;
+		}
+
+	}
+
+}
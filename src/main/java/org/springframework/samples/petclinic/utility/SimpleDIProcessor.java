@@ -0,0 +1,277 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates the {@link SimpleDIWiring} of the {@link Wired} classes: one
+ * {@code GeneratedSimpleDIWiring} class per package, whose {@code create} method is a
+ * {@code switch} on the class name calling the constructor of each class, and a
+ * {@code META-INF/services} entry listing them. The wiring also lists the types each
+ * class is injected with, but for its {@link SimpleDI.Provider} parameters, for the
+ * dependency graph of the container. The constructor is chosen as the
+ * reflective path of the container chooses it.
+ * <p>
+ * The processor is not registered for discovery, as it is compiled with the sources it
+ * would process; a compilation of {@link Wired} classes names it explicitly. The
+ * {@code pom.xml} of this project compiles it on its own first, then names it in both
+ * the main and the test compilations.
+ */
+@SupportedAnnotationTypes("org.springframework.samples.petclinic.utility.Wired")
+public class SimpleDIProcessor extends AbstractProcessor {
+
+	static final String WIRING_NAME = "GeneratedSimpleDIWiring";
+
+	private static final String SERVICES = "META-INF/services/" + SimpleDIWiring.class.getName();
+
+	private static final String PROVIDER = SimpleDI.Provider.class.getCanonicalName();
+
+	private static final String AUTOWIRED = "org.springframework.beans.factory.annotation.Autowired";
+
+	/** The wired classes per package, collected over the rounds. */
+	private final Map<String, List<Wiring>> packages = new TreeMap<>();
+
+	private final List<String> generated = new ArrayList<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Map<String, List<Wiring>> round = new TreeMap<>();
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				Wiring wiring = wiringOf(element);
+				if (wiring != null) {
+					round.computeIfAbsent(wiring.packageName, name -> new ArrayList<>()).add(wiring);
+				}
+			}
+		}
+		for (Map.Entry<String, List<Wiring>> entry : round.entrySet()) {
+			if (packages.containsKey(entry.getKey())) {
+				error(null, "Wired classes of package " + entry.getKey() + " were generated in an earlier round");
+				continue;
+			}
+			packages.put(entry.getKey(), entry.getValue());
+			generate(entry.getKey(), entry.getValue());
+		}
+		if (roundEnv.processingOver() && !generated.isEmpty()) {
+			writeServices();
+		}
+		return true;
+	}
+
+	private Wiring wiringOf(Element element) {
+		if (element.getKind() != ElementKind.CLASS) {
+			error(element, "Only classes can be @Wired");
+			return null;
+		}
+		TypeElement type = (TypeElement) element;
+		if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getModifiers().contains(Modifier.PRIVATE)
+				|| ((type.getNestingKind() == NestingKind.MEMBER) && !type.getModifiers().contains(Modifier.STATIC))) {
+			error(type, "A @Wired class must be concrete, not private, and static if nested");
+			return null;
+		}
+		ExecutableElement constructor = constructorOf(type);
+		if (constructor == null) {
+			return null;
+		}
+		List<Dependency> dependencies = new ArrayList<>();
+		for (VariableElement parameter : constructor.getParameters()) {
+			Dependency dependency = dependencyOf(parameter);
+			if (dependency == null) {
+				return null;
+			}
+			dependencies.add(dependency);
+		}
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		return new Wiring(packageName, processingEnv.getElementUtils().getBinaryName(type).toString(),
+				type.getQualifiedName().toString(), dependencies);
+	}
+
+	private Dependency dependencyOf(VariableElement parameter) {
+		TypeMirror parameterType = parameter.asType();
+		if (parameterType.getKind() != TypeKind.DECLARED) {
+			error(parameter, "Only class and interface parameters can be injected");
+			return null;
+		}
+		String erasure = processingEnv.getTypeUtils().erasure(parameterType).toString();
+		if (!erasure.equals(PROVIDER)) {
+			return new Dependency(erasure, false);
+		}
+		List<? extends TypeMirror> arguments = ((DeclaredType) parameterType).getTypeArguments();
+		if ((arguments.size() != 1) || (arguments.get(0).getKind() != TypeKind.DECLARED)
+				|| !((DeclaredType) arguments.get(0)).getTypeArguments().isEmpty()) {
+			error(parameter, "A Provider parameter must provide a class or interface without type arguments");
+			return null;
+		}
+		return new Dependency(arguments.get(0).toString(), true);
+	}
+
+	private ExecutableElement constructorOf(TypeElement type) {
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		ExecutableElement chosen = null;
+		if (constructors.size() == 1) {
+			chosen = constructors.get(0);
+		}
+		else {
+			for (ExecutableElement constructor : constructors) {
+				if (isAutowired(constructor)) {
+					chosen = constructor;
+					break;
+				}
+				if (constructor.getParameters().isEmpty()) {
+					chosen = constructor;
+				}
+			}
+		}
+		if (chosen == null) {
+			error(type, "No constructor is annotated with @Autowired or without parameters");
+		}
+		else if (chosen.getModifiers().contains(Modifier.PRIVATE)) {
+			error(chosen, "The constructor of a @Wired class must not be private");
+			chosen = null;
+		}
+		return chosen;
+	}
+
+	private boolean isAutowired(ExecutableElement constructor) {
+		return constructor.getAnnotationMirrors().stream()
+				.anyMatch(mirror -> mirror.getAnnotationType().toString().equals(AUTOWIRED));
+	}
+
+	private void generate(String packageName, List<Wiring> wirings) {
+		String className = packageName.isEmpty() ? WIRING_NAME : packageName + "." + WIRING_NAME;
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * Creates the @Wired classes of this package; generated by ")
+				.append(SimpleDIProcessor.class.getSimpleName()).append(".\n */\n");
+		source.append("public final class ").append(WIRING_NAME).append(" implements ")
+				.append(SimpleDIWiring.class.getName()).append(" {\n\n");
+		source.append("\t@Override\n\tpublic String[] types() {\n\t\treturn new String[] {");
+		for (int i = 0; i < wirings.size(); i++) {
+			source.append((i == 0) ? " " : ", ").append('"').append(wirings.get(i).binaryName).append('"');
+		}
+		source.append(" };\n\t}\n\n");
+		source.append("\t@Override\n\tpublic Class<?>[] dependencies(String type) {\n\t\tswitch (type) {\n");
+		for (Wiring wiring : wirings) {
+			List<String> classes = new ArrayList<>();
+			for (Dependency dependency : wiring.dependencies) {
+				if (!dependency.lazy) {
+					classes.add(dependency.type + ".class");
+				}
+			}
+			source.append("\t\tcase \"").append(wiring.binaryName).append("\":\n\t\t\treturn new Class<?>[] {")
+					.append(classes.isEmpty() ? "" : " " + String.join(", ", classes) + " ").append("};\n");
+		}
+		source.append("\t\tdefault:\n\t\t\treturn null;\n\t\t}\n\t}\n\n");
+		source.append("\t@Override\n\tpublic Object create(String type, ").append(SimpleDI.class.getName())
+				.append(" container) throws Exception {\n\t\tswitch (type) {\n");
+		for (Wiring wiring : wirings) {
+			source.append("\t\tcase \"").append(wiring.binaryName).append("\":\n\t\t\treturn new ")
+					.append(wiring.sourceName).append('(');
+			for (int i = 0; i < wiring.dependencies.size(); i++) {
+				Dependency dependency = wiring.dependencies.get(i);
+				source.append((i == 0) ? "" : ", ");
+				if (dependency.lazy) {
+					source.append("container.getProviderOf(").append(dependency.type).append(".class)");
+				}
+				else {
+					source.append('(').append(dependency.type).append(") container.getInstanceOf(")
+							.append(dependency.type).append(".class)");
+				}
+			}
+			source.append(");\n");
+		}
+		source.append("\t\tdefault:\n\t\t\treturn null;\n\t\t}\n\t}\n\n}\n");
+		try (Writer writer = processingEnv.getFiler().createSourceFile(className).openWriter()) {
+			writer.write(source.toString());
+			generated.add(className);
+		}
+		catch (IOException ex) {
+			error(null, "Writing " + className + " failed: " + ex);
+		}
+	}
+
+	private void writeServices() {
+		try {
+			FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					SERVICES);
+			try (Writer writer = services.openWriter()) {
+				for (String className : generated) {
+					writer.write(className);
+					writer.write('\n');
+				}
+			}
+		}
+		catch (IOException ex) {
+			error(null, "Writing " + SERVICES + " failed: " + ex);
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private static final class Wiring {
+
+		final String packageName;
+
+		final String binaryName;
+
+		final String sourceName;
+
+		final List<Dependency> dependencies;
+
+		Wiring(String packageName, String binaryName, String sourceName, List<Dependency> dependencies) {
+			this.packageName = packageName;
+			this.binaryName = binaryName;
+			this.sourceName = sourceName;
+			this.dependencies = dependencies;
+		}
+
+	}
+
+	private static final class Dependency {
+
+		/** The canonical name of the injected type, or of the provided type if lazy. */
+		final String type;
+
+		final boolean lazy;
+
+		Dependency(String type, boolean lazy) {
+			this.type = type;
+			this.lazy = lazy;
+		}
+
+	}
+
+}
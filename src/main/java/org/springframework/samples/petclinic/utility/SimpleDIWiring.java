@@ -0,0 +1,31 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * Creates the {@link Wired} classes of one package by calling their constructors
+ * directly. The implementations are generated by the {@link SimpleDIProcessor} and
+ * listed in {@code META-INF/services}, from where the {@link SimpleDI} container loads
+ * them once on startup.
+ */
+public interface SimpleDIWiring {
+
+	/**
+	 * Returns the binary names of the classes this wiring creates.
+	 */
+	String[] types();
+
+	/**
+	 * Returns the types a class is injected with instances of, for the analysis of the
+	 * dependency graph; the types injected as a {@link SimpleDI.Provider} are left out.
+	 * @param type the binary name of the class, as returned by {@link Class#getName()}
+	 * @return the types, or {@code null} if this wiring does not create the class
+	 */
+	Class<?>[] dependencies(String type);
+
+	/**
+	 * Creates an instance of a class, looking its dependencies up in the container.
+	 * @param type the binary name of the class, as returned by {@link Class#getName()}
+	 * @return the instance, or {@code null} if this wiring does not create the class
+	 */
+	Object create(String type, SimpleDI container) throws Exception;
+
+}
@@ -0,0 +1,1419 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.samples.petclinic.utility.CacheStats.RemovalCause;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A read-through cache with a time to live per entry and a bounded size. The time to
+ * live is fixed by default; an {@link Expiry} can decide it per entry, such as the
+ * {@link AdaptiveExpiry} that adapts it to how often a key is written. Expiration is
+ * driven by a {@link TimerWheel}, so a clean-up only visits the entries whose deadline
+ * has passed instead of scanning the whole cache, and reads never return an entry past
+ * its deadline. The clean-ups and background reloads of all caches run on the threads
+ * of a shared {@link CacheScheduler}; a cache built without one is cleaned up by calling
+ * {@link #cleanUp()} and does not refresh ahead.
+ * <p>
+ * The size is bounded by a W-TinyLFU policy: new entries enter a small LRU window and,
+ * when evicted from it, must win a popularity contest against the victim of the
+ * segmented LRU main space to be admitted. Popularity is estimated by a
+ * {@link FrequencySketch}, so a bulk scan over keys that are read once cannot flush the
+ * frequently used ones. Reads are recorded in a {@link ReadBuffer} and replayed against
+ * the policy under the eviction lock, keeping the hit path free of locking.
+ * <p>
+ * Misses are loaded single-flight, by the loader of the cache or the one passed to
+ * {@link #get(Object, Function)}: concurrent callers missing on the same key wait for
+ * the one load in progress instead of each querying the database. The misses of a
+ * {@link #getAll(Collection) bulk lookup} are loaded together by the bulk loader.
+ * <p>
+ * With refresh-ahead enabled, a read within the configured window before expiry reloads
+ * the entry in the background while callers keep getting the current value. With a
+ * stale grace period, an expired entry is still served for that period while it is
+ * reloaded in the background, so a failing reload does not turn into errors or
+ * synchronous misses. Both need the loader of the cache.
+ * <p>
+ * With a negative expiry, a key that the loader found no value for is remembered as
+ * absent for that time, so that repeated lookups of keys that do not exist, such as
+ * probes of random ids, do not each run the loader.
+ * <p>
+ * With a version order, every install compares the incoming value with the cached one
+ * and never replaces a newer copy with an older one, so a load that read the database
+ * before a concurrent save cannot bring back the previous state.
+ * <p>
+ * Entries are stored in a {@link NodeMap}; each entry holds the value together with its
+ * deadline, so a hit allocates nothing. An {@link Integer} key is kept as an {@code int},
+ * so the entry does not retain the box the caller looked it up with.
+ * <p>
+ * Hits, misses, loads and removals are always counted in {@link CacheStats}. One in
+ * {@link TimedCacheProperties#getEventSampleRate() N} of these operations is also logged
+ * at debug level as a structured event, and sampled reads estimate the {@link HotKeys hot
+ * keys}; the other operations pay only for a random draw.
+ * <p>
+ * Optionally, entries evicted from the heap to respect the bounds are demoted to a
+ * {@link SecondTier} and promoted back, with their remaining time to live, by the next
+ * miss, which saves the load.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class TimedCache<K, V> implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(TimedCache.class);
+	private static final int HOT_KEY_CAPACITY = 64;
+	private static final Executor NO_REFRESH = reload -> {
+		throw new RejectedExecutionException("No cache scheduler");
+	};
+
+	/** The value of an entry that remembers that a key has no value. */
+	static final Object ABSENT = new Object();
+
+	private final String name;
+	private final Function<? super K, ? extends V> loader;
+	private final Function<? super List<K>, ? extends Map<K, ? extends V>> bulkLoader;
+	private final int bulkLoadChunkSize;
+	private final ToIntFunction<? super V> weigher;
+	private final Comparator<? super V> versionOrder;
+
+	private final NodeMap<K, Entry<K, V>> data = new NodeMap<>();
+	private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final TimerWheel timerWheel;
+	private final LongSupplier ticker;
+	private final LongSupplier wallClock;
+	private final SecondTier<K, V> secondTier;
+	private final CacheScheduler scheduler;
+	private final Executor refreshExecutor;
+
+	private final FrequencySketch sketch;
+	private final AccessOrderDeque<Entry<K, V>> window = new AccessOrderDeque<>();
+	private final AccessOrderDeque<Entry<K, V>> probation = new AccessOrderDeque<>();
+	private final AccessOrderDeque<Entry<K, V>> protectedDeque = new AccessOrderDeque<>();
+	private final ReadBuffer<Entry<K, V>> readBuffer = new ReadBuffer<>();
+	private final Consumer<Entry<K, V>> accessPolicy = this::onAccess;
+	private final CacheStats stats = new CacheStats();
+	private final HotKeys hotKeys;
+
+	private final Expiry<? super K, ? super V> expiry;
+	private final long negativeExpiryNanos;
+	private final long refreshAheadNanos;
+	private final long staleGraceNanos;
+	private final long maximumSize;
+	private final long maximumWeight;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private final int eventSampleRate;
+
+	private long entryCount;
+	private long weightedSize;
+	private long windowSize;
+	private long protectedSize;
+
+	protected TimedCache(Builder<K, V> builder) {
+		TimedCacheProperties properties = builder.properties;
+		this.name = builder.name;
+		this.loader = builder.loader;
+		this.bulkLoader = builder.bulkLoader;
+		this.bulkLoadChunkSize = builder.bulkLoadChunkSize;
+		this.weigher = builder.weigher;
+		this.versionOrder = builder.versionOrder;
+		this.ticker = builder.ticker;
+		this.wallClock = builder.wallClock;
+		this.secondTier = builder.secondTier;
+		this.scheduler = builder.scheduler;
+		if (builder.refreshExecutor != null) {
+			this.refreshExecutor = builder.refreshExecutor;
+		}
+		else {
+			this.refreshExecutor = (scheduler != null) ? scheduler::refresh : NO_REFRESH;
+		}
+		if (builder.expiry != null) {
+			this.expiry = builder.expiry;
+		}
+		else if (properties.getAdaptiveExpiry().isEnabled()) {
+			this.expiry = new AdaptiveExpiry<>(properties.getAdaptiveExpiry(), properties.getMaximumSize(),
+					ticker.getAsLong());
+		}
+		else {
+			long expiryNanos = properties.getExpiry().toNanos();
+			this.expiry = (key, value, now) -> expiryNanos;
+		}
+		this.negativeExpiryNanos = properties.getNegativeExpiry().toNanos();
+		this.refreshAheadNanos = properties.getRefreshAhead().toNanos();
+		this.staleGraceNanos = properties.getStaleGracePeriod().toNanos();
+		this.maximumSize = properties.getMaximumSize();
+		this.maximumWeight = (properties.getMaximumWeight() == null) ? Long.MAX_VALUE
+				: properties.getMaximumWeight().toBytes();
+		this.windowMaximum = Math.max(1, maximumSize / 100);
+		this.protectedMaximum = (long) (0.8 * (maximumSize - windowMaximum));
+		this.eventSampleRate = properties.getEventSampleRate();
+		this.hotKeys = new HotKeys(HOT_KEY_CAPACITY, Math.max(1, eventSampleRate));
+		this.sketch = new FrequencySketch(maximumSize);
+		this.timerWheel = new TimerWheel(ticker.getAsLong(), this::expire);
+		if (scheduler != null) {
+			scheduler.register(this);
+		}
+	}
+
+	/**
+	 * Starts building a cache.
+	 * @param name the name of the cache, used in events and metrics
+	 * @param properties the bounds and expiry of the cache
+	 */
+	public static <K, V> Builder<K, V> builder(String name, TimedCacheProperties properties) {
+		return new Builder<>(name, properties);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the value of a key, loading it with the loader of the cache on a miss.
+	 * @return the value, or {@code null} if the loader found none
+	 */
+	public V get(K key) {
+		return get(key, loader);
+	}
+
+	/**
+	 * Returns the value of a key, loading it with the given loader on a miss.
+	 * @return the value, or {@code null} if the loader found none
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Entry<K, V> entry = data.get(key);
+		Object value = (entry != null) ? read(entry) : null;
+		return (value != null) ? valueOf(value) : miss(key, loader);
+	}
+
+	/**
+	 * Returns the values of several keys, answering the cached ones from memory and
+	 * loading all the others with the bulk loader of the cache, in chunks of at most its
+	 * chunk size; without a bulk loader, they are loaded one by one. Keys that another
+	 * caller is loading are waited for instead of loaded again.
+	 * @return the values found, in the iteration order of the keys; keys without a value
+	 * are left out
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys) {
+		Set<K> distinct = new LinkedHashSet<>(keys);
+		Map<K, V> values = new HashMap<>();
+		List<K> misses = new ArrayList<>();
+		for (K key : distinct) {
+			Entry<K, V> entry = data.get(key);
+			Object value = (entry != null) ? read(entry) : null;
+			if (value == null) {
+				recordMiss(key);
+				misses.add(key);
+			}
+			else if (value != ABSENT) {
+				values.put(key, valueOf(value));
+			}
+		}
+		if (!misses.isEmpty()) {
+			loadAll(misses, values);
+		}
+		Map<K, V> found = new LinkedHashMap<>();
+		for (K key : distinct) {
+			V value = values.get(key);
+			if (value != null) {
+				found.put(key, value);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Looks up an {@link Integer} key by its primitive value, which saves boxing it on a
+	 * hit; only for caches keyed by {@code Integer}.
+	 */
+	@SuppressWarnings("unchecked")
+	protected V getInt(int key) {
+		Entry<K, V> entry = data.get(key);
+		Object value = (entry != null) ? read(entry) : null;
+		return (value != null) ? valueOf(value) : miss((K) Integer.valueOf(key), loader);
+	}
+
+	/**
+	 * Returns the cached value of a key without loading it.
+	 * @return the value, or {@code null} if it is not cached or cached as absent
+	 */
+	public V getIfPresent(K key) {
+		Object value = lookup(key);
+		return (value != null) ? valueOf(value) : null;
+	}
+
+	/**
+	 * Returns the cached value of a key without loading it, telling a key cached as
+	 * absent from one that is not cached.
+	 * @return the value, {@link #ABSENT}, or {@code null} if it is not cached
+	 */
+	Object lookup(K key) {
+		Entry<K, V> entry = data.get(key);
+		Object value = (entry != null) ? read(entry) : null;
+		if (value == null) {
+			recordMiss(key);
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueOf(Object value) {
+		return (value == ABSENT) ? null : (V) value;
+	}
+
+	/**
+	 * Returns the value of an entry and records the hit, or returns {@code null} if the
+	 * entry is past its stale grace period. An absent entry is neither refreshed nor
+	 * served stale.
+	 */
+	private Object read(Entry<K, V> entry) {
+		long now = ticker.getAsLong();
+		if (entry.value == ABSENT) {
+			if (entry.hasExpired(now)) {
+				return null;
+			}
+			stats.recordHit();
+			afterRead(entry);
+			return ABSENT;
+		}
+		if (!entry.isStale(now, staleGraceNanos)) {
+			stats.recordHit();
+			if (sampled()) {
+				hotKeys.record(entry.getKey());
+				if (log.isDebugEnabled()) {
+					log.debug("cache={} event=hit key={} ttl={}ms", name, entry.getKey(), remainingMillis(entry, now));
+				}
+			}
+			afterRead(entry);
+			if ((refreshAheadNanos > 0) && entry.isStale(now, staleGraceNanos + refreshAheadNanos)) {
+				refreshAsync(entry);
+			}
+			return entry.value;
+		}
+		if (!entry.hasExpired(now)) {
+			stats.recordHit();
+			if (sampled()) {
+				hotKeys.record(entry.getKey());
+				if (log.isDebugEnabled()) {
+					log.debug("cache={} event=hit key={} stale=true grace={}ms", name, entry.getKey(),
+							TimeUnit.NANOSECONDS.toMillis(entry.deadline - now));
+				}
+			}
+			afterRead(entry);
+			refreshAsync(entry);
+			return entry.value;
+		}
+		return null;
+	}
+
+	private V miss(K key, Function<? super K, ? extends V> loader) {
+		recordMiss(key);
+		return load(key, loader);
+	}
+
+	private void recordMiss(K key) {
+		stats.recordMiss();
+		if (sampled()) {
+			hotKeys.record(key);
+			if (log.isDebugEnabled()) {
+				log.debug("cache={} event=miss key={}", name, key);
+			}
+		}
+	}
+
+	/**
+	 * Loads a missing value, coalescing concurrent misses for the same key into one load.
+	 * The value is published to the cache before the in-flight load is removed, so a
+	 * caller arriving in between finds it on the re-check.
+	 */
+	private V load(K key, Function<? super K, ? extends V> loader) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+		if (inFlight != null) {
+			return join(inFlight);
+		}
+		try {
+			V value;
+			Entry<K, V> entry = data.get(key);
+			if ((entry != null) && isFresh(entry, ticker.getAsLong())) {
+				value = valueOf(entry.value);
+			}
+			else {
+				value = promote(key);
+				if ((value == null) && (loader != null)) {
+					value = load(loader, key);
+					if (value != null) {
+						value = put(key, value);
+					}
+					else {
+						putAbsent(key);
+					}
+				}
+			}
+			future.complete(value);
+			return value;
+		}
+		catch (RuntimeException | Error ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		}
+		finally {
+			loading.remove(key, future);
+		}
+	}
+
+	/**
+	 * Loads missing values, taking part in single-flight loading like
+	 * {@link #load(Object, Function)}: the keys are claimed first, then the claimed ones
+	 * are loaded in chunks, and the ones claimed by other callers are waited for last.
+	 */
+	private void loadAll(List<K> keys, Map<K, V> values) {
+		if (bulkLoader == null) {
+			for (K key : keys) {
+				V value = load(key, loader);
+				if (value != null) {
+					values.put(key, value);
+				}
+			}
+			return;
+		}
+		Map<K, CompletableFuture<V>> claimed = new LinkedHashMap<>();
+		Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+		for (K key : keys) {
+			CompletableFuture<V> future = new CompletableFuture<>();
+			CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+			if (inFlight != null) {
+				waiting.put(key, inFlight);
+			}
+			else {
+				claimed.put(key, future);
+			}
+		}
+		try {
+			List<K> toLoad = new ArrayList<>();
+			long now = ticker.getAsLong();
+			for (Map.Entry<K, CompletableFuture<V>> claim : claimed.entrySet()) {
+				K key = claim.getKey();
+				Entry<K, V> entry = data.get(key);
+				V value = ((entry != null) && isFresh(entry, now)) ? valueOf(entry.value) : promote(key);
+				if ((value != null) || ((entry != null) && (entry.value == ABSENT) && !entry.hasExpired(now))) {
+					complete(key, value, claim.getValue(), values);
+				}
+				else {
+					toLoad.add(key);
+				}
+			}
+			for (int from = 0; from < toLoad.size(); from += bulkLoadChunkSize) {
+				List<K> chunk = toLoad.subList(from, Math.min(from + bulkLoadChunkSize, toLoad.size()));
+				Map<K, ? extends V> loaded = bulkLoad(chunk);
+				for (K key : chunk) {
+					V value = loaded.get(key);
+					if (value != null) {
+						value = put(key, value);
+					}
+					else {
+						putAbsent(key);
+					}
+					complete(key, value, claimed.get(key), values);
+				}
+			}
+		}
+		catch (RuntimeException | Error ex) {
+			for (CompletableFuture<V> future : claimed.values()) {
+				future.completeExceptionally(ex);
+			}
+			throw ex;
+		}
+		finally {
+			claimed.forEach(loading::remove);
+		}
+		waiting.forEach((key, inFlight) -> {
+			V value = join(inFlight);
+			if (value != null) {
+				values.put(key, value);
+			}
+		});
+	}
+
+	private void complete(K key, V value, CompletableFuture<V> future, Map<K, V> values) {
+		if (value != null) {
+			values.put(key, value);
+		}
+		future.complete(value);
+	}
+
+	private boolean isFresh(Entry<K, V> entry, long now) {
+		return (entry.value == ABSENT) ? !entry.hasExpired(now) : !entry.isStale(now, staleGraceNanos);
+	}
+
+	/**
+	 * Reloads an entry in the background unless a reload of it is already pending. The
+	 * reload takes part in single-flight loading, so a miss racing with it waits for its
+	 * result.
+	 */
+	private void refreshAsync(Entry<K, V> entry) {
+		if ((loader == null) || !entry.startRefresh()) {
+			return;
+		}
+		try {
+			refreshExecutor.execute(() -> refresh(entry));
+		}
+		catch (RejectedExecutionException ex) {
+			entry.endRefresh();
+		}
+	}
+
+	private void refresh(Entry<K, V> entry) {
+		K key = entry.getKey();
+		CompletableFuture<V> future = new CompletableFuture<>();
+		if (loading.putIfAbsent(key, future) != null) {
+			entry.endRefresh();
+			return;
+		}
+		try {
+			V value = load(loader, key);
+			if (value != null) {
+				put(key, value);
+			}
+			else if (negativeExpiryNanos > 0) {
+				putAbsent(key);
+			}
+			else {
+				invalidate(entry);
+			}
+			future.complete(value);
+		}
+		catch (RuntimeException ex) {
+			future.completeExceptionally(ex);
+			log.warn("Refreshing " + key + " in cache " + name + " failed, serving the cached value", ex);
+		}
+		catch (Error ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		}
+		finally {
+			loading.remove(key, future);
+			entry.endRefresh();
+		}
+	}
+
+	/**
+	 * Calls a loader, recording the load time.
+	 */
+	private V load(Function<? super K, ? extends V> loader, K key) {
+		long start = ticker.getAsLong();
+		try {
+			V value = loader.apply(key);
+			long loadTime = ticker.getAsLong() - start;
+			stats.recordLoadSuccess(loadTime);
+			if (traced()) {
+				log.debug("cache={} event=load key={} found={} time={}us", name, key, value != null,
+						TimeUnit.NANOSECONDS.toMicros(loadTime));
+			}
+			return value;
+		}
+		catch (RuntimeException | Error ex) {
+			stats.recordLoadFailure(ticker.getAsLong() - start);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Calls the bulk loader, recording one load for the chunk.
+	 */
+	private Map<K, ? extends V> bulkLoad(List<K> keys) {
+		long start = ticker.getAsLong();
+		try {
+			Map<K, ? extends V> values = bulkLoader.apply(keys);
+			long loadTime = ticker.getAsLong() - start;
+			stats.recordLoadSuccess(loadTime);
+			if (traced()) {
+				log.debug("cache={} event=load keys={} found={} time={}us", name, keys.size(), values.size(),
+						TimeUnit.NANOSECONDS.toMicros(loadTime));
+			}
+			return values;
+		}
+		catch (RuntimeException | Error ex) {
+			stats.recordLoadFailure(ticker.getAsLong() - start);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Installs a value unless a newer version of it is already cached.
+	 * @return the value now cached under the key
+	 */
+	public V put(K key, V value) {
+		long now = ticker.getAsLong();
+		return put(key, value, now + expiry.timeToLive(key, value, now) + staleGraceNanos);
+	}
+
+	/**
+	 * Tells the expiry that the value of a key was changed at its source, for example
+	 * saved; an {@link AdaptiveExpiry} then caches it for a shorter time.
+	 */
+	public void recordWrite(K key) {
+		expiry.recordWrite(key, ticker.getAsLong());
+	}
+
+	/**
+	 * Remembers that a key has no value for the negative expiry, replacing its cached
+	 * value; without a negative expiry, the key is invalidated instead.
+	 */
+	@SuppressWarnings("unchecked")
+	void putAbsent(K key) {
+		if (negativeExpiryNanos > 0) {
+			put(key, (V) ABSENT, ticker.getAsLong() + negativeExpiryNanos);
+		}
+		else {
+			invalidate(key);
+		}
+	}
+
+	private V put(K key, V value, long deadline) {
+		int weight = (value == ABSENT) ? 1 : weigher.applyAsInt(value);
+		Entry<K, V> entry = Entry.of(key, value, weight, deadline);
+		Entry<K, V> previous;
+		evictionLock.lock();
+		try {
+			readBuffer.drainTo(accessPolicy);
+			previous = data.get(key);
+			if ((previous != null) && (versionOrder != null) && (previous.value != ABSENT) && (value != ABSENT)
+					&& (versionOrder.compare(previous.value, value) > 0)) {
+				if (traced()) {
+					log.debug("cache={} event=skip key={} reason=older-version", name, key);
+				}
+				return previous.value;
+			}
+			data.put(entry);
+			byte queue = Entry.WINDOW;
+			if (previous != null) {
+				queue = previous.queue();
+				unlink(previous);
+				onRemoval(key, RemovalCause.REPLACED);
+			}
+			if (secondTier != null) {
+				secondTier.remove(key);
+			}
+			link(entry, queue);
+			stats.recordPut();
+			sketch.increment(key.hashCode());
+			evictEntries();
+		}
+		finally {
+			evictionLock.unlock();
+		}
+		return value;
+	}
+
+	/**
+	 * Moves a value back from the second tier, keeping its original expiry.
+	 * @return the cached value, or {@code null} if the tier does not hold it
+	 */
+	private V promote(K key) {
+		if (secondTier == null) {
+			return null;
+		}
+		long nowMillis = wallClock.getAsLong();
+		Demoted<V> demoted = secondTier.take(key, nowMillis);
+		if (demoted == null) {
+			return null;
+		}
+		stats.recordPromotion();
+		long deadline = ticker.getAsLong() + TimeUnit.MILLISECONDS.toNanos(demoted.expiresAtMillis - nowMillis)
+				+ staleGraceNanos;
+		return put(key, demoted.value, deadline);
+	}
+
+	/**
+	 * Copies an entry evicted from the heap to the second tier, unless it is already
+	 * stale or absent.
+	 */
+	private void demote(Entry<K, V> entry) {
+		if (entry.value == ABSENT) {
+			return;
+		}
+		long remaining = entry.deadline - staleGraceNanos - ticker.getAsLong();
+		if ((remaining > 0) && secondTier.put(entry.getKey(), entry.value,
+				wallClock.getAsLong() + TimeUnit.NANOSECONDS.toMillis(remaining))) {
+			stats.recordDemotion();
+		}
+	}
+
+	/**
+	 * Removes the value of a key, from both tiers.
+	 */
+	public void invalidate(K key) {
+		Entry<K, V> entry = data.get(key);
+		if (entry != null) {
+			invalidate(entry);
+		}
+		if (secondTier != null) {
+			secondTier.remove(key);
+		}
+	}
+
+	/**
+	 * Removes the value of a key from both tiers if it matches a condition, such as
+	 * being older than a version saved elsewhere. A key cached as absent is always
+	 * removed.
+	 */
+	public void invalidateIf(K key, Predicate<? super V> condition) {
+		Entry<K, V> entry = data.get(key);
+		if ((entry != null) && ((entry.value == ABSENT) || condition.test(entry.value))) {
+			invalidate(entry);
+		}
+		if (secondTier != null) {
+			secondTier.remove(key);
+		}
+	}
+
+	/**
+	 * Removes every value, from both tiers.
+	 */
+	public void invalidateAll() {
+		data.forEach(this::invalidate);
+		if (secondTier != null) {
+			secondTier.clear();
+		}
+	}
+
+	private void invalidate(Entry<K, V> entry) {
+		evictionLock.lock();
+		try {
+			if (data.remove(entry)) {
+				onRemoval(entry.getKey(), RemovalCause.EXPLICIT);
+			}
+			unlink(entry);
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		}
+		catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Replays the buffered reads against the eviction policy, advances the timer wheel
+	 * and removes the entries whose time to live has elapsed.
+	 */
+	public void cleanUp() {
+		evictionLock.lock();
+		try {
+			readBuffer.drainTo(accessPolicy);
+			timerWheel.advance(ticker.getAsLong());
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Unregisters the cache from its scheduler and closes the second tier. A persistent
+	 * tier first receives the values still cached on the heap, so that the next start
+	 * finds them.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (scheduler != null) {
+			scheduler.unregister(this);
+		}
+		if (secondTier == null) {
+			return;
+		}
+		if (secondTier.isPersistent()) {
+			evictionLock.lock();
+			try {
+				data.forEach(this::demote);
+			}
+			finally {
+				evictionLock.unlock();
+			}
+		}
+		secondTier.close();
+	}
+
+	/**
+	 * Returns the counters of this cache.
+	 */
+	public CacheStats stats() {
+		return stats;
+	}
+
+	/**
+	 * Returns the most frequently read keys, estimated from the sampled reads.
+	 * @param limit the maximum number of keys
+	 */
+	List<HotKeys.HotKey> hotKeys(int limit) {
+		return hotKeys.top(limit);
+	}
+
+	/**
+	 * Returns the keys of the cached values that are read the most often, according to
+	 * the frequencies the eviction policy keeps for every read, most frequent first.
+	 * Unlike {@link #hotKeys(int)}, this covers every read, at the cost of visiting all
+	 * the entries.
+	 * @param limit the maximum number of keys
+	 */
+	public List<K> hottest(int limit) {
+		List<Entry<K, V>> entries = new ArrayList<>(data.size());
+		int[] frequencies;
+		evictionLock.lock();
+		try {
+			readBuffer.drainTo(accessPolicy);
+			data.forEach(entry -> {
+				if (entry.value != ABSENT) {
+					entries.add(entry);
+				}
+			});
+			frequencies = new int[entries.size()];
+			for (int i = 0; i < frequencies.length; i++) {
+				frequencies[i] = sketch.frequency(entries.get(i).keyHashCode());
+			}
+		}
+		finally {
+			evictionLock.unlock();
+		}
+		Integer[] order = new Integer[entries.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(frequencies[b], frequencies[a]));
+		List<K> keys = new ArrayList<>(Math.min(limit, order.length));
+		for (int i = 0; (i < order.length) && (i < limit); i++) {
+			keys.add(entries.get(order[i]).getKey());
+		}
+		return keys;
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * Returns the number of values in the second tier, or zero without one.
+	 */
+	public int secondTierSize() {
+		return (secondTier == null) ? 0 : secondTier.size();
+	}
+
+	long weightedSize() {
+		evictionLock.lock();
+		try {
+			return weightedSize;
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void afterRead(Entry<K, V> entry) {
+		if ((readBuffer.offer(entry) == ReadBuffer.FULL) && evictionLock.tryLock()) {
+			try {
+				readBuffer.drainTo(accessPolicy);
+			}
+			finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	private void onAccess(Entry<K, V> entry) {
+		byte queue = entry.queue();
+		if (queue == Entry.RETIRED) {
+			return;
+		}
+		sketch.increment(entry.keyHashCode());
+		if (queue == Entry.WINDOW) {
+			window.moveToBack(entry);
+		}
+		else if (queue == Entry.PROBATION) {
+			probation.remove(entry);
+			entry.setQueue(Entry.PROTECTED);
+			protectedDeque.addLast(entry);
+			protectedSize++;
+			while (protectedSize > protectedMaximum) {
+				Entry<K, V> demoted = protectedDeque.peekFirst();
+				protectedDeque.remove(demoted);
+				protectedSize--;
+				demoted.setQueue(Entry.PROBATION);
+				probation.addLast(demoted);
+			}
+		}
+		else {
+			protectedDeque.moveToBack(entry);
+		}
+	}
+
+	private void evictEntries() {
+		Entry<K, V> candidate = evictFromWindow();
+		evictFromMain(candidate);
+	}
+
+	/**
+	 * Moves the entries that overflow the admission window to the probation space, where
+	 * they become candidates for admission.
+	 * @return the first candidate, or {@code null} if the window did not overflow
+	 */
+	private Entry<K, V> evictFromWindow() {
+		Entry<K, V> first = null;
+		while (windowSize > windowMaximum) {
+			Entry<K, V> entry = window.peekFirst();
+			window.remove(entry);
+			windowSize--;
+			entry.setQueue(Entry.PROBATION);
+			probation.addLast(entry);
+			if (first == null) {
+				first = entry;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Evicts entries until the cache is within its bounds, letting each candidate from
+	 * the window compete against the least recently used entry of the probation space.
+	 * @param candidate the first candidate, or {@code null}
+	 */
+	private void evictFromMain(Entry<K, V> candidate) {
+		while ((entryCount > maximumSize) || (weightedSize > maximumWeight)) {
+			Entry<K, V> victim = probation.peekFirst();
+			if (victim == null) {
+				victim = protectedDeque.isEmpty() ? window.peekFirst() : protectedDeque.peekFirst();
+				evict(victim);
+			}
+			else if (candidate == null) {
+				evict(victim);
+			}
+			else if (candidate == victim) {
+				candidate = candidate.getNextInAccessOrder();
+				evict(victim);
+			}
+			else if (admit(candidate, victim)) {
+				evict(victim);
+			}
+			else {
+				Entry<K, V> rejected = candidate;
+				candidate = candidate.getNextInAccessOrder();
+				evict(rejected);
+			}
+		}
+	}
+
+	private boolean admit(Entry<K, V> candidate, Entry<K, V> victim) {
+		return sketch.frequency(candidate.keyHashCode()) > sketch.frequency(victim.keyHashCode());
+	}
+
+	private void evict(Entry<K, V> entry) {
+		if (data.remove(entry)) {
+			onRemoval(entry.getKey(), RemovalCause.SIZE);
+			if (secondTier != null) {
+				demote(entry);
+			}
+		}
+		unlink(entry);
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean expire(TimerWheel.Node node) {
+		Entry<K, V> entry = (Entry<K, V>) node;
+		if (data.remove(entry)) {
+			onRemoval(entry.getKey(), RemovalCause.EXPIRED);
+		}
+		unlink(entry);
+		return true;
+	}
+
+	private void onRemoval(K key, RemovalCause cause) {
+		stats.recordRemoval(cause);
+		if (traced()) {
+			log.debug("cache={} event=removal key={} cause={}", name, key, cause);
+		}
+	}
+
+	/**
+	 * Decides whether the current operation is sampled. Sampled reads feed the hot keys;
+	 * sampled operations are logged when debug is enabled. Parameters of the debug events
+	 * are boxed, so they are only built for the sampled operations.
+	 */
+	private boolean sampled() {
+		return (eventSampleRate > 0) && (ThreadLocalRandom.current().nextInt(eventSampleRate) == 0);
+	}
+
+	private boolean traced() {
+		return log.isDebugEnabled() && sampled();
+	}
+
+	private long remainingMillis(Entry<K, V> entry, long now) {
+		return TimeUnit.NANOSECONDS.toMillis(entry.deadline - staleGraceNanos - now);
+	}
+
+	private void link(Entry<K, V> entry, byte queue) {
+		entry.setQueue(queue);
+		if (queue == Entry.WINDOW) {
+			window.addLast(entry);
+			windowSize++;
+		}
+		else if (queue == Entry.PROBATION) {
+			probation.addLast(entry);
+		}
+		else {
+			protectedDeque.addLast(entry);
+			protectedSize++;
+		}
+		entryCount++;
+		weightedSize += entry.weight();
+		timerWheel.schedule(entry);
+	}
+
+	private void unlink(Entry<K, V> entry) {
+		byte queue = entry.queue();
+		if (queue == Entry.RETIRED) {
+			return;
+		}
+		if (queue == Entry.WINDOW) {
+			window.remove(entry);
+			windowSize--;
+		}
+		else if (queue == Entry.PROBATION) {
+			probation.remove(entry);
+		}
+		else {
+			protectedDeque.remove(entry);
+			protectedSize--;
+		}
+		entry.setQueue(Entry.RETIRED);
+		entryCount--;
+		weightedSize -= entry.weight();
+		timerWheel.deschedule(entry);
+	}
+
+	/**
+	 * Builds a {@link TimedCache}.
+	 */
+	public static final class Builder<K, V> {
+
+		private final String name;
+
+		private final TimedCacheProperties properties;
+
+		private Function<? super K, ? extends V> loader;
+
+		private Function<? super List<K>, ? extends Map<K, ? extends V>> bulkLoader;
+
+		private Expiry<? super K, ? super V> expiry;
+
+		private int bulkLoadChunkSize;
+
+		private ToIntFunction<? super V> weigher = value -> 1;
+
+		private Comparator<? super V> versionOrder;
+
+		private SecondTier<K, V> secondTier;
+
+		private CacheScheduler scheduler;
+
+		private LongSupplier ticker = System::nanoTime;
+
+		private LongSupplier wallClock = System::currentTimeMillis;
+
+		private Executor refreshExecutor;
+
+		private Builder(String name, TimedCacheProperties properties) {
+			this.name = name;
+			this.properties = properties;
+		}
+
+		/**
+		 * Sets the loader of missing values, which returns {@code null} for a key without
+		 * a value. Refresh-ahead and the stale grace period need it.
+		 */
+		public Builder<K, V> loader(Function<? super K, ? extends V> loader) {
+			this.loader = loader;
+			return this;
+		}
+
+		/**
+		 * Sets the loader of the values missed by {@link TimedCache#getAll(Collection)},
+		 * which loads the values of up to the given number of keys in one call, such as
+		 * one {@code IN} query; the keys missing from its result have no value.
+		 */
+		public Builder<K, V> bulkLoader(int chunkSize,
+				Function<? super List<K>, ? extends Map<K, ? extends V>> bulkLoader) {
+			this.bulkLoadChunkSize = chunkSize;
+			this.bulkLoader = bulkLoader;
+			return this;
+		}
+
+		/**
+		 * Sets the expiry deciding the time to live of each value, instead of the fixed
+		 * or adaptive one of the properties.
+		 */
+		public Builder<K, V> expiry(Expiry<? super K, ? super V> expiry) {
+			this.expiry = expiry;
+			return this;
+		}
+
+		/**
+		 * Sets the weight of a value counted against the maximum weight; one by default.
+		 */
+		public Builder<K, V> weigher(ToIntFunction<? super V> weigher) {
+			this.weigher = weigher;
+			return this;
+		}
+
+		/**
+		 * Sets the order of the versions of a value; an install of a lower version than
+		 * the cached one is ignored.
+		 */
+		public Builder<K, V> versionOrder(Comparator<? super V> versionOrder) {
+			this.versionOrder = versionOrder;
+			return this;
+		}
+
+		/**
+		 * Sets the tier that entries evicted from the heap are demoted to.
+		 */
+		public Builder<K, V> secondTier(SecondTier<K, V> secondTier) {
+			this.secondTier = secondTier;
+			return this;
+		}
+
+		/**
+		 * Sets the scheduler cleaning up the cache and running its background reloads.
+		 */
+		public Builder<K, V> scheduler(CacheScheduler scheduler) {
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		/**
+		 * Sets the nanosecond clock driving expiration.
+		 */
+		Builder<K, V> ticker(LongSupplier ticker) {
+			this.ticker = ticker;
+			return this;
+		}
+
+		/**
+		 * Sets the millisecond clock of the expiry times in the second tier, which may
+		 * outlive the process.
+		 */
+		Builder<K, V> wallClock(LongSupplier wallClock) {
+			this.wallClock = wallClock;
+			return this;
+		}
+
+		/**
+		 * Runs the background reloads on the given executor instead of the scheduler.
+		 */
+		Builder<K, V> refreshExecutor(Executor refreshExecutor) {
+			this.refreshExecutor = refreshExecutor;
+			return this;
+		}
+
+		public TimedCache<K, V> build() {
+			return new TimedCache<>(this);
+		}
+
+	}
+
+	/**
+	 * Decides the time to live of the values of a cache.
+	 */
+	public interface Expiry<K, V> {
+
+		/**
+		 * Returns the time to live, in nanoseconds, of a value being installed.
+		 * @param now the current time of the cache ticker
+		 */
+		long timeToLive(K key, V value, long now);
+
+		/**
+		 * Records that the value of a key was changed at its source.
+		 * @param now the current time of the cache ticker
+		 */
+		default void recordWrite(K key, long now) {
+		}
+
+	}
+
+	/**
+	 * A store that entries evicted from the heap are demoted to and promoted back from.
+	 */
+	public interface SecondTier<K, V> extends Closeable {
+
+		/**
+		 * Stores a value, replacing the one of the same key.
+		 * @param expiresAtMillis the wall-clock time at which it expires
+		 * @return whether the value was stored
+		 */
+		boolean put(K key, V value, long expiresAtMillis);
+
+		/**
+		 * Removes and returns the value of a key.
+		 * @param nowMillis the current wall-clock time; an expired value is dropped
+		 * @return the value, or {@code null} if there is none or it expired
+		 */
+		Demoted<V> take(K key, long nowMillis);
+
+		void remove(K key);
+
+		void clear();
+
+		int size();
+
+		/**
+		 * Returns whether the tier outlives the process, in which case the values left on
+		 * the heap are demoted when the cache is closed.
+		 */
+		boolean isPersistent();
+
+	}
+
+	/**
+	 * A value taken out of a {@link SecondTier}, with its wall-clock expiry time.
+	 */
+	public static final class Demoted<V> {
+
+		final V value;
+
+		final long expiresAtMillis;
+
+		public Demoted(V value, long expiresAtMillis) {
+			this.value = value;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+
+	}
+
+	/**
+	 * A cached value with its deadline and policy metadata. The queue, the refresh flag
+	 * and the weight share one {@code int}, keeping the entry at 48 bytes with compressed
+	 * oops.
+	 */
+	abstract static class Entry<K, V> extends TimerWheel.Node
+			implements AccessOrderDeque.Linked<Entry<K, V>>, NodeMap.Keyed<K> {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<Entry> STATE = AtomicIntegerFieldUpdater
+				.newUpdater(Entry.class, "state");
+
+		static final byte RETIRED = 0;
+		static final byte WINDOW = 1;
+		static final byte PROBATION = 2;
+		static final byte PROTECTED = 3;
+
+		private static final int QUEUE_MASK = 0b11;
+
+		private static final int REFRESHING = 0b100;
+
+		private static final int WEIGHT_SHIFT = 3;
+
+		private static final int MAXIMUM_WEIGHT = Integer.MAX_VALUE >>> WEIGHT_SHIFT;
+
+		final V value;
+
+		/** Time at which the entry is removed, after its time to live and grace period. */
+		final long deadline;
+
+		/** The weight, the refresh flag and the queue, from the high to the low bits. */
+		private volatile int state;
+
+		private Entry<K, V> previousInAccessOrder;
+
+		private Entry<K, V> nextInAccessOrder;
+
+		Entry(V value, int weight, long deadline) {
+			this.value = value;
+			this.deadline = deadline;
+			this.state = Math.min(weight, MAXIMUM_WEIGHT) << WEIGHT_SHIFT;
+		}
+
+		/**
+		 * Creates an entry, keeping an {@link Integer} key as an {@code int} so that the
+		 * entry does not retain the caller's box.
+		 */
+		@SuppressWarnings("unchecked")
+		static <K, V> Entry<K, V> of(K key, V value, int weight, long deadline) {
+			if (key instanceof Integer) {
+				return (Entry<K, V>) new IntKeyEntry<>((Integer) key, value, weight, deadline);
+			}
+			return new KeyEntry<>(key, value, weight, deadline);
+		}
+
+		@Override
+		long getDeadline() {
+			return deadline;
+		}
+
+		int weight() {
+			return state >>> WEIGHT_SHIFT;
+		}
+
+		byte queue() {
+			return (byte) (state & QUEUE_MASK);
+		}
+
+		/**
+		 * Moves the entry to a queue; only called under the eviction lock, but races with
+		 * the refresh flag.
+		 */
+		void setQueue(byte queue) {
+			for (;;) {
+				int current = state;
+				if (STATE.compareAndSet(this, current, (current & ~QUEUE_MASK) | queue)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Returns whether the entry has to be removed; this includes the stale grace
+		 * period.
+		 */
+		boolean hasExpired(long now) {
+			return (now - deadline) >= 0;
+		}
+
+		/**
+		 * Returns whether the entry is within the given time of its removal deadline.
+		 */
+		boolean isStale(long now, long beforeDeadline) {
+			return (now - (deadline - beforeDeadline)) >= 0;
+		}
+
+		boolean startRefresh() {
+			for (;;) {
+				int current = state;
+				if ((current & REFRESHING) != 0) {
+					return false;
+				}
+				if (STATE.compareAndSet(this, current, current | REFRESHING)) {
+					return true;
+				}
+			}
+		}
+
+		void endRefresh() {
+			for (;;) {
+				int current = state;
+				if (STATE.compareAndSet(this, current, current & ~REFRESHING)) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public Entry<K, V> getPreviousInAccessOrder() {
+			return previousInAccessOrder;
+		}
+
+		@Override
+		public void setPreviousInAccessOrder(Entry<K, V> previous) {
+			this.previousInAccessOrder = previous;
+		}
+
+		@Override
+		public Entry<K, V> getNextInAccessOrder() {
+			return nextInAccessOrder;
+		}
+
+		@Override
+		public void setNextInAccessOrder(Entry<K, V> next) {
+			this.nextInAccessOrder = next;
+		}
+
+	}
+
+	/**
+	 * An entry that keeps its key as an object.
+	 */
+	static final class KeyEntry<K, V> extends Entry<K, V> {
+
+		private final K key;
+
+		KeyEntry(K key, V value, int weight, long deadline) {
+			super(value, weight, deadline);
+			this.key = key;
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+	}
+
+	/**
+	 * An entry of an {@link Integer} key, which boxes the key only when asked for it as
+	 * an object, e.g. on removal; the map hashes and matches the {@code int}.
+	 */
+	static final class IntKeyEntry<V> extends Entry<Integer, V> {
+
+		private final int key;
+
+		IntKeyEntry(int key, V value, int weight, long deadline) {
+			super(value, weight, deadline);
+			this.key = key;
+		}
+
+		@Override
+		public Integer getKey() {
+			return key;
+		}
+
+		@Override
+		public int keyHashCode() {
+			return key;
+		}
+
+		@Override
+		public boolean hasKey(Object key) {
+			return (key instanceof Integer) && (((Integer) key) == this.key);
+		}
+
+		@Override
+		public boolean hasKey(int key) {
+			return key == this.key;
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.util.ClassUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link CacheManager} of {@link TimedSpringCache}s, all cleaned up by one shared
+ * {@link CacheScheduler}. The caches listed in the {@link TimedCachesProperties} are
+ * created upfront, so that their metrics are bound at startup; other names get a cache
+ * with the default settings when first used.
+ */
+public class TimedCacheManager implements CacheManager, BeanClassLoaderAware, InitializingBean, Closeable {
+
+	private final ConcurrentMap<String, TimedSpringCache> caches = new ConcurrentHashMap<>();
+
+	private final TimedCachesProperties properties;
+
+	private final CacheScheduler scheduler;
+
+	private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+	public TimedCacheManager(TimedCachesProperties properties, CacheScheduler scheduler) {
+		this.properties = properties;
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		for (String name : properties.getCaches().keySet()) {
+			getCache(name);
+		}
+	}
+
+	@Override
+	public TimedSpringCache getCache(String name) {
+		return caches.computeIfAbsent(name, this::createCache);
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return Collections.unmodifiableSet(caches.keySet());
+	}
+
+	private TimedSpringCache createCache(String name) {
+		TimedCacheProperties settings = properties.getCaches().getOrDefault(name, new TimedCacheProperties());
+		TimedCache<Object, Object> cache = TimedCache.builder(name, settings).weigher(TimedSpringCache::weigh)
+				.scheduler(scheduler).build();
+		return new TimedSpringCache(cache, properties.isStoreByValue(), classLoader);
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (TimedSpringCache cache : caches.values()) {
+			cache.getNativeCache().close();
+		}
+	}
+
+}
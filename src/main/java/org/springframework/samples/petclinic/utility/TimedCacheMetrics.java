@@ -0,0 +1,115 @@
+package org.springframework.samples.petclinic.utility;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.samples.petclinic.utility.CacheStats.RemovalCause;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the statistics of a {@link TimedCache} to Micrometer under the same
+ * {@code cache.*} names that Spring Boot uses for the other caches, so they can be read
+ * side by side. On top of those it records the load latency as a histogram, the
+ * removals by cause and the hot keys by rank; keys that are not numbers are published
+ * as {@code NaN}.
+ */
+public class TimedCacheMetrics implements MeterBinder {
+
+	private final TimedCache<?, ?> cache;
+
+	private final Iterable<Tag> tags;
+
+	private final int hotKeys;
+
+	/**
+	 * @param cache the cache to instrument, tagged with its name
+	 * @param hotKeys the number of hot keys to publish
+	 */
+	public TimedCacheMetrics(TimedCache<?, ?> cache, int hotKeys) {
+		this(cache, cache.getName(), Tags.empty(), hotKeys);
+	}
+
+	/**
+	 * @param cache the cache to instrument
+	 * @param cacheName the value of the {@code cache} tag
+	 * @param tags additional tags, such as the name of the cache manager
+	 * @param hotKeys the number of hot keys to publish
+	 */
+	public TimedCacheMetrics(TimedCache<?, ?> cache, String cacheName, Iterable<Tag> tags, int hotKeys) {
+		this.cache = cache;
+		this.tags = Tags.of(tags).and("cache", cacheName);
+		this.hotKeys = hotKeys;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CacheStats stats = cache.stats();
+		Gauge.builder("cache.size", cache, TimedCache::size).tags(tags)
+				.description("The number of entries in this cache").register(registry);
+		FunctionCounter.builder("cache.gets", stats, CacheStats::getHitCount).tags(tags).tag("result", "hit")
+				.description("The number of times cache lookup methods have returned a cached value")
+				.register(registry);
+		FunctionCounter.builder("cache.gets", stats, CacheStats::getMissCount).tags(tags).tag("result", "miss")
+				.description("The number of times cache lookup methods have returned an uncached value")
+				.register(registry);
+		FunctionCounter.builder("cache.puts", stats, CacheStats::getPutCount).tags(tags)
+				.description("The number of entries added to the cache").register(registry);
+		FunctionCounter.builder("cache.evictions", stats, CacheStats::getEvictionCount).tags(tags)
+				.description("The number of entries evicted because they expired or exceeded the bounds")
+				.register(registry);
+		for (RemovalCause cause : RemovalCause.values()) {
+			FunctionCounter.builder("cache.removals", stats, s -> s.getRemovalCount(cause)).tags(tags)
+					.tag("cause", cause.name().toLowerCase(Locale.ENGLISH))
+					.description("The number of entries removed from the cache, by cause").register(registry);
+		}
+
+		FunctionCounter.builder("cache.demotions", stats, CacheStats::getDemotionCount).tags(tags)
+				.description("The number of entries moved from the heap to the second tier").register(registry);
+		FunctionCounter.builder("cache.promotions", stats, CacheStats::getPromotionCount).tags(tags)
+				.description("The number of entries moved back from the second tier to the heap")
+				.register(registry);
+		Gauge.builder("cache.offheap.size", cache, TimedCache::secondTierSize).tags(tags)
+				.description("The number of entries in the off-heap tier").register(registry);
+
+		Timer loadSuccess = loadTimer(registry, "success");
+		Timer loadFailure = loadTimer(registry, "failure");
+		stats.setLoadTimeListener((loadTimeNanos, success) -> (success ? loadSuccess : loadFailure)
+				.record(loadTimeNanos, TimeUnit.NANOSECONDS));
+
+		for (int rank = 1; rank <= hotKeys; rank++) {
+			int index = rank - 1;
+			Tags rankTags = Tags.of(tags).and("rank", Integer.toString(rank));
+			Gauge.builder("cache.hot.key", cache, c -> hotKey(c, index, false)).tags(rankTags)
+					.description("The key at this rank of the most frequently read entries, if it is a number")
+					.register(registry);
+			Gauge.builder("cache.hot.key.reads", cache, c -> hotKey(c, index, true)).tags(rankTags)
+					.description("The estimated reads of the entry at this rank").register(registry);
+		}
+	}
+
+	private Timer loadTimer(MeterRegistry registry, String result) {
+		return Timer.builder("cache.load").tags(tags).tag("result", result)
+				.description("The time taken to load a missing or refreshed entry").publishPercentileHistogram()
+				.publishPercentiles(0.5, 0.95, 0.99).register(registry);
+	}
+
+	private static double hotKey(TimedCache<?, ?> cache, int index, boolean reads) {
+		List<HotKeys.HotKey> top = cache.hotKeys(index + 1);
+		if (top.size() <= index) {
+			return Double.NaN;
+		}
+		HotKeys.HotKey hotKey = top.get(index);
+		if (reads) {
+			return hotKey.getEstimatedReads();
+		}
+		return (hotKey.getKey() instanceof Number) ? ((Number) hotKey.getKey()).doubleValue() : Double.NaN;
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Settings of a {@link TimedCache}.
+ */
+public class TimedCacheProperties {
+
+	/**
+	 * Time after which a cached entry is reloaded. Ignored when adaptive expiry is
+	 * enabled, as its minimum and maximum bound the time to live instead.
+	 */
+	private Duration expiry = Duration.ofSeconds(10);
+
+	/**
+	 * Maximum number of cached entries.
+	 */
+	private long maximumSize = 10_000;
+
+	/**
+	 * Optional upper bound of the total weight of the cached entries, as estimated by
+	 * the weigher of the cache.
+	 */
+	private DataSize maximumWeight;
+
+	/**
+	 * Time for which a key that the loader found no value for is remembered as absent.
+	 * Zero disables negative caching.
+	 */
+	private Duration negativeExpiry = Duration.ZERO;
+
+	/**
+	 * Window before expiry in which a read triggers a background reload of the entry.
+	 * Zero disables refresh-ahead.
+	 */
+	private Duration refreshAhead = Duration.ZERO;
+
+	/**
+	 * Time after expiry during which the previous value is still served while it is
+	 * being reloaded in the background. Zero disables stale-while-revalidate.
+	 */
+	private Duration staleGracePeriod = Duration.ZERO;
+
+	/**
+	 * One in how many cache operations is logged as a debug event. Zero disables the
+	 * events; the counters are always kept.
+	 */
+	private int eventSampleRate = 100;
+
+	/**
+	 * Time to live adapted per entry to how recently its key was written, replacing the
+	 * fixed expiry when enabled.
+	 */
+	private final Adaptive adaptiveExpiry = new Adaptive();
+
+	public Duration getExpiry() {
+		return expiry;
+	}
+
+	public void setExpiry(Duration expiry) {
+		this.expiry = expiry;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	public void setMaximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	public DataSize getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	public void setMaximumWeight(DataSize maximumWeight) {
+		this.maximumWeight = maximumWeight;
+	}
+
+	public Duration getNegativeExpiry() {
+		return negativeExpiry;
+	}
+
+	public void setNegativeExpiry(Duration negativeExpiry) {
+		this.negativeExpiry = negativeExpiry;
+	}
+
+	public Duration getRefreshAhead() {
+		return refreshAhead;
+	}
+
+	public void setRefreshAhead(Duration refreshAhead) {
+		this.refreshAhead = refreshAhead;
+	}
+
+	public Duration getStaleGracePeriod() {
+		return staleGracePeriod;
+	}
+
+	public void setStaleGracePeriod(Duration staleGracePeriod) {
+		this.staleGracePeriod = staleGracePeriod;
+	}
+
+	public int getEventSampleRate() {
+		return eventSampleRate;
+	}
+
+	public void setEventSampleRate(int eventSampleRate) {
+		this.eventSampleRate = eventSampleRate;
+	}
+
+	public Adaptive getAdaptiveExpiry() {
+		return adaptiveExpiry;
+	}
+
+	/**
+	 * Settings of an {@link AdaptiveExpiry}.
+	 */
+	public static class Adaptive {
+
+		/**
+		 * Whether the time to live of an entry is adapted to the age of the last write of
+		 * its key.
+		 */
+		private boolean enabled;
+
+		/**
+		 * Lower bound of the time to live, given to entries written just now.
+		 */
+		private Duration minimum = Duration.ofSeconds(5);
+
+		/**
+		 * Upper bound of the time to live, given to entries not written for long.
+		 */
+		private Duration maximum = Duration.ofMinutes(30);
+
+		/**
+		 * Fraction of the time since the last write of a key that its entry lives.
+		 */
+		private double writeAgeFactor = 0.1;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getMinimum() {
+			return minimum;
+		}
+
+		public void setMinimum(Duration minimum) {
+			this.minimum = minimum;
+		}
+
+		public Duration getMaximum() {
+			return maximum;
+		}
+
+		public void setMaximum(Duration maximum) {
+			this.maximum = maximum;
+		}
+
+		public double getWriteAgeFactor() {
+			return writeAgeFactor;
+		}
+
+		public void setWriteAgeFactor(double writeAgeFactor) {
+			this.writeAgeFactor = writeAgeFactor;
+		}
+
+	}
+
+}
@@ -0,0 +1,228 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings shared by the {@link TimedCache}s, bound from {@code petclinic.cache.*}: the
+ * background threads of the {@link CacheScheduler}, the caches of the
+ * {@link TimedCacheManager}, the {@link CacheWarmup} and the {@link InvalidationLog}.
+ */
+@ConfigurationProperties("petclinic.cache")
+public class TimedCachesProperties {
+
+	/**
+	 * Number of threads reloading entries in the background, shared by all caches.
+	 */
+	private int refreshThreads = 2;
+
+	/**
+	 * Maximum number of pending background reloads; further reloads are skipped.
+	 */
+	private int refreshQueueCapacity = 1_000;
+
+	/**
+	 * Whether the caches of the cache manager hold serialized copies, so that callers
+	 * modifying a returned value do not modify the cached one.
+	 */
+	private boolean storeByValue = true;
+
+	/**
+	 * Settings of the caches of the cache manager, by name. Caches that are not listed
+	 * use the defaults.
+	 */
+	private final Map<String, TimedCacheProperties> caches = new LinkedHashMap<>();
+
+	private final Warmup warmup = new Warmup();
+
+	private final Invalidation invalidation = new Invalidation();
+
+	public int getRefreshThreads() {
+		return refreshThreads;
+	}
+
+	public void setRefreshThreads(int refreshThreads) {
+		this.refreshThreads = refreshThreads;
+	}
+
+	public int getRefreshQueueCapacity() {
+		return refreshQueueCapacity;
+	}
+
+	public void setRefreshQueueCapacity(int refreshQueueCapacity) {
+		this.refreshQueueCapacity = refreshQueueCapacity;
+	}
+
+	public boolean isStoreByValue() {
+		return storeByValue;
+	}
+
+	public void setStoreByValue(boolean storeByValue) {
+		this.storeByValue = storeByValue;
+	}
+
+	public Map<String, TimedCacheProperties> getCaches() {
+		return caches;
+	}
+
+	public Warmup getWarmup() {
+		return warmup;
+	}
+
+	public Invalidation getInvalidation() {
+		return invalidation;
+	}
+
+	/**
+	 * Settings of the warm-up that reloads the hot sets of the caches on startup.
+	 */
+	public static class Warmup {
+
+		/**
+		 * Directory the hot sets are saved to, one file per cache. The caches are not
+		 * warmed up when not set.
+		 */
+		private Path directory;
+
+		/**
+		 * Maximum number of keys saved per cache.
+		 */
+		private int hotSetSize = 1_000;
+
+		/**
+		 * Interval at which the hot sets are saved, besides at shutdown.
+		 */
+		private Duration saveInterval = Duration.ofMinutes(5);
+
+		/**
+		 * Number of keys loaded by one warm-up task.
+		 */
+		private int batchSize = 100;
+
+		/**
+		 * Number of threads loading the batches in parallel.
+		 */
+		private int threads = 4;
+
+		/**
+		 * Maximum time the readiness of the application waits for the warm-up; the
+		 * batches still pending are then abandoned.
+		 */
+		private Duration timeout = Duration.ofMinutes(1);
+
+		public Path getDirectory() {
+			return directory;
+		}
+
+		public void setDirectory(Path directory) {
+			this.directory = directory;
+		}
+
+		public int getHotSetSize() {
+			return hotSetSize;
+		}
+
+		public void setHotSetSize(int hotSetSize) {
+			this.hotSetSize = hotSetSize;
+		}
+
+		public Duration getSaveInterval() {
+			return saveInterval;
+		}
+
+		public void setSaveInterval(Duration saveInterval) {
+			this.saveInterval = saveInterval;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public void setBatchSize(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+	}
+
+	/**
+	 * Settings of the invalidations shared between the nodes through the
+	 * {@code cache_invalidation} table.
+	 */
+	public static class Invalidation {
+
+		/**
+		 * Whether saves are published to the other nodes and their saves evicted from the
+		 * local caches.
+		 */
+		private boolean enabled;
+
+		/**
+		 * Interval at which the table is polled for the saves of the other nodes.
+		 */
+		private Duration pollInterval = Duration.ofSeconds(1);
+
+		/**
+		 * Maximum number of rows read by one query of a poll.
+		 */
+		private int batchSize = 500;
+
+		/**
+		 * Time after which rows are deleted from the table.
+		 */
+		private Duration retention = Duration.ofHours(1);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getPollInterval() {
+			return pollInterval;
+		}
+
+		public void setPollInterval(Duration pollInterval) {
+			this.pollInterval = pollInterval;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public void setBatchSize(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		public Duration getRetention() {
+			return retention;
+		}
+
+		public void setRetention(Duration retention) {
+			this.retention = retention;
+		}
+
+	}
+
+}
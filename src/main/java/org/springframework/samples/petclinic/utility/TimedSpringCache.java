@@ -0,0 +1,117 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.util.SerializationUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Adapts a {@link TimedCache} to Spring's {@link org.springframework.cache.Cache}, so
+ * that it can back {@code @Cacheable} methods. {@code null} results are cached for the
+ * {@link TimedCacheProperties#getNegativeExpiry() negative expiry} of the cache, and not
+ * at all without one.
+ * <p>
+ * Stored by value, the cache holds serialized copies and every read returns a fresh
+ * one, as JCache does by default: entities returned by a cached repository method are
+ * often modified by their callers, and those changes must not leak into the cache.
+ */
+public class TimedSpringCache extends AbstractValueAdaptingCache {
+
+	private final TimedCache<Object, Object> cache;
+
+	private final boolean storeByValue;
+
+	private final ClassLoader classLoader;
+
+	/**
+	 * @param classLoader the class loader resolving the classes of the copies
+	 */
+	public TimedSpringCache(TimedCache<Object, Object> cache, boolean storeByValue, ClassLoader classLoader) {
+		super(true);
+		this.cache = cache;
+		this.storeByValue = storeByValue;
+		this.classLoader = classLoader;
+	}
+
+	@Override
+	public String getName() {
+		return cache.getName();
+	}
+
+	@Override
+	public TimedCache<Object, Object> getNativeCache() {
+		return cache;
+	}
+
+	@Override
+	protected Object lookup(Object key) {
+		Object stored = cache.lookup(key);
+		return (stored == TimedCache.ABSENT) ? NullValue.INSTANCE : fromStore(stored);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		return (T) fromStoreValue(fromStore(cache.get(key, k -> {
+			try {
+				T value = valueLoader.call();
+				return (value != null) ? toStore(value) : null;
+			}
+			catch (Exception ex) {
+				throw new ValueRetrievalException(k, valueLoader, ex);
+			}
+		})));
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		if (value != null) {
+			cache.put(key, toStore(value));
+		}
+		else {
+			cache.putAbsent(key);
+		}
+	}
+
+	@Override
+	public void evict(Object key) {
+		cache.recordWrite(key);
+		cache.invalidate(key);
+	}
+
+	@Override
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	private Object toStore(Object value) {
+		Object storeValue = toStoreValue(value);
+		return storeByValue ? SerializationUtils.serialize(storeValue) : storeValue;
+	}
+
+	private Object fromStore(Object stored) {
+		if (!storeByValue || (stored == null)) {
+			return stored;
+		}
+		try (ObjectInputStream in = new ConfigurableObjectInputStream(new ByteArrayInputStream((byte[]) stored),
+				classLoader)) {
+			return in.readObject();
+		}
+		catch (IOException | ClassNotFoundException ex) {
+			throw new IllegalStateException("Cannot copy a value out of cache " + getName(), ex);
+		}
+	}
+
+	/**
+	 * Weighs a stored value by its serialized size, or as one when stored by reference.
+	 */
+	static int weigh(Object stored) {
+		return (stored instanceof byte[]) ? ((byte[]) stored).length : 1;
+	}
+
+}
@@ -0,0 +1,215 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * A hierarchical timing wheel that expires entries in amortized O(1) time. Each level
+ * is an array of buckets holding doubly linked lists of timers; a timer is placed in the
+ * coarsest-grained bucket that still distinguishes its deadline. When time advances,
+ * only the buckets whose ticks have elapsed are visited: their timers are either
+ * expired or cascaded into a finer level. A timer is therefore touched at most once per
+ * level during its lifetime and live entries far in the future are never scanned.
+ * <p>
+ * This class is not thread-safe; the owning cache guards it with its eviction lock.
+ * See "Hashed and Hierarchical Timing Wheels" by Varghese and Lauck.
+ */
+final class TimerWheel {
+
+	static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+	static final long[] SPANS = {
+			Long.highestOneBit(1_000_000_000L - 1) << 1, // 1.07s
+			Long.highestOneBit(60_000_000_000L - 1) << 1, // 1.14m
+			Long.highestOneBit(3_600_000_000_000L - 1) << 1, // 1.22h
+			Long.highestOneBit(86_400_000_000_000L - 1) << 1, // 1.63d
+			BUCKETS[3] * (Long.highestOneBit(86_400_000_000_000L - 1) << 1), // 6.5d
+			BUCKETS[3] * (Long.highestOneBit(86_400_000_000_000L - 1) << 1), // 6.5d
+	};
+
+	static final long[] SHIFT = {
+			Long.numberOfTrailingZeros(SPANS[0]),
+			Long.numberOfTrailingZeros(SPANS[1]),
+			Long.numberOfTrailingZeros(SPANS[2]),
+			Long.numberOfTrailingZeros(SPANS[3]),
+			Long.numberOfTrailingZeros(SPANS[4]),
+	};
+
+	private final Node[][] wheel;
+
+	private final Expirer expirer;
+
+	private long nanos;
+
+	TimerWheel(long currentTimeNanos, Expirer expirer) {
+		this.expirer = expirer;
+		this.nanos = currentTimeNanos;
+		this.wheel = new Node[BUCKETS.length][];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new Node[BUCKETS[i]];
+			for (int j = 0; j < wheel[i].length; j++) {
+				wheel[i][j] = new Sentinel();
+			}
+		}
+	}
+
+	/**
+	 * Advances the wheel to the given time and expires the timers whose deadline has
+	 * passed.
+	 * @param currentTimeNanos the current time, in nanoseconds
+	 */
+	void advance(long currentTimeNanos) {
+		long previousTimeNanos = nanos;
+		nanos = currentTimeNanos;
+		for (int i = 0; i < SHIFT.length; i++) {
+			long previousTicks = (previousTimeNanos >>> SHIFT[i]);
+			long currentTicks = (currentTimeNanos >>> SHIFT[i]);
+			if ((currentTicks - previousTicks) <= 0L) {
+				break;
+			}
+			expire(i, previousTicks, currentTicks);
+		}
+	}
+
+	private void expire(int index, long previousTicks, long currentTicks) {
+		Node[] timerWheel = wheel[index];
+		int mask = timerWheel.length - 1;
+		int steps = Math.min(1 + (int) Math.min(currentTicks - previousTicks, timerWheel.length),
+				timerWheel.length);
+		int start = (int) (previousTicks & mask);
+		int end = start + steps;
+		for (int i = start; i < end; i++) {
+			Node sentinel = timerWheel[i & mask];
+			Node node = sentinel.getNextInTimer();
+			sentinel.setPreviousInTimer(sentinel);
+			sentinel.setNextInTimer(sentinel);
+			while (node != sentinel) {
+				Node next = node.getNextInTimer();
+				node.setPreviousInTimer(null);
+				node.setNextInTimer(null);
+				if (((node.getDeadline() - nanos) > 0) || !expirer.expire(node)) {
+					schedule(node);
+				}
+				node = next;
+			}
+		}
+	}
+
+	/**
+	 * Schedules a timer that is not currently in the wheel.
+	 * @param node the timer to add
+	 */
+	void schedule(Node node) {
+		Node sentinel = findBucket(node.getDeadline());
+		link(sentinel, node);
+	}
+
+	/**
+	 * Moves a timer whose deadline changed to its new bucket.
+	 * @param node the timer to reschedule
+	 */
+	void reschedule(Node node) {
+		if (node.getNextInTimer() != null) {
+			unlink(node);
+		}
+		schedule(node);
+	}
+
+	/**
+	 * Removes a timer from the wheel, if present.
+	 * @param node the timer to remove
+	 */
+	void deschedule(Node node) {
+		if (node.getNextInTimer() != null) {
+			unlink(node);
+		}
+		node.setNextInTimer(null);
+		node.setPreviousInTimer(null);
+	}
+
+	private Node findBucket(long time) {
+		long duration = time - nanos;
+		int length = wheel.length - 1;
+		for (int i = 0; i < length; i++) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = (time >>> SHIFT[i]);
+				int index = (int) (ticks & (wheel[i].length - 1));
+				return wheel[i][index];
+			}
+		}
+		return wheel[length][0];
+	}
+
+	private static void link(Node sentinel, Node node) {
+		node.setPreviousInTimer(sentinel.getPreviousInTimer());
+		node.setNextInTimer(sentinel);
+		sentinel.getPreviousInTimer().setNextInTimer(node);
+		sentinel.setPreviousInTimer(node);
+	}
+
+	private static void unlink(Node node) {
+		Node next = node.getNextInTimer();
+		if (next != null) {
+			Node prev = node.getPreviousInTimer();
+			next.setPreviousInTimer(prev);
+			prev.setNextInTimer(next);
+		}
+	}
+
+	/**
+	 * Callback invoked when a timer's deadline has passed.
+	 */
+	interface Expirer {
+
+		/**
+		 * Expires the entry backing the given timer.
+		 * @param node the timer whose deadline has passed
+		 * @return {@code false} if the entry could not be expired and the timer should be
+		 * scheduled again
+		 */
+		boolean expire(Node node);
+
+	}
+
+	/**
+	 * A timer in the wheel. Cache entries extend this class so that scheduling does not
+	 * require an extra allocation per entry.
+	 */
+	abstract static class Node {
+
+		private Node previousInTimer;
+
+		private Node nextInTimer;
+
+		abstract long getDeadline();
+
+		Node getPreviousInTimer() {
+			return previousInTimer;
+		}
+
+		void setPreviousInTimer(Node previousInTimer) {
+			this.previousInTimer = previousInTimer;
+		}
+
+		Node getNextInTimer() {
+			return nextInTimer;
+		}
+
+		void setNextInTimer(Node nextInTimer) {
+			this.nextInTimer = nextInTimer;
+		}
+
+	}
+
+	private static final class Sentinel extends Node {
+
+		Sentinel() {
+			setPreviousInTimer(this);
+			setNextInTimer(this);
+		}
+
+		@Override
+		long getDeadline() {
+			return 0L;
+		}
+
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.samples.petclinic.model.BaseEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The entities loaded during one web request, one {@link IdentityMap} per entity type,
+ * so that every entity is loaded at most once per request: the repositories are only
+ * asked for the ids not seen yet, and every lookup of an id within the request returns
+ * the same instance. Saves evict the saved entities, which are then loaded again.
+ * <p>
+ * A unit of work is bound to a request as an attribute by the web layer; lookups outside
+ * of a request, or of a request without one, go to the loader directly. The loader calls
+ * and the lookups served from the unit of work are counted. A loader may itself be
+ * answered by a cache, so the SQL statements the request actually ran are counted
+ * separately, as the persistence layer {@link #recordStatement() reports} them.
+ * <p>
+ * Entities returned from a unit of work may come from a shared cache, and must not be
+ * modified. This class is not thread-safe, as a request is handled by one thread.
+ */
+public final class UnitOfWork {
+
+	/** The name of the request attribute holding the unit of work of a request. */
+	public static final String ATTRIBUTE = UnitOfWork.class.getName();
+
+	private final Map<Class<?>, IdentityMap<?>> entities = new HashMap<>();
+
+	private int loads;
+
+	private int hits;
+
+	private int statements;
+
+	/**
+	 * Returns the unit of work bound to the current request, or {@code null} if there is
+	 * none.
+	 */
+	public static UnitOfWork current() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes == null) {
+			return null;
+		}
+		return (UnitOfWork) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+	}
+
+	/**
+	 * Finds an entity by id in the unit of work of the current request, loading it on
+	 * the first lookup.
+	 * @param loader loads the entity from the repository, possibly returning {@code null}
+	 */
+	public static <E extends BaseEntity> E find(Class<E> type, Integer id,
+			Function<? super Integer, ? extends E> loader) {
+		UnitOfWork unitOfWork = current();
+		return (unitOfWork != null) ? unitOfWork.get(type, id, loader) : loader.apply(id);
+	}
+
+	/**
+	 * Removes a saved entity from the unit of work of the current request, if any.
+	 */
+	public static void evict(Class<? extends BaseEntity> type, Integer id) {
+		UnitOfWork unitOfWork = current();
+		if ((unitOfWork != null) && (id != null)) {
+			unitOfWork.remove(type, id);
+		}
+	}
+
+	/**
+	 * Returns the entity of the given type and id, loading and keeping it if this unit of
+	 * work has not seen it yet. Missing entities are not remembered.
+	 */
+	public <E extends BaseEntity> E get(Class<E> type, Integer id, Function<? super Integer, ? extends E> loader) {
+		IdentityMap<E> map = mapOf(type);
+		E entity = map.get(id);
+		if (entity != null) {
+			hits++;
+			return entity;
+		}
+		loads++;
+		entity = loader.apply(id);
+		if ((entity != null) && (entity.getId() != null)) {
+			map.add(entity);
+		}
+		return entity;
+	}
+
+	public void remove(Class<? extends BaseEntity> type, Integer id) {
+		IdentityMap<?> map = entities.get(type);
+		if (map != null) {
+			BaseEntity entity = map.get(id);
+			if (entity != null) {
+				map.remove(entity);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <E extends BaseEntity> IdentityMap<E> mapOf(Class<E> type) {
+		return (IdentityMap<E>) entities.computeIfAbsent(type, key -> new IdentityMap<>());
+	}
+
+	/**
+	 * Counts one SQL statement run on behalf of the request.
+	 */
+	public void recordStatement() {
+		statements++;
+	}
+
+	/**
+	 * Returns the number of lookups that called a loader, which may have been answered
+	 * by a cache without a query.
+	 */
+	public int getLoads() {
+		return loads;
+	}
+
+	/**
+	 * Returns the number of lookups served from this unit of work, each a loader call
+	 * saved.
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of SQL statements run during the request, including those of
+	 * lookups that did not go through this unit of work.
+	 */
+	public int getStatements() {
+		return statements;
+	}
+
+}
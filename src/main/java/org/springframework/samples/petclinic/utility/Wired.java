@@ -0,0 +1,21 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class that {@link SimpleDI} creates through code generated at compile time by
+ * the {@link SimpleDIProcessor}, instead of through reflection. The class and the
+ * constructor chosen for injection must not be private. The annotation is kept at
+ * runtime, so that the container can warn about a class whose compilation did not run
+ * the processor.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Wired {
+
+}
@@ -17,6 +17,9 @@ package org.springframework.samples.petclinic.visit;
 
 import java.util.List;
 
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.repository.Repository;
 import org.springframework.samples.petclinic.model.BaseEntity;
@@ -32,6 +35,7 @@ import org.springframework.samples.petclinic.model.BaseEntity;
  * @author Sam Brannen
  * @author Michael Isvy
  */
+@CacheConfig(cacheNames = "visits", cacheManager = "timedCacheManager")
 public interface VisitRepository extends Repository<Visit, Integer> {
 
 	/**
@@ -39,8 +43,10 @@ public interface VisitRepository extends Repository<Visit, Integer> {
 	 * @param visit the <code>Visit</code> to save
 	 * @see BaseEntity#isNew
 	 */
+	@CacheEvict(key = "#p0.petId")
 	void save(Visit visit) throws DataAccessException;
 
+	@Cacheable
 	List<Visit> findByPetId(Integer petId);
 
 }
@@ -19,18 +19,31 @@ package org.springframework.samples.petclinic;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.samples.petclinic.owner.OwnerNameIndex;
+import org.springframework.samples.petclinic.utility.PrefixIndex;
 import org.springframework.samples.petclinic.vet.VetRepository;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 @SpringBootTest
 class PetclinicIntegrationTests {
 
 	@Autowired
 	private VetRepository vets;
 
+	@Autowired
+	private OwnerNameIndex ownerNames;
+
 	@Test
 	void testFindAll() throws Exception {
 		vets.findAll();
 		vets.findAll(); // served from cache
 	}
 
+	@Test
+	void testOwnerNamesAreIndexedOnStartup() {
+		assertThat(ownerNames.find("dav", 10)).extracting(PrefixIndex.Match::getLabel)
+				.containsExactly("Betty Davis", "Harold Davis");
+	}
+
 }
@@ -28,17 +28,27 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.utility.PrefixIndex;
 import org.springframework.samples.petclinic.visit.Visit;
 import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
@@ -49,6 +59,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * @author Colin But
  */
 @WebMvcTest(OwnerController.class)
+@Import(OwnerService.class)
 class OwnerControllerTests {
 
 	private static final int TEST_OWNER_ID = 1;
@@ -62,6 +73,9 @@ class OwnerControllerTests {
 	@MockBean
 	private VisitRepository visits;
 
+	@MockBean
+	private OwnerNameIndex ownerNames;
+
 	private Owner george;
 
 	@BeforeEach
@@ -100,6 +114,24 @@ class OwnerControllerTests {
 				.andExpect(status().is3xxRedirection());
 	}
 
+	@Test
+	void testProcessCreationFormIndexesTheOwnerName() throws Exception {
+		mockMvc.perform(post("/owners/new").param("firstName", "Joe").param("lastName", "Bloggs")
+				.param("address", "123 Caramel Street").param("city", "London").param("telephone", "01316761638"))
+				.andExpect(status().is3xxRedirection());
+		then(this.ownerNames).should().update(argThat(owner -> "Bloggs".equals(owner.getLastName())));
+	}
+
+	@Test
+	void testFindOwnerNames() throws Exception {
+		given(this.ownerNames.find("fra", 10)).willReturn(
+				PrefixIndex.builder().add(TEST_OWNER_ID, "Franklin", "George Franklin").build().find("fra", 10));
+		mockMvc.perform(get("/owners/names").param("prefix", "fra")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].id").value(TEST_OWNER_ID))
+				.andExpect(jsonPath("$[0].label").value("George Franklin"));
+		then(this.owners).shouldHaveNoInteractions();
+	}
+
 	@Test
 	void testProcessCreationFormHasErrors() throws Exception {
 		mockMvc.perform(
@@ -118,13 +150,43 @@ class OwnerControllerTests {
 
 	@Test
 	void testProcessFindFormSuccess() throws Exception {
-		given(this.owners.findByLastName("")).willReturn(Lists.newArrayList(george, new Owner()));
-		mockMvc.perform(get("/owners")).andExpect(status().isOk()).andExpect(view().name("owners/ownersList"));
+		Owner betty = new Owner();
+		betty.setId(2);
+		betty.setLastName("Davis");
+		given(this.owners.findIdsByLastName(eq(""), eq(""), eq(0), any(Pageable.class)))
+				.willReturn(Lists.newArrayList(TEST_OWNER_ID, 2));
+		given(this.owners.findAllById(anyCollection())).willReturn(Lists.newArrayList(betty, george));
+		mockMvc.perform(get("/owners")).andExpect(status().isOk())
+				.andExpect(model().attribute("selections", contains(george, betty)))
+				.andExpect(model().attributeDoesNotExist("nextId")).andExpect(view().name("owners/ownersList"));
+	}
+
+	@Test
+	void testProcessFindFormNextPage() throws Exception {
+		given(this.owners.findIdsByLastName(eq(""), eq(""), eq(0), any(Pageable.class)))
+				.willReturn(Lists.newArrayList(TEST_OWNER_ID, 2));
+		given(this.owners.findAllById(Collections.singletonList(TEST_OWNER_ID)))
+				.willReturn(Lists.newArrayList(george));
+		mockMvc.perform(get("/owners").param("size", "1")).andExpect(status().isOk())
+				.andExpect(model().attribute("selections", contains(george)))
+				.andExpect(model().attribute("nextLastName", "Franklin"))
+				.andExpect(model().attribute("nextId", TEST_OWNER_ID)).andExpect(view().name("owners/ownersList"));
+	}
+
+	@Test
+	void testProcessFindFormLaterPage() throws Exception {
+		given(this.owners.findIdsByLastName(eq(""), eq("Davis"), eq(2), any(Pageable.class)))
+				.willReturn(Lists.newArrayList(TEST_OWNER_ID));
+		given(this.owners.findAllById(anyCollection())).willReturn(Lists.newArrayList(george));
+		mockMvc.perform(get("/owners").param("afterLastName", "Davis").param("afterId", "2"))
+				.andExpect(status().isOk()).andExpect(model().attribute("selections", contains(george)))
+				.andExpect(view().name("owners/ownersList"));
 	}
 
 	@Test
 	void testProcessFindFormByLastName() throws Exception {
-		given(this.owners.findByLastName(george.getLastName())).willReturn(Lists.newArrayList(george));
+		given(this.owners.findIdsByLastName(eq(george.getLastName()), eq(""), eq(0), any(Pageable.class)))
+				.willReturn(Lists.newArrayList(TEST_OWNER_ID));
 		mockMvc.perform(get("/owners").param("lastName", "Franklin")).andExpect(status().is3xxRedirection())
 				.andExpect(view().name("redirect:/owners/" + TEST_OWNER_ID));
 	}
@@ -155,6 +217,9 @@ class OwnerControllerTests {
 				.param("lastName", "Bloggs").param("address", "123 Caramel Street").param("city", "London")
 				.param("telephone", "01616291589")).andExpect(status().is3xxRedirection())
 				.andExpect(view().name("redirect:/owners/{ownerId}"));
+		then(this.owners).should().save(argThat(owner -> owner.getId() == TEST_OWNER_ID));
+		then(this.ownerNames).should()
+				.update(argThat(owner -> owner.getId() == TEST_OWNER_ID && "Bloggs".equals(owner.getLastName())));
 	}
 
 	@Test
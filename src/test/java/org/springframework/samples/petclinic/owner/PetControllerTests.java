@@ -16,9 +16,14 @@
 
 package org.springframework.samples.petclinic.owner;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
@@ -31,6 +36,8 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.samples.petclinic.utility.CacheScheduler;
 import org.springframework.samples.petclinic.utility.PetTimedCache;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -45,6 +52,7 @@ import org.springframework.test.web.servlet.MockMvc;
 	@ComponentScan.Filter(value = PetService.class, type = FilterType.ASSIGNABLE_TYPE),
 	@ComponentScan.Filter(value = LoggerConfig.class, type = FilterType.ASSIGNABLE_TYPE),
 	@ComponentScan.Filter(value = PetTimedCache.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = CacheScheduler.class, type = FilterType.ASSIGNABLE_TYPE),
 	}
 	)
 class PetControllerTests {
@@ -119,4 +127,23 @@ class PetControllerTests {
 				.andExpect(view().name("pets/createOrUpdatePetForm"));
 	}
 
+	@Test
+	void testProcessUpdateFormOfAStalePetShowsTheCurrentOne() throws Exception {
+		Pet current = new Pet();
+		current.setId(TEST_PET_ID);
+		current.setName("Leo");
+		current.setVersion(2);
+		given(this.pets.findById(TEST_PET_ID)).willReturn(current);
+		given(this.pets.save(any(Pet.class)))
+				.willThrow(new ObjectOptimisticLockingFailureException(Pet.class, TEST_PET_ID));
+		mockMvc.perform(post("/owners/{ownerId}/pets/{petId}/edit", TEST_OWNER_ID, TEST_PET_ID)
+				.param("id", String.valueOf(TEST_PET_ID)).param("version", "1").param("name", "Betty")
+				.param("type", "hamster").param("birthDate", "2015-02-12")).andExpect(status().isOk())
+				.andExpect(model().attributeHasErrors("pet"))
+				.andExpect(model().attribute("pet", hasProperty("name", is("Leo"))))
+				.andExpect(model().attribute("pet", hasProperty("version", is(2))))
+				.andExpect(content().string(containsString("Someone else has changed this meanwhile")))
+				.andExpect(view().name("pets/createOrUpdatePetForm"));
+	}
+
 }
@@ -20,13 +20,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.samples.petclinic.owner.*;
+import org.springframework.samples.petclinic.utility.CacheScheduler;
 import org.springframework.samples.petclinic.utility.PetTimedCache;
 import org.springframework.samples.petclinic.vet.Vet;
 import org.springframework.samples.petclinic.vet.VetRepository;
@@ -68,7 +71,9 @@ import org.springframework.transaction.annotation.Transactional;
 	@ComponentScan.Filter(Service.class),
 	@ComponentScan.Filter(value = PetTypeFormatter.class, type = FilterType.ASSIGNABLE_TYPE),
 	@ComponentScan.Filter(value = LoggerConfig.class, type = FilterType.ASSIGNABLE_TYPE),
-	@ComponentScan.Filter(value = PetTimedCache.class, type = FilterType.ASSIGNABLE_TYPE)
+	@ComponentScan.Filter(value = PetTimedCache.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = CacheScheduler.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = OwnerNameIndex.class, type = FilterType.ASSIGNABLE_TYPE)
 })
 class ClinicServiceTests {
 
@@ -93,6 +98,22 @@ class ClinicServiceTests {
 		assertThat(owners).isEmpty();
 	}
 
+	@Test
+	void shouldFindOwnerIdsByLastNameOnePageAtATime() {
+		List<Integer> firstPage = this.owners.findIdsByLastName("", "", 0, PageRequest.of(0, 3));
+		assertThat(firstPage).hasSize(3);
+		Owner last = this.owners.findById(firstPage.get(2));
+		List<Integer> secondPage = this.owners.findIdsByLastName("", last.getLastName(), last.getId(),
+				PageRequest.of(0, 3));
+		assertThat(secondPage).hasSize(3).doesNotContainAnyElementsOf(firstPage);
+		assertThat(this.owners.findById(secondPage.get(0)).getLastName().compareTo(last.getLastName()))
+				.isGreaterThanOrEqualTo(0);
+
+		List<Integer> davis = this.owners.findIdsByLastName("Davis", "", 0, PageRequest.of(0, 2));
+		assertThat(davis).hasSize(2);
+		assertThat(this.owners.findAllById(davis)).extracting(Owner::getLastName).containsOnly("Davis");
+	}
+
 	@Test
 	void shouldFindSingleOwnerWithPet() {
 		Owner owner = this.owners.findById(1);
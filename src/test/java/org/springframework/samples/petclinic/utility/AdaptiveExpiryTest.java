@@ -0,0 +1,61 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveExpiryTest {
+
+	private static final long START = Long.MAX_VALUE - TimeUnit.HOURS.toNanos(1);
+
+	private final AdaptiveExpiry<Integer, String> expiry = new AdaptiveExpiry<>(properties(), 100, START);
+
+	@Test
+	void timeToLiveGrowsWithTheAgeOfTheLastWrite() {
+		assertEquals(seconds(5), expiry.timeToLive(1, "a", START));
+		assertEquals(seconds(10), expiry.timeToLive(1, "a", START + seconds(100)));
+		assertEquals(seconds(60), expiry.timeToLive(1, "a", START + seconds(1_000)));
+	}
+
+	@Test
+	void writeResetsTheTimeToLiveToTheMinimum() {
+		long now = START + seconds(200);
+		expiry.recordWrite(1, now);
+		assertEquals(seconds(5), expiry.timeToLive(1, "a", now));
+		assertEquals(seconds(20), expiry.timeToLive(2, "b", now));
+		assertEquals(seconds(5), expiry.timeToLive(1, "a", now + seconds(50)));
+		assertEquals(seconds(10), expiry.timeToLive(1, "a", now + seconds(100)));
+	}
+
+	@Test
+	void olderWriteDoesNotReplaceANewerOne() {
+		// the ticker overflows between the two writes
+		long newer = START + TimeUnit.HOURS.toNanos(2);
+		expiry.recordWrite(1, newer);
+		expiry.recordWrite(1, START + seconds(10));
+		assertEquals(seconds(5), expiry.timeToLive(1, "a", newer + seconds(1)));
+	}
+
+	@Test
+	void boundsAreValidated() {
+		TimedCacheProperties.Adaptive properties = properties();
+		properties.setMinimum(Duration.ofMinutes(2));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveExpiry<>(properties, 100, 0));
+	}
+
+	private static TimedCacheProperties.Adaptive properties() {
+		TimedCacheProperties.Adaptive properties = new TimedCacheProperties.Adaptive();
+		properties.setEnabled(true);
+		properties.setMinimum(Duration.ofSeconds(5));
+		properties.setMaximum(Duration.ofMinutes(1));
+		return properties;
+	}
+
+	private static long seconds(long seconds) {
+		return TimeUnit.SECONDS.toNanos(seconds);
+	}
+
+}
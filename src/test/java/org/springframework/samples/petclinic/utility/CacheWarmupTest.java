@@ -0,0 +1,139 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheWarmupTest {
+
+	private final CacheScheduler scheduler = new CacheScheduler(1, 10);
+
+	private final Set<Integer> loads = ConcurrentHashMap.newKeySet();
+
+	@TempDir
+	Path directory;
+
+	@AfterEach
+	void stop() {
+		scheduler.stop();
+	}
+
+	@Test
+	void hotSetIsSavedAtShutdownAndLoadedOnStartup() throws Exception {
+		TimedCache<Integer, String> cache = cache();
+		CacheWarmup warmup = new CacheWarmup(properties(), scheduler).cache(cache, Integer::valueOf);
+		start(warmup);
+		for (int id = 1; id <= 10; id++) {
+			for (int i = 0; i < id; i++) {
+				cache.get(id);
+			}
+		}
+		warmup.stop();
+		assertEquals(Arrays.asList("10", "9", "8"),
+				Files.readAllLines(directory.resolve("pets.hot"), StandardCharsets.UTF_8));
+
+		loads.clear();
+		TimedCache<Integer, String> restarted = cache();
+		CacheWarmup next = new CacheWarmup(properties(), scheduler).cache(restarted, Integer::valueOf);
+		next.warmUp();
+		assertEquals(CacheWarmup.State.WARM, next.getState());
+		assertEquals(3, next.getTotal());
+		assertEquals(3, next.getLoaded());
+		assertEquals(3, restarted.size());
+		assertEquals(3, loads.size());
+	}
+
+	@Test
+	void preloadsRunAndFailuresAreCounted() throws Exception {
+		Files.write(directory.resolve("pets.hot"), Arrays.asList("1", "2", "bogus", "-1"), StandardCharsets.UTF_8);
+		AtomicInteger preloads = new AtomicInteger();
+		CacheWarmup warmup = new CacheWarmup(properties(), scheduler).cache(cache(), Integer::valueOf)
+				.preload("vets", preloads::incrementAndGet).preload("broken", () -> {
+					throw new IllegalStateException("database down");
+				});
+		warmup.warmUp();
+		assertEquals(1, preloads.get());
+		assertEquals(5, warmup.getTotal());
+		assertEquals(3, warmup.getLoaded());
+		assertEquals(2, warmup.getFailed());
+	}
+
+	@Test
+	void hotSetIsNotSavedWhileWarmingUp() throws Exception {
+		Files.write(directory.resolve("pets.hot"), Arrays.asList("1", "2"), StandardCharsets.UTF_8);
+		CacheWarmup warmup = new CacheWarmup(properties(), scheduler).cache(cache(), Integer::valueOf);
+		scheduler.start();
+		warmup.start();
+		warmup.stop();
+		assertEquals(Arrays.asList("1", "2"), Files.readAllLines(directory.resolve("pets.hot")));
+	}
+
+	@Test
+	void warmUpGivesUpAfterTheTimeout() throws Exception {
+		Files.write(directory.resolve("pets.hot"), Arrays.asList("1", "2"), StandardCharsets.UTF_8);
+		TimedCachesProperties.Warmup properties = properties();
+		properties.setTimeout(Duration.ofMillis(50));
+		CountDownLatch release = new CountDownLatch(1);
+		TimedCache<Integer, String> cache = TimedCache.<Integer, String>builder("pets", new TimedCacheProperties())
+				.loader(id -> {
+					try {
+						release.await();
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					return "pet " + id;
+				}).build();
+		CacheWarmup warmup = new CacheWarmup(properties, scheduler).cache(cache, Integer::valueOf);
+		warmup.warmUp();
+		release.countDown();
+		assertEquals(CacheWarmup.State.TIMED_OUT, warmup.getState());
+	}
+
+	@Test
+	void warmUpIsDisabledWithoutADirectory() throws Exception {
+		CacheWarmup warmup = new CacheWarmup(new TimedCachesProperties.Warmup(), scheduler).cache(cache(),
+				Integer::valueOf);
+		warmup.start();
+		warmup.warmUp();
+		assertEquals(CacheWarmup.State.DISABLED, warmup.getState());
+		assertFalse(warmup.isRunning());
+	}
+
+	private TimedCache<Integer, String> cache() {
+		return TimedCache.<Integer, String>builder("pets", new TimedCacheProperties()).loader(id -> {
+			if (id < 0) {
+				throw new IllegalArgumentException("unknown pet " + id);
+			}
+			loads.add(id);
+			return "pet " + id;
+		}).build();
+	}
+
+	private TimedCachesProperties.Warmup properties() {
+		TimedCachesProperties.Warmup properties = new TimedCachesProperties.Warmup();
+		properties.setDirectory(directory);
+		properties.setHotSetSize(3);
+		properties.setBatchSize(2);
+		return properties;
+	}
+
+	private void start(CacheWarmup warmup) throws InterruptedException {
+		scheduler.start();
+		warmup.start();
+		warmup.warmUp();
+	}
+
+}
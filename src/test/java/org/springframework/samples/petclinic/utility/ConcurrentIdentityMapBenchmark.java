@@ -0,0 +1,88 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read throughput of a {@link ConcurrentIdentityMap} of reference entities
+ * as the number of reading threads grows, against an {@link IdentityMap} shared behind a
+ * lock. The total throughput of {@code get} should grow with the threads up to the
+ * number of cores, while {@code lockedGet} stays flat or drops. {@code iterate} walks the
+ * shared snapshot, as rendering a list of the entities does.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.ConcurrentIdentityMapBenchmark},
+ * which runs every benchmark with 1 to 32 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConcurrentIdentityMapBenchmark {
+
+	private static final int SIZE = 1_000;
+
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32 };
+
+	private final ConcurrentIdentityMap<BaseEntity> concurrent = new ConcurrentIdentityMap<>();
+
+	private final IdentityMap<BaseEntity> locked = new IdentityMap<>();
+
+	@Setup
+	public void setup() {
+		for (int id = 0; id < SIZE; id++) {
+			BaseEntity entity = new BaseEntity();
+			entity.setId(id);
+			concurrent.add(entity);
+			locked.add(entity);
+		}
+	}
+
+	@Benchmark
+	public BaseEntity get() {
+		return concurrent.get(ThreadLocalRandom.current().nextInt(SIZE));
+	}
+
+	@Benchmark
+	public BaseEntity lockedGet() {
+		Integer id = ThreadLocalRandom.current().nextInt(SIZE);
+		synchronized (locked) {
+			return locked.get(id);
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int iterate() {
+		int sum = 0;
+		for (BaseEntity entity : concurrent) {
+			sum += entity.getId();
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREADS) {
+			new Runner(new OptionsBuilder().include(ConcurrentIdentityMapBenchmark.class.getSimpleName())
+					.threads(threads).build()).run();
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentIdentityMapTest {
+
+	private final ConcurrentIdentityMap<BaseEntity> map = new ConcurrentIdentityMap<>();
+
+	@Test
+	void addingAnEntityWithAKnownIdReplacesIt() {
+		BaseEntity second = entity(1);
+		map.add(entity(1));
+		map.add(entity(2));
+		map.add(second);
+
+		assertEquals(2, map.size());
+		assertSame(second, map.get(1));
+		assertTrue(map.contains(entity(2)));
+		assertFalse(map.contains(new BaseEntity()));
+		assertThrows(IllegalArgumentException.class, () -> map.add(new BaseEntity()));
+	}
+
+	@Test
+	void iteratorWalksASnapshot() {
+		map.addAll(Arrays.asList(entity(1), entity(2), entity(3)));
+		Iterator<BaseEntity> iterator = map.iterator();
+		map.remove(entity(2));
+		map.add(entity(4));
+
+		Set<Integer> ids = new HashSet<>();
+		iterator.forEachRemaining(entity -> ids.add(entity.getId()));
+		assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), ids);
+		assertEquals(3, map.toArray().length);
+		assertEquals(3, map.toArray(new BaseEntity[0]).length);
+
+		Iterator<BaseEntity> readOnly = map.iterator();
+		readOnly.next();
+		assertThrows(UnsupportedOperationException.class, readOnly::remove);
+	}
+
+	@Test
+	void bulkRemovals() {
+		map.addAll(Arrays.asList(entity(1), entity(2), entity(3), entity(4)));
+		assertTrue(map.removeAll(Arrays.asList(entity(1), entity(9))));
+		ConcurrentIdentityMap<BaseEntity> retained = new ConcurrentIdentityMap<>();
+		retained.addAll(Arrays.asList(entity(2), entity(3)));
+		assertTrue(map.retainAll(retained));
+		assertEquals(2, map.size());
+		assertNull(map.get(4));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.iterator().hasNext());
+	}
+
+	@Test
+	void readersSeeEveryEntityWhileOthersAreReplaced() throws Exception {
+		for (int id = 0; id < 100; id++) {
+			map.add(entity(id));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?> writer = executor.submit(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					map.add(entity(i % 100));
+				}
+			});
+			Future<?> reader = executor.submit(() -> {
+				while (!writer.isDone()) {
+					for (int id = 0; id < 100; id++) {
+						assertNotNull(map.get(id));
+					}
+					int count = 0;
+					for (BaseEntity entity : map) {
+						count++;
+					}
+					assertEquals(100, count);
+				}
+			});
+			writer.get(10, TimeUnit.SECONDS);
+			reader.get(10, TimeUnit.SECONDS);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static BaseEntity entity(int id) {
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdFilterTest {
+
+	@Test
+	void existingIdsAreNeverRejected() {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 10_000; id += 3) {
+			ids.add(id);
+		}
+		IdFilter filter = IdFilter.of(ids, 0.01);
+		for (int id : ids) {
+			assertTrue(filter.mightExist(id));
+		}
+	}
+
+	@Test
+	void mostMissingIdsAreRejected() {
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 10_000; id += 2) {
+			ids.add(id);
+		}
+		IdFilter filter = IdFilter.of(ids, 0.01);
+		int accepted = 0;
+		for (int id = 2; id <= 10_000; id += 2) {
+			if (filter.mightExist(id)) {
+				accepted++;
+			}
+		}
+		assertTrue(accepted < 100, "false positives: " + accepted);
+		assertFalse(filter.mightExist(0));
+		assertFalse(filter.mightExist(-5));
+	}
+
+	@Test
+	void idsAboveTheHighestAreAccepted() {
+		IdFilter filter = IdFilter.of(Collections.emptyList(), 0.01);
+		assertTrue(filter.mightExist(1));
+
+		filter = IdFilter.of(Collections.singletonList(10), 0.01);
+		assertTrue(filter.mightExist(11));
+		assertTrue(filter.mightExist(1_000));
+	}
+
+	@Test
+	void addedIdsAreAcceptedAndAdvanceTheHighestOnlyWithoutAGap() {
+		IdFilter filter = IdFilter.of(Collections.singletonList(10), 0.01);
+		filter.add(11);
+		filter.add(13);
+		assertTrue(filter.mightExist(11));
+		assertTrue(filter.mightExist(12));
+		assertTrue(filter.mightExist(13));
+
+		filter.add(12);
+		filter.add(14);
+		assertTrue(filter.mightExist(14));
+		assertTrue(filter.mightExist(15));
+	}
+
+	@Test
+	void acceptingAllAcceptsEveryId() {
+		IdFilter filter = IdFilter.acceptingAll();
+		assertTrue(filter.mightExist(-1));
+		assertTrue(filter.mightExist(0));
+		assertTrue(filter.mightExist(Integer.MAX_VALUE));
+	}
+
+}
@@ -0,0 +1,54 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdIndexTest {
+
+	@Test
+	void mappingsAreAddedReplacedAndRemoved() {
+		IdIndex index = new IdIndex();
+		assertEquals(IdIndex.ABSENT, index.put(7, 0));
+		assertEquals(0, index.putIfAbsent(7, 1));
+		assertEquals(0, index.put(7, 2));
+		assertEquals(2, index.get(7));
+		assertEquals(IdIndex.ABSENT, index.get(8));
+		assertEquals(2, index.remove(7));
+		assertEquals(IdIndex.ABSENT, index.remove(7));
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void matchesAHashMapUnderRandomOperations() {
+		IdIndex index = new IdIndex();
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200_000; i++) {
+			// a narrow id range makes long clusters and frequent shifts on removal
+			int id = random.nextInt(5_000) * ((i % 2 == 0) ? 1 : 1024);
+			int operation = random.nextInt(3);
+			if (operation == 0) {
+				Integer previous = expected.put(id, i);
+				assertEquals((previous != null) ? previous : IdIndex.ABSENT, index.put(id, i));
+			}
+			else if (operation == 1) {
+				Integer previous = expected.remove(id);
+				assertEquals((previous != null) ? previous : IdIndex.ABSENT, index.remove(id));
+			}
+			else {
+				Integer current = expected.get(id);
+				assertEquals((current != null) ? current : IdIndex.ABSENT, index.get(id));
+			}
+		}
+		assertEquals(expected.size(), index.size());
+		expected.forEach((id, slot) -> assertEquals((int) slot, index.get(id)));
+		index.clear();
+		assertEquals(IdIndex.ABSENT, index.get(expected.keySet().iterator().next()));
+	}
+
+}
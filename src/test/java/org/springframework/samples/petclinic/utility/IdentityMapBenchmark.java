@@ -0,0 +1,169 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures bulk inserts into an {@link IdentityMap}: {@code size} new entities, then
+ * {@code size} entities replacing existing ones, which should cost about the same.
+ * {@code legacyReplaceSample} replaces a sample of entities the way the former
+ * implementation did, by scanning the entity list for the previous entity with the same
+ * id: unlike {@code replaceSample}, its cost grows with {@code size}, which made a bulk
+ * replace quadratic.
+ * <p>
+ * {@code sortAfterEachReplace} keeps a sorted order by re-sorting after each replaced
+ * entity of the sample, against {@code sortedViewReplace} whose sorted view is updated
+ * in logarithmic time.
+ * <p>
+ * {@code get} looks up random ids through the {@link IdIndex} of the map, against
+ * {@code boxedGet} through a {@code HashMap} from boxed id to boxed slot, as the map
+ * kept before; see {@link IdentityMapFootprint} for the memory side.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.IdentityMapBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IdentityMapBenchmark {
+
+	private static final int SAMPLE = 100;
+
+	private static final Comparator<BaseEntity> BY_ID_DESCENDING = Comparator.comparing(BaseEntity::getId,
+			Comparator.reverseOrder());
+
+	@Param({ "1000", "100000", "1000000" })
+	int size;
+
+	private List<BaseEntity> entities;
+
+	private List<BaseEntity> sample;
+
+	private IdentityMap<BaseEntity> filled;
+
+	private ArrayList<BaseEntity> legacyList;
+
+	private IdentityMap<BaseEntity> viewed;
+
+	private Map<Integer, Integer> boxedSlots;
+
+	@Setup(Level.Trial)
+	public void createEntities() {
+		entities = new ArrayList<>(size);
+		for (int id = 0; id < size; id++) {
+			entities.add(entity(id));
+		}
+		sample = new ArrayList<>(SAMPLE);
+		for (int i = 0; i < SAMPLE; i++) {
+			sample.add(entity((int) ((long) i * size / SAMPLE)));
+		}
+		boxedSlots = new HashMap<>();
+		for (int slot = 0; slot < size; slot++) {
+			boxedSlots.put(entities.get(slot).getId(), slot);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void fill() {
+		filled = new IdentityMap<>();
+		filled.addAll(entities);
+		legacyList = new ArrayList<>(entities);
+		viewed = new IdentityMap<>();
+		viewed.addAll(entities);
+		viewed.sortedView(BaseEntity::getId, Comparator.reverseOrder());
+	}
+
+	@Benchmark
+	public IdentityMap<BaseEntity> insert() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		map.addAll(entities);
+		return map;
+	}
+
+	@Benchmark
+	public IdentityMap<BaseEntity> replace() {
+		filled.addAll(entities);
+		return filled;
+	}
+
+	@Benchmark
+	public IdentityMap<BaseEntity> replaceSample() {
+		filled.addAll(sample);
+		return filled;
+	}
+
+	@Benchmark
+	public List<BaseEntity> legacyReplaceSample() {
+		for (BaseEntity entity : sample) {
+			legacyList.removeIf(entity::sameId);
+			legacyList.add(entity);
+		}
+		return legacyList;
+	}
+
+	@Benchmark
+	public IdentityMap<BaseEntity> sortAfterEachReplace() {
+		for (BaseEntity entity : sample) {
+			filled.add(entity);
+			filled.sort(BY_ID_DESCENDING);
+		}
+		return filled;
+	}
+
+	@Benchmark
+	public IdentityMap<BaseEntity> sortedViewReplace() {
+		viewed.addAll(sample);
+		return viewed;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public BaseEntity get() {
+		return filled.get(ThreadLocalRandom.current().nextInt(size));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public BaseEntity boxedGet() {
+		Integer slot = boxedSlots.get(ThreadLocalRandom.current().nextInt(size));
+		return (slot != null) ? entities.get(slot) : null;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IdentityMapBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static BaseEntity entity(int id) {
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	}
+
+}
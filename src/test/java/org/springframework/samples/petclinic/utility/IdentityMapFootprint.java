@@ -0,0 +1,60 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reports the heap used per entity by an {@link IdentityMap}, excluding the entities
+ * themselves, next to the {@code HashSet} of boxed ids the map first kept beside its
+ * list, and the {@code HashMap} from boxed id to boxed slot that replaced it. Run with
+ * {@code -Djdk.attach.allowAttachSelf} on JDK 9 and later.
+ */
+public class IdentityMapFootprint {
+
+	public static void main(String[] args) {
+		int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+		BaseEntity[] entities = new BaseEntity[entries];
+		for (int i = 0; i < entries; i++) {
+			entities[i] = new BaseEntity();
+			entities[i].setId(i + 1);
+		}
+		long entitiesSize = GraphLayout.parseInstance((Object[]) entities).totalSize();
+
+		List<BaseEntity> list = new ArrayList<>();
+		Set<Integer> ids = new HashSet<>();
+		for (BaseEntity entity : entities) {
+			list.add(entity);
+			ids.add(entity.getId());
+		}
+		long idSet = GraphLayout.parseInstance(list, ids).totalSize() - entitiesSize;
+
+		List<BaseEntity> slotList = new ArrayList<>();
+		Map<Integer, Integer> slots = new HashMap<>();
+		for (BaseEntity entity : entities) {
+			slots.put(entity.getId(), slotList.size());
+			slotList.add(entity);
+		}
+		long slotMap = GraphLayout.parseInstance(slotList, slots).totalSize() - entitiesSize;
+
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		for (BaseEntity entity : entities) {
+			map.add(entity);
+		}
+		long identityMap = GraphLayout.parseInstance(map).totalSize() - entitiesSize;
+
+		System.out.println(VM.current().details());
+		System.out.printf("%,d entries%n", entries);
+		System.out.printf("list and HashSet of ids  : %6.1f bytes per entry%n", (double) idSet / entries);
+		System.out.printf("list and HashMap of slots: %6.1f bytes per entry%n", (double) slotMap / entries);
+		System.out.printf("list and IdIndex         : %6.1f bytes per entry%n", (double) identityMap / entries);
+	}
+
+}
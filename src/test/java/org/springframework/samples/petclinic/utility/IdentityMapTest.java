@@ -0,0 +1,213 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.model.BaseEntity;
+import org.springframework.samples.petclinic.model.NamedEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentityMapTest {
+
+	private final IdentityMap<BaseEntity> map = new IdentityMap<>();
+
+	@Test
+	void addingAnEntityWithAKnownIdReplacesIt() {
+		BaseEntity first = entity(1);
+		BaseEntity second = entity(1);
+		map.add(first);
+		map.add(entity(2));
+		map.add(second);
+
+		assertEquals(2, map.size());
+		assertSame(second, map.get(1));
+		assertTrue(map.contains(entity(1)));
+		assertFalse(map.contains(entity(3)));
+		assertFalse(map.contains("1"));
+	}
+
+	@Test
+	void oneEntityWithoutAnIdIsHeld() {
+		BaseEntity unsaved = new BaseEntity();
+		map.add(entity(1));
+		map.add(unsaved);
+		assertSame(unsaved, map.get(null));
+		assertTrue(map.contains(new BaseEntity()));
+		assertTrue(map.remove(new BaseEntity()));
+		assertNull(map.get(null));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	void removeKeepsTheOtherEntitiesReachable() {
+		for (int id = 1; id <= 5; id++) {
+			map.add(entity(id));
+		}
+		assertTrue(map.remove(entity(2)));
+		assertFalse(map.remove(entity(2)));
+
+		assertEquals(4, map.size());
+		assertNull(map.get(2));
+		for (int id : new int[] { 1, 3, 4, 5 }) {
+			assertEquals(id, map.get(id).getId());
+		}
+		assertEquals(ids(1, 3, 4, 5), idsOf(map.toArray()));
+	}
+
+	@Test
+	void iteratorVisitsEveryEntityOnceAndRemoves() {
+		for (int id = 1; id <= 5; id++) {
+			map.add(entity(id));
+		}
+		Set<Integer> visited = new HashSet<>();
+		for (Iterator<BaseEntity> iterator = map.iterator(); iterator.hasNext();) {
+			BaseEntity entity = iterator.next();
+			assertTrue(visited.add(entity.getId()));
+			if (entity.getId() % 2 == 1) {
+				iterator.remove();
+			}
+		}
+		assertEquals(ids(1, 2, 3, 4, 5), visited);
+		assertEquals(ids(2, 4), idsOf(map.toArray(new BaseEntity[0])));
+		assertFalse(map.contains(entity(5)));
+	}
+
+	@Test
+	void iteratorFailsFastOnAddsAndRemoves() {
+		map.add(entity(1));
+		map.add(entity(2));
+		Iterator<BaseEntity> added = map.iterator();
+		added.next();
+		map.add(entity(3));
+		assertThrows(ConcurrentModificationException.class, added::next);
+
+		Iterator<BaseEntity> replaced = map.iterator();
+		replaced.next();
+		map.add(entity(3));
+		replaced.next();
+
+		Iterator<BaseEntity> removed = map.iterator();
+		removed.next();
+		map.remove(entity(1));
+		assertThrows(ConcurrentModificationException.class, removed::next);
+	}
+
+	@Test
+	void retainAllRemovesTheOtherEntities() {
+		for (int id = 1; id <= 6; id++) {
+			map.add(entity(id));
+		}
+		// entities have no equals, so only another identity map matches them by id
+		IdentityMap<BaseEntity> retained = new IdentityMap<>();
+		retained.addAll(Arrays.asList(entity(2), entity(5), entity(9)));
+		assertTrue(map.retainAll(retained));
+		assertFalse(map.retainAll(retained));
+		assertEquals(ids(2, 5), idsOf(map.toArray()));
+		assertEquals(5, map.get(5).getId());
+	}
+
+	@Test
+	void sortKeepsTheIndexConsistent() {
+		for (int id = 1; id <= 4; id++) {
+			map.add(entity(id));
+		}
+		map.sort((a, b) -> b.getId() - a.getId());
+		assertEquals(4, map.iterator().next().getId());
+		map.remove(entity(4));
+		assertEquals(3, map.size());
+		assertEquals(ids(1, 2, 3), idsOf(map.toArray()));
+		assertEquals(2, map.get(2).getId());
+	}
+
+	@Test
+	void sortedViewFollowsAddsReplacesAndRemoves() {
+		IdentityMap<NamedEntity> names = new IdentityMap<>();
+		names.add(named(1, "Davis"));
+		names.add(named(2, "Black"));
+		IdentityMap<NamedEntity>.SortedView<String> view = names.sortedView(NamedEntity::getName,
+				Comparator.naturalOrder());
+		names.add(named(3, "Coleman"));
+		names.add(named(4, "Davis"));
+		names.add(named(2, "Franklin"));
+		names.remove(named(1, null));
+
+		assertEquals(Arrays.asList("Coleman", "Davis", "Franklin"), namesOf(view));
+		assertEquals(3, view.size());
+		names.clear();
+		assertEquals(0, view.size());
+	}
+
+	@Test
+	void sortedViewIteratesRangesAndPrefixes() {
+		IdentityMap<NamedEntity> names = new IdentityMap<>();
+		IdentityMap<NamedEntity>.SortedView<String> view = names.sortedView(NamedEntity::getName,
+				Comparator.naturalOrder());
+		String[] lastNames = { "Estaban", "Escobito", "Davis", "Black", "Esposito", "McTavish", "Davis" };
+		for (int i = 0; i < lastNames.length; i++) {
+			names.add(named(i + 1, lastNames[i]));
+		}
+
+		assertEquals(Arrays.asList("Escobito", "Esposito", "Estaban"), namesOf(view.prefix("Es")));
+		assertEquals(Arrays.asList("Davis", "Davis", "Escobito"), namesOf(view.range("Davis", "Esposito")));
+		assertEquals(Arrays.asList("Black"), namesOf(view.range(null, "Davis")));
+		assertEquals(Arrays.asList("McTavish"), namesOf(view.range("F", null)));
+		assertEquals(Collections.emptyList(), namesOf(view.range("F", "A")));
+		// equal keys are ordered by id
+		Iterator<NamedEntity> davis = view.prefix("Davis").iterator();
+		assertEquals(3, davis.next().getId());
+		assertEquals(7, davis.next().getId());
+	}
+
+	@Test
+	void sortedViewIteratorsFailFast() {
+		IdentityMap<NamedEntity> names = new IdentityMap<>();
+		names.add(named(1, "Davis"));
+		names.add(named(2, "Black"));
+		Iterator<NamedEntity> iterator = names.sortedView(NamedEntity::getName, Comparator.naturalOrder())
+				.iterator();
+		iterator.next();
+		names.add(named(3, "Coleman"));
+		assertThrows(ConcurrentModificationException.class, iterator::next);
+	}
+
+	private static BaseEntity entity(int id) {
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	}
+
+	private static NamedEntity named(int id, String name) {
+		NamedEntity entity = new NamedEntity();
+		entity.setId(id);
+		entity.setName(name);
+		return entity;
+	}
+
+	private static List<String> namesOf(Iterable<NamedEntity> entities) {
+		List<String> names = new ArrayList<>();
+		entities.forEach(entity -> names.add(entity.getName()));
+		return names;
+	}
+
+	private static Set<Integer> ids(Integer... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+
+	private static Set<Integer> idsOf(Object[] entities) {
+		Set<Integer> ids = new HashSet<>();
+		for (Object entity : entities) {
+			ids.add(((BaseEntity) entity).getId());
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.samples.petclinic.PetClinicApplication;
+import org.springframework.samples.petclinic.owner.Pet;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs two nodes of the application against one H2 server database.
+ */
+class InvalidationLogIntegrationTests {
+
+	private static final long POLL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private static Server database;
+
+	private ConfigurableApplicationContext first;
+
+	private ConfigurableApplicationContext second;
+
+	@BeforeAll
+	static void startDatabase() throws IOException, SQLException {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		database = Server.createTcpServer("-tcpPort", String.valueOf(port), "-ifNotExists").start();
+	}
+
+	@AfterAll
+	static void stopDatabase() {
+		database.stop();
+	}
+
+	@BeforeEach
+	void startNodes() {
+		String url = "jdbc:h2:tcp://localhost:" + database.getPort() + "/mem:invalidation;DB_CLOSE_DELAY=-1";
+		first = node(url, "always");
+		second = node(url, "never");
+	}
+
+	@AfterEach
+	void stopNodes() {
+		second.close();
+		first.close();
+	}
+
+	@Test
+	void saveOnOneNodeEvictsThePetCachedOnTheOther() throws InterruptedException {
+		PetTimedCache firstPets = first.getBean(PetTimedCache.class);
+		PetTimedCache secondPets = second.getBean(PetTimedCache.class);
+		assertEquals("Leo", secondPets.get(1).getName());
+
+		Pet pet = firstPets.get(1);
+		pet.setName("Leonardo");
+		firstPets.save(pet);
+		Pet saved = firstPets.get(1);
+
+		long deadline = System.nanoTime() + POLL_TIMEOUT_NANOS;
+		while ("Leo".equals(secondPets.get(1).getName()) && (System.nanoTime() - deadline < 0)) {
+			Thread.sleep(20);
+		}
+		assertEquals("Leonardo", secondPets.get(1).getName());
+		assertEquals(saved.getVersion(), secondPets.get(1).getVersion());
+		assertSame(saved, firstPets.get(1));
+	}
+
+	@Test
+	void newerCopiesAreKept() throws InterruptedException {
+		PetTimedCache firstPets = first.getBean(PetTimedCache.class);
+		PetTimedCache secondPets = second.getBean(PetTimedCache.class);
+		InvalidationLog secondLog = second.getBean(InvalidationLog.class);
+
+		Pet pet = firstPets.get(2);
+		pet.setName("Basilio");
+		firstPets.save(pet);
+		Pet loaded = secondPets.get(2);
+		assertEquals("Basilio", loaded.getName());
+
+		secondLog.poll();
+		assertSame(loaded, secondPets.get(2));
+	}
+
+	private static ConfigurableApplicationContext node(String url, String initializationMode) {
+		return new SpringApplicationBuilder(PetClinicApplication.class).web(WebApplicationType.NONE).run(
+				"--spring.datasource.url=" + url, "--spring.datasource.initialization-mode=" + initializationMode,
+				"--petclinic.cache.invalidation.enabled=true", "--petclinic.cache.invalidation.poll-interval=50ms");
+	}
+
+}
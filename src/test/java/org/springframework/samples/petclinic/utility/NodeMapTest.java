@@ -0,0 +1,122 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeMapTest {
+
+	private final NodeMap<Integer, Node> map = new NodeMap<>();
+
+	@Test
+	void putReplacesTheNodeOfTheSameKey() {
+		Node first = new Node(1);
+		Node second = new Node(1);
+		assertNull(map.put(first));
+		assertSame(first, map.put(second));
+		assertSame(second, map.get(1));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	void removeOnlyRemovesTheGivenNode() {
+		Node node = new Node(1);
+		map.put(node);
+		assertFalse(map.remove(1, new Node(1)));
+		assertTrue(map.remove(1, node));
+		assertNull(map.get(1));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	void keysSurviveGrowthAndTombstones() {
+		for (int key = -5_000; key < 5_000; key++) {
+			map.put(new Node(key));
+		}
+		for (int key = -5_000; key < 5_000; key += 2) {
+			assertTrue(map.remove(key, map.get(key)));
+		}
+		for (int key = 5_000; key < 10_000; key++) {
+			map.put(new Node(key));
+		}
+		for (int key = -5_000; key < 10_000; key++) {
+			boolean removed = (key < 5_000) && ((key & 1) == 0);
+			assertEquals(removed, map.get(key) == null, "key " + key);
+		}
+		assertEquals(10_000, map.size());
+
+		Set<Integer> visited = new HashSet<>();
+		map.forEach(node -> assertTrue(visited.add(node.getKey())));
+		assertEquals(10_000, visited.size());
+	}
+
+	@Test
+	void integerKeysAreFoundByTheirPrimitiveValue() {
+		Node node = new Node(1_000);
+		map.put(node);
+		assertSame(node, map.get(Integer.valueOf(1_000)));
+		assertSame(node, map.get(1_000));
+		assertTrue(map.remove(Integer.valueOf(1_000), node));
+		assertNull(map.get(1_000));
+	}
+
+	@Test
+	void entriesKeepIntegerKeysAsInts() {
+		NodeMap<Integer, TimedCache.Entry<Integer, String>> entries = new NodeMap<>();
+		TimedCache.Entry<Integer, String> entry = TimedCache.Entry.of(1_000, "leo", 1, 0L);
+		assertTrue(entry instanceof TimedCache.IntKeyEntry);
+		entries.put(entry);
+		assertSame(entry, entries.get(Integer.valueOf(1_000)));
+		assertSame(entry, entries.get(1_000));
+		assertSame(entry, entries.put(TimedCache.Entry.of(1_000, "basil", 1, 0L)));
+		assertFalse(entries.remove(entry));
+		assertEquals(1, entries.size());
+		assertTrue(entries.remove(entries.get(1_000)));
+		assertNull(entries.get(1_000));
+	}
+
+	@Test
+	void keysAreComparedByEquality() {
+		NodeMap<String, Named> names = new NodeMap<>();
+		Named node = new Named(new String("george"));
+		names.put(node);
+		assertSame(node, names.get("george"));
+		assertSame(node, names.put(new Named("george")));
+		assertEquals(1, names.size());
+		assertNull(names.get(0));
+	}
+
+	private static final class Node implements NodeMap.Keyed<Integer> {
+
+		private final Integer key;
+
+		Node(int key) {
+			this.key = key;
+		}
+
+		@Override
+		public Integer getKey() {
+			return key;
+		}
+
+	}
+
+	private static final class Named implements NodeMap.Keyed<String> {
+
+		private final String key;
+
+		Named(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+	}
+
+}
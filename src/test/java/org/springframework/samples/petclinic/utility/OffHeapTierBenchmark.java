@@ -0,0 +1,95 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetType;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures moving a pet between the heap and the {@link OffHeapTier}: {@code promote}
+ * takes a snapshot out of the tier and decodes it, which is what a miss pays instead of
+ * a database query; {@code demote} encodes and stores it.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.OffHeapTierBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OffHeapTierBenchmark {
+
+	private static final int PETS = 1 << 14;
+
+	private static final long NEVER = Long.MAX_VALUE;
+
+	private OffHeapTier tier;
+
+	private Pet[] pets;
+
+	private int next;
+
+	@Setup
+	public void setup() {
+		tier = OffHeapTier.allocate(2L * PETS * 512, 512);
+		pets = new Pet[PETS];
+		PetType type = new PetType();
+		type.setId(1);
+		type.setName("cat");
+		for (int id = 0; id < PETS; id++) {
+			Owner owner = new Owner();
+			owner.setId(id);
+			owner.setFirstName("George");
+			owner.setLastName("Franklin");
+			owner.setAddress("110 W. Liberty St.");
+			owner.setCity("Madison");
+			owner.setTelephone("6085551023");
+			Pet pet = new Pet();
+			pet.setId(id);
+			pet.setName("Leo");
+			pet.setBirthDate(LocalDate.of(2010, 9, 7));
+			pet.setType(type);
+			owner.addPet(pet);
+			pets[id] = pet;
+			tier.put(id, 0, NEVER, PetSnapshots.encode(pet));
+		}
+	}
+
+	@Benchmark
+	public Pet promote() {
+		int id = next;
+		next = (next + 1) & (PETS - 1);
+		OffHeapTier.Snapshot snapshot = tier.take(id, 0);
+		tier.put(id, snapshot.version, snapshot.expiresAtMillis, snapshot.payload);
+		return PetSnapshots.decode(snapshot.payload);
+	}
+
+	@Benchmark
+	public boolean demote() {
+		int id = next;
+		next = (next + 1) & (PETS - 1);
+		return tier.put(id, 0, NEVER, PetSnapshots.encode(pets[id]));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(OffHeapTierBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
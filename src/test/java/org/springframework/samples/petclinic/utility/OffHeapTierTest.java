@@ -0,0 +1,81 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapTierTest {
+
+	private static final int SLOT_SIZE = 64;
+
+	@Test
+	void takeRemovesTheSnapshot() {
+		OffHeapTier tier = OffHeapTier.allocate(10 * SLOT_SIZE, SLOT_SIZE);
+		tier.put(1, 3, 1_000, new byte[] { 1, 2, 3 });
+
+		OffHeapTier.Snapshot snapshot = tier.take(1, 0);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, snapshot.payload);
+		assertEquals(3, snapshot.version);
+		assertEquals(1_000, snapshot.expiresAtMillis);
+		assertNull(tier.take(1, 0));
+	}
+
+	@Test
+	void expiredSnapshotIsNotReturned() {
+		OffHeapTier tier = OffHeapTier.allocate(10 * SLOT_SIZE, SLOT_SIZE);
+		tier.put(1, 0, 1_000, new byte[] { 1 });
+		assertNull(tier.take(1, 1_000));
+		assertEquals(0, tier.size());
+	}
+
+	@Test
+	void snapshotLargerThanASlotIsRejected() {
+		OffHeapTier tier = OffHeapTier.allocate(10 * SLOT_SIZE, SLOT_SIZE);
+		assertFalse(tier.put(1, 0, 1_000, new byte[SLOT_SIZE - OffHeapTier.HEADER_SIZE + 1]));
+	}
+
+	@Test
+	void fullTierReusesTheOldestSlots() {
+		OffHeapTier tier = OffHeapTier.allocate(10 * SLOT_SIZE, SLOT_SIZE);
+		for (int key = 0; key < 15; key++) {
+			tier.put(key, 0, 1_000, new byte[] { (byte) key });
+		}
+		assertEquals(10, tier.size());
+		assertNull(tier.take(4, 0));
+		assertArrayEquals(new byte[] { 5 }, tier.take(5, 0).payload);
+	}
+
+	@Test
+	void mappedTierIsWarmAfterReopening(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("pets.tier");
+		OffHeapTier tier = OffHeapTier.map(file, 10 * SLOT_SIZE, SLOT_SIZE, 0);
+		tier.put(1, 0, 1_000, new byte[] { 1 });
+		tier.put(2, 0, 2_000, new byte[] { 2 });
+		tier.put(1, 1, 2_000, new byte[] { 3 });
+		tier.close();
+
+		tier = OffHeapTier.map(file, 10 * SLOT_SIZE, SLOT_SIZE, 1_500);
+		try {
+			assertEquals(2, tier.size());
+			OffHeapTier.Snapshot snapshot = tier.take(1, 1_500);
+			assertEquals(1, snapshot.version);
+			assertArrayEquals(new byte[] { 3 }, snapshot.payload);
+		}
+		finally {
+			tier.close();
+		}
+
+		tier = OffHeapTier.map(file, 10 * SLOT_SIZE, SLOT_SIZE, 2_000);
+		try {
+			assertEquals(0, tier.size());
+		}
+		finally {
+			tier.close();
+		}
+	}
+
+}
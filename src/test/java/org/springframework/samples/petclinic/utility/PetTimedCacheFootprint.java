@@ -0,0 +1,59 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import org.springframework.samples.petclinic.owner.Pet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports the heap used per cached pet by the store of {@link PetTimedCache}, excluding
+ * the pets themselves, next to the two parallel {@code ConcurrentHashMap}s the cache
+ * used to keep (one from id to deadline, one from id to pet). The maps were keyed by the
+ * id of the pet, which the pet retains anyway; the store is keyed by the id the caller
+ * looked up, a separate box, which is counted for entries that keep it. Run with
+ * {@code -Djdk.attach.allowAttachSelf} on JDK 9 and later.
+ */
+public class PetTimedCacheFootprint {
+
+	public static void main(String[] args) {
+		int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+		Pet[] pets = new Pet[entries];
+		for (int i = 0; i < entries; i++) {
+			pets[i] = new Pet();
+			pets[i].setId(i + 1);
+		}
+		long petsSize = GraphLayout.parseInstance((Object[]) pets).totalSize();
+
+		Map<Integer, Long> timeMap = new ConcurrentHashMap<>();
+		Map<Integer, Pet> actualMap = new ConcurrentHashMap<>();
+		for (Pet pet : pets) {
+			timeMap.put(pet.getId(), System.currentTimeMillis());
+			actualMap.put(pet.getId(), pet);
+		}
+		long twoMaps = GraphLayout.parseInstance(timeMap, actualMap).totalSize() - petsSize;
+
+		NodeMap<Integer, TimedCache.Entry<Integer, Pet>> boxedStore = new NodeMap<>();
+		for (Pet pet : pets) {
+			Integer requestedId = Integer.valueOf(pet.getId().intValue());
+			boxedStore.put(new TimedCache.KeyEntry<>(requestedId, pet, PetTimedCache.weigh(pet), System.nanoTime()));
+		}
+		long boxedKeys = GraphLayout.parseInstance(boxedStore).totalSize() - petsSize;
+
+		NodeMap<Integer, TimedCache.Entry<Integer, Pet>> store = new NodeMap<>();
+		for (Pet pet : pets) {
+			store.put(TimedCache.Entry.of(pet.getId().intValue(), pet, PetTimedCache.weigh(pet), System.nanoTime()));
+		}
+		long intKeys = GraphLayout.parseInstance(store).totalSize() - petsSize;
+
+		System.out.println(VM.current().details());
+		System.out.println(ClassLayout.parseClass(TimedCache.IntKeyEntry.class).toPrintable());
+		System.out.printf("%,d entries%n", entries);
+		System.out.printf("two ConcurrentHashMaps      : %6.1f bytes per entry%n", (double) twoMaps / entries);
+		System.out.printf("NodeMap, boxed key entries  : %6.1f bytes per entry%n", (double) boxedKeys / entries);
+		System.out.printf("NodeMap, int key entries    : %6.1f bytes per entry%n", (double) intKeys / entries);
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.springframework.samples.petclinic.utility;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link PetTimedCache} hit. Run with the GC profiler, which this class
+ * enables, the {@code gc.alloc.rate.norm} of {@code hit} should be 0 B/op: the hit path
+ * records statistics in striped counters and only builds a trace event for sampled
+ * operations when debug logging is on. Logback logs at debug level until it is
+ * configured, so the setup sets the level of the {@link TimedCache} logger to info, as
+ * the application does.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.PetTimedCacheHitBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class PetTimedCacheHitBenchmark {
+
+	private static final int PETS = 1 << 10;
+
+	private PetTimedCache cache;
+
+	@Setup
+	public void setup() {
+		((Logger) LoggerFactory.getLogger(TimedCache.class)).setLevel(Level.INFO);
+		PetCacheProperties properties = new PetCacheProperties();
+		properties.setExpiry(Duration.ofHours(1));
+		cache = new PetTimedCache(new InMemoryPetRepository(), properties, System::nanoTime, Runnable::run);
+		for (int id = 0; id < PETS; id++) {
+			cache.get(id);
+		}
+	}
+
+	@Benchmark
+	public Pet hit(Cursor cursor) {
+		return cache.get(cursor.next());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PetTimedCacheHitBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int id;
+
+		int next() {
+			id = (id + 1) & (PETS - 1);
+			return id;
+		}
+
+	}
+
+	static final class InMemoryPetRepository implements PetRepository {
+
+		@Override
+		public List<PetType> findPetTypes() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Pet findById(Integer id) {
+			Pet pet = new Pet();
+			pet.setId(id);
+			return pet;
+		}
+
+		@Override
+		public List<Pet> findByIds(Collection<Integer> ids) {
+			List<Pet> pets = new ArrayList<>(ids.size());
+			for (Integer id : ids) {
+				pets.add(findById(id));
+			}
+			return pets;
+		}
+
+		@Override
+		public List<Integer> findAllIds() {
+			List<Integer> ids = new ArrayList<>(PETS);
+			for (int id = 0; id < PETS; id++) {
+				ids.add(id);
+			}
+			return ids;
+		}
+
+		@Override
+		public Pet save(Pet pet) {
+			return pet;
+		}
+
+	}
+
+}
@@ -1,7 +1,446 @@
 package org.springframework.samples.petclinic.utility;
 
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
-// todo
 class PetTimedCacheTest {
+
+	private static final long EXPIRY_MILLIS = 10_000;
+
+	private static final int UNKNOWN_PET_ID = -1;
+
+	private final AtomicLong ticker = new AtomicLong();
+
+	private PetRepository repository;
+
+	private PetTimedCache cache;
+
+	@BeforeEach
+	void setup() {
+		repository = mock(PetRepository.class);
+		when(repository.findById(anyInt())).thenAnswer(invocation -> {
+			Pet pet = new Pet();
+			pet.setId(invocation.getArgument(0));
+			return pet;
+		});
+		when(repository.findById(UNKNOWN_PET_ID)).thenReturn(null);
+		cache = new PetTimedCache(repository, properties(100), ticker::get, Runnable::run);
+	}
+
+	@Test
+	void hitDoesNotQueryRepository() {
+		Pet pet = cache.get(1);
+		assertSame(pet, cache.get(1));
+		verify(repository, times(1)).findById(1);
+	}
+
+	@Test
+	void entryIsNotServedPastItsDeadline() {
+		cache.get(1);
+		advance(EXPIRY_MILLIS - 1);
+		cache.get(1);
+		verify(repository, times(1)).findById(1);
+
+		advance(1);
+		cache.get(1);
+		verify(repository, times(2)).findById(1);
+	}
+
+	@Test
+	void cleanUpRemovesOnlyExpiredEntries() {
+		cache.get(1);
+		cache.get(2);
+		advance(EXPIRY_MILLIS / 2);
+		cache.get(3);
+
+		advance(EXPIRY_MILLIS / 2 + TimeUnit.NANOSECONDS.toMillis(TimerWheel.SPANS[0]));
+		cache.cleanUp();
+		assertEquals(1, cache.size());
+
+		advance(EXPIRY_MILLIS);
+		cache.cleanUp();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void missForUnknownPetIsNotCached() {
+		assertNull(cache.get(UNKNOWN_PET_ID));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void missForUnknownPetIsRememberedForTheNegativeExpiry() {
+		PetCacheProperties properties = properties(100);
+		properties.setNegativeExpiry(Duration.ofSeconds(1));
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+
+		assertNull(cache.get(UNKNOWN_PET_ID));
+		assertNull(cache.get(UNKNOWN_PET_ID));
+		verify(repository, times(1)).findById(UNKNOWN_PET_ID);
+
+		advance(1_000);
+		assertNull(cache.get(UNKNOWN_PET_ID));
+		verify(repository, times(2)).findById(UNKNOWN_PET_ID);
+	}
+
+	@Test
+	void saveReplacesAnAbsentPet() {
+		PetCacheProperties properties = properties(100);
+		properties.setNegativeExpiry(Duration.ofSeconds(1));
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+		assertNull(cache.get(UNKNOWN_PET_ID));
+
+		Pet saved = pet(UNKNOWN_PET_ID, 0);
+		when(repository.save(any(Pet.class))).thenReturn(saved);
+		cache.save(saved);
+		assertSame(saved, cache.get(UNKNOWN_PET_ID));
+	}
+
+	@Test
+	void getAllLoadsTheMissesWithOneQueryInIdOrder() {
+		stubFindByIds();
+		Pet cached = cache.get(2);
+		Map<Integer, Pet> pets = cache.getAll(Arrays.asList(3, UNKNOWN_PET_ID, 2, 1, 3));
+
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(pets.keySet()));
+		assertSame(cached, pets.get(2));
+		verify(repository, times(1)).findByIds(Arrays.asList(UNKNOWN_PET_ID, 1, 3));
+		assertSame(pets.get(3), cache.get(3));
+		verify(repository, never()).findById(3);
+	}
+
+	@Test
+	void getAllChunksLargeIdSets() {
+		stubFindByIds();
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 2 * PetTimedCache.MAX_IDS_PER_QUERY + 1; id++) {
+			ids.add(id);
+		}
+		cache = new PetTimedCache(repository, properties(10_000), ticker::get, Runnable::run);
+
+		assertEquals(ids.size(), cache.getAll(ids).size());
+		verify(repository, times(3)).findByIds(anyCollection());
+	}
+
+	@Test
+	void sizeIsBounded() {
+		for (int id = 1; id <= 1_000; id++) {
+			cache.get(id);
+		}
+		assertEquals(100, cache.size());
+	}
+
+	@Test
+	void weightIsBounded() {
+		PetCacheProperties properties = properties(100);
+		properties.setMaximumWeight(DataSize.ofBytes(10 * PetTimedCache.weigh(new Pet())));
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+		for (int id = 1; id <= 100; id++) {
+			cache.get(id);
+		}
+		assertEquals(10, cache.size());
+		assertTrue(cache.weightedSize() <= properties.getMaximumWeight().toBytes());
+	}
+
+	@Test
+	void frequentlyReadPetsSurviveABulkScan() {
+		for (int round = 0; round < 5; round++) {
+			for (int id = 1; id <= 50; id++) {
+				cache.get(id);
+			}
+		}
+		for (int id = 1_000; id < 3_000; id++) {
+			cache.get(id);
+			cache.get(1 + id % 50);
+		}
+		for (int id = 1; id <= 50; id++) {
+			cache.get(id);
+			verify(repository, times(1)).findById(id);
+		}
+	}
+
+	@Test
+	void concurrentMissesShareOneLoadPerExpiry() throws Exception {
+		int threads = 32;
+		AtomicReference<CountDownLatch> release = new AtomicReference<>();
+		when(repository.findById(1)).thenAnswer(invocation -> {
+			release.get().await(5, TimeUnit.SECONDS);
+			Pet pet = new Pet();
+			pet.setId(1);
+			return pet;
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int expiry = 1; expiry <= 3; expiry++) {
+				release.set(new CountDownLatch(1));
+				CountDownLatch started = new CountDownLatch(threads);
+				List<Future<Pet>> results = new ArrayList<>();
+				for (int i = 0; i < threads; i++) {
+					results.add(executor.submit(() -> {
+						started.countDown();
+						return cache.get(1);
+					}));
+				}
+				started.await();
+				Thread.sleep(50);
+				release.get().countDown();
+				for (Future<Pet> result : results) {
+					assertEquals(1, result.get(5, TimeUnit.SECONDS).getId());
+				}
+				verify(repository, times(expiry)).findById(1);
+				advance(EXPIRY_MILLIS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void failedLoadIsPropagatedAndNotCached() {
+		when(repository.findById(1)).thenThrow(new IllegalStateException("database down"));
+		assertThrows(IllegalStateException.class, () -> cache.get(1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void readNearExpiryRefreshesInTheBackground() {
+		PetCacheProperties properties = properties(100);
+		properties.setRefreshAhead(Duration.ofSeconds(2));
+		List<Runnable> refreshes = new ArrayList<>();
+		cache = new PetTimedCache(repository, properties, ticker::get, refreshes::add);
+
+		Pet original = cache.get(1);
+		advance(EXPIRY_MILLIS - 3_000);
+		assertSame(original, cache.get(1));
+		assertTrue(refreshes.isEmpty());
+
+		advance(2_000);
+		assertSame(original, cache.get(1));
+		assertSame(original, cache.get(1));
+		assertEquals(1, refreshes.size());
+
+		refreshes.get(0).run();
+		advance(2_000);
+		Pet refreshed = cache.get(1);
+		assertNotSame(original, refreshed);
+		verify(repository, times(2)).findById(1);
+	}
+
+	@Test
+	void errorInARefreshFailsTheReadsWaitingForIt() throws Exception {
+		PetCacheProperties properties = properties(100);
+		properties.setRefreshAhead(Duration.ofSeconds(2));
+		List<Runnable> refreshes = new ArrayList<>();
+		cache = new PetTimedCache(repository, properties, ticker::get, refreshes::add);
+		cache.get(1);
+		advance(EXPIRY_MILLIS - 1_000);
+		cache.get(1);
+		CountDownLatch refreshing = new CountDownLatch(1);
+		CountDownLatch failing = new CountDownLatch(1);
+		when(repository.findById(1)).thenAnswer(invocation -> {
+			refreshing.countDown();
+			failing.await();
+			throw new Error("loader failed");
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> refresh = executor.submit(refreshes.get(0));
+			assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+			advance(2_000);
+			// the expired pet is read while the refresh is in flight, so the read waits
+			Future<Pet> read = executor.submit(() -> cache.get(1));
+			Thread.sleep(100);
+			failing.countDown();
+			assertThrows(ExecutionException.class, () -> refresh.get(5, TimeUnit.SECONDS));
+			assertThrows(ExecutionException.class, () -> read.get(5, TimeUnit.SECONDS));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void staleValueIsServedWhileTheReloadFails() {
+		PetCacheProperties properties = properties(100);
+		properties.setStaleGracePeriod(Duration.ofSeconds(30));
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+
+		Pet original = cache.get(1);
+		when(repository.findById(1)).thenThrow(new IllegalStateException("database down"));
+		advance(EXPIRY_MILLIS + 20_000);
+		assertSame(original, cache.get(1));
+
+		advance(10_000);
+		assertThrows(IllegalStateException.class, () -> cache.get(1));
+	}
+
+	@Test
+	void saveReplacesTheCachedPet() {
+		cache.get(1);
+		Pet saved = pet(1, 1);
+		when(repository.save(any(Pet.class))).thenReturn(saved);
+		cache.save(pet(1, 0));
+		assertSame(saved, cache.get(1));
+		verify(repository, times(1)).findById(1);
+	}
+
+	@Test
+	void loadOfAnOlderVersionDoesNotOverwriteASave() {
+		PetCacheProperties properties = properties(100);
+		properties.setRefreshAhead(Duration.ofSeconds(2));
+		List<Runnable> refreshes = new ArrayList<>();
+		cache = new PetTimedCache(repository, properties, ticker::get, refreshes::add);
+		when(repository.findById(1)).thenReturn(pet(1, 0));
+
+		cache.get(1);
+		advance(EXPIRY_MILLIS - 1_000);
+		cache.get(1);
+		Pet saved = pet(1, 1);
+		when(repository.save(any(Pet.class))).thenReturn(saved);
+		cache.save(pet(1, 0));
+
+		// the refresh read the database before the save committed
+		refreshes.get(0).run();
+		assertSame(saved, cache.get(1));
+	}
+
+	@Test
+	void adaptiveExpiryKeepsUnwrittenPetsLongerThanSavedOnes() {
+		PetCacheProperties properties = properties(100);
+		properties.getAdaptiveExpiry().setEnabled(true);
+		properties.getAdaptiveExpiry().setMinimum(Duration.ofSeconds(1));
+		properties.getAdaptiveExpiry().setMaximum(Duration.ofMinutes(1));
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+		when(repository.save(any(Pet.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(repository.findById(2)).thenReturn(pet(2, 1));
+
+		// a tenth of the 100 seconds since the cache was created
+		advance(100_000);
+		cache.get(1);
+		cache.save(pet(2, 1));
+
+		advance(1_000);
+		cache.get(1);
+		cache.get(2);
+		verify(repository, times(1)).findById(1);
+		verify(repository, times(1)).findById(2);
+
+		advance(9_000);
+		cache.get(1);
+		verify(repository, times(2)).findById(1);
+	}
+
+	@Test
+	void statsCountHitsMissesLoadsAndRemovals() {
+		cache = new PetTimedCache(repository, properties(1), ticker::get, Runnable::run);
+		cache.get(1);
+		cache.get(1);
+		cache.get(2);
+		assertNull(cache.get(UNKNOWN_PET_ID));
+		advance(EXPIRY_MILLIS + TimeUnit.NANOSECONDS.toMillis(TimerWheel.SPANS[0]));
+		cache.cleanUp();
+
+		CacheStats stats = cache.stats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(3, stats.getMissCount());
+		assertEquals(3, stats.getLoadSuccessCount());
+		assertEquals(1, stats.getRemovalCount(CacheStats.RemovalCause.SIZE));
+		assertEquals(1, stats.getRemovalCount(CacheStats.RemovalCause.EXPIRED));
+		assertEquals(2, stats.getEvictionCount());
+	}
+
+	@Test
+	void hotKeysRankTheMostReadPets() {
+		PetCacheProperties properties = properties(100);
+		properties.setEventSampleRate(1);
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+		for (int id = 1; id <= 200; id++) {
+			for (int read = 0; read < ((id % 50 == 0) ? 100 + id : 1); read++) {
+				cache.get(id);
+			}
+		}
+
+		List<HotKeys.HotKey> top = cache.hotKeys(3);
+		assertEquals(200, top.get(0).getKey());
+		assertEquals(150, top.get(1).getKey());
+		assertEquals(100, top.get(2).getKey());
+		assertTrue(top.get(0).getEstimatedReads() >= 300);
+	}
+
+	@Test
+	void evictedPetIsPromotedFromTheOffHeapTier() {
+		PetCacheProperties properties = properties(10);
+		properties.getOffHeap().setEnabled(true);
+		properties.getOffHeap().setCapacity(DataSize.ofKilobytes(64));
+		cache = new PetTimedCache(repository, properties, ticker::get, Runnable::run);
+		for (int id = 1; id <= 50; id++) {
+			cache.get(id);
+		}
+		assertEquals(10, cache.size());
+		assertEquals(40, cache.secondTierSize());
+
+		for (int id = 1; id <= 50; id++) {
+			assertEquals(id, cache.get(id).getId());
+			verify(repository, times(1)).findById(id);
+		}
+		assertTrue(cache.stats().getPromotionCount() >= 40);
+
+		advance(EXPIRY_MILLIS);
+		cache.get(1);
+		verify(repository, times(2)).findById(1);
+	}
+
+	private void stubFindByIds() {
+		when(repository.findByIds(anyCollection())).thenAnswer(invocation -> {
+			List<Pet> pets = new ArrayList<>();
+			for (Integer id : invocation.<Collection<Integer>>getArgument(0)) {
+				if (id != UNKNOWN_PET_ID) {
+					pets.add(pet(id, 0));
+				}
+			}
+			return pets;
+		});
+	}
+
+	private static Pet pet(int id, int version) {
+		Pet pet = new Pet();
+		pet.setId(id);
+		pet.setVersion(version);
+		return pet;
+	}
+
+	private static PetCacheProperties properties(long maximumSize) {
+		PetCacheProperties properties = new PetCacheProperties();
+		properties.setExpiry(Duration.ofMillis(EXPIRY_MILLIS));
+		properties.setMaximumSize(maximumSize);
+		return properties;
+	}
+
+	private void advance(long millis) {
+		ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
 }
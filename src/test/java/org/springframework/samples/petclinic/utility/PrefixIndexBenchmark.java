@@ -0,0 +1,92 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the type-ahead lookups of a {@link PrefixIndex} of two million names, for
+ * prefixes of one to three letters, and the update of a name, which copies the index.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.PrefixIndexBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class PrefixIndexBenchmark {
+
+	private static final int NAMES = 2_000_000;
+
+	private PrefixIndex index;
+
+	/** The index after every update so far, as the owner saves leave it. */
+	private PrefixIndex updated;
+
+	private String[] prefixes;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		PrefixIndex.Builder builder = PrefixIndex.builder();
+		for (int id = 1; id <= NAMES; id++) {
+			String name = name(random, 4 + random.nextInt(8));
+			builder.add(id, name, name);
+		}
+		index = builder.build();
+		updated = index;
+		prefixes = new String[1024];
+		for (int i = 0; i < prefixes.length; i++) {
+			prefixes[i] = name(random, 1 + (i % 3));
+		}
+	}
+
+	@Benchmark
+	public List<PrefixIndex.Match> find() {
+		return index.find(prefixes[ThreadLocalRandom.current().nextInt(prefixes.length)], 10);
+	}
+
+	@Benchmark
+	public List<PrefixIndex.Match> findUpdated() {
+		return updated.find(prefixes[ThreadLocalRandom.current().nextInt(prefixes.length)], 10);
+	}
+
+	@Benchmark
+	public PrefixIndex update() {
+		int id = 1 + ThreadLocalRandom.current().nextInt(NAMES);
+		updated = updated.with(id, "Franklin", "George Franklin");
+		return updated;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PrefixIndexBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static String name(Random random, int length) {
+		char[] name = new char[length];
+		for (int i = 0; i < length; i++) {
+			name[i] = (char) ('a' + random.nextInt(26));
+		}
+		name[0] = Character.toUpperCase(name[0]);
+		return new String(name);
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixIndexTest {
+
+	@Test
+	void namesAreFoundByNormalizedPrefixInOrder() {
+		PrefixIndex index = PrefixIndex.builder().add(3, "Davis", "Harold Davis").add(1, "Franklin", "George Franklin")
+				.add(2, "Davis", "Betty Davis").add(4, "M\u00fcller", "Anna M\u00fcller").build();
+		assertEquals(4, index.size());
+		assertEquals("[2=Betty Davis, 3=Harold Davis]", index.find("dav", 10).toString());
+		assertEquals("[2=Betty Davis]", index.find(" DA", 1).toString());
+		assertEquals("[4=Anna M\u00fcller]", index.find("mul", 10).toString());
+		assertEquals("[]", index.find("davisson", 10).toString());
+		assertEquals(4, index.find("", 10).size());
+		assertEquals(0, index.find("", 0).size());
+	}
+
+	@Test
+	void updatesReplaceTheNameOfAnId() {
+		PrefixIndex index = PrefixIndex.builder().add(1, "Franklin", "George Franklin").add(2, "Davis", "Betty Davis")
+				.build();
+		PrefixIndex renamed = index.with(1, "Coleman", "George Coleman").with(5, "Escobito", "Maria Escobito");
+		assertEquals("[1=George Franklin]", index.find("f", 10).toString());
+		assertEquals("[]", renamed.find("f", 10).toString());
+		assertEquals("[1=George Coleman, 2=Betty Davis, 5=Maria Escobito]", renamed.find("", 10).toString());
+		assertEquals(3, renamed.size());
+	}
+
+	@Test
+	void builderKeepsTheLastNameAddedForAnId() {
+		PrefixIndex index = PrefixIndex.builder().add(1, "Franklin", "George Franklin").add(1, "Coleman", "George Coleman")
+				.build();
+		assertEquals("[1=George Coleman]", index.find("", 10).toString());
+	}
+
+	@Test
+	void matchesASortedMapUnderRandomUpdates() {
+		Random random = new Random(42);
+		Map<Integer, String> names = new TreeMap<>();
+		PrefixIndex.Builder builder = PrefixIndex.builder();
+		for (int id = 0; id < 500; id++) {
+			String name = randomName(random);
+			names.put(id, name);
+			builder.add(id, name, name);
+		}
+		PrefixIndex index = builder.build();
+		for (int i = 0; i < 2_000; i++) {
+			int id = random.nextInt(700);
+			String name = randomName(random);
+			names.put(id, name);
+			index = index.with(id, name, name);
+			String prefix = randomName(random).substring(0, 1 + random.nextInt(2));
+			assertEquals(expected(names, prefix), ids(index.find(prefix, Integer.MAX_VALUE)));
+		}
+		assertEquals(names.size(), index.size());
+	}
+
+	@Test
+	void earlierIndexesAreUnchangedByMergedUpdates() {
+		PrefixIndex first = PrefixIndex.builder().add(1, "Franklin", "George Franklin").build();
+		PrefixIndex index = first;
+		for (int id = 2; id < 200; id++) {
+			index = index.with(id, "Davis", "Davis " + id).with(1, "Coleman", "George Coleman");
+		}
+		assertEquals(199, index.size());
+		assertEquals("[1=George Coleman]", index.find("c", 10).toString());
+		assertEquals("[2=Davis 2, 3=Davis 3]", index.find("d", 2).toString());
+		assertEquals(1, first.size());
+		assertEquals("[1=George Franklin]", first.find("", 10).toString());
+	}
+
+	private static List<Integer> expected(Map<Integer, String> names, String prefix) {
+		return names.entrySet().stream().filter(entry -> entry.getValue().startsWith(prefix))
+				.sorted(Map.Entry.<Integer, String>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+				.map(Map.Entry::getKey).collect(Collectors.toList());
+	}
+
+	private static List<Integer> ids(List<PrefixIndex.Match> matches) {
+		List<Integer> ids = new ArrayList<>();
+		matches.forEach(match -> ids.add(match.getId()));
+		return ids;
+	}
+
+	private static String randomName(Random random) {
+		char[] name = new char[3 + random.nextInt(3)];
+		for (int i = 0; i < name.length; i++) {
+			// a small alphabet makes shared prefixes and equal names common
+			name[i] = (char) ('a' + random.nextInt(3));
+		}
+		return new String(name);
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SimpleDI#getInstanceOf(Class)} on a warm container, where every
+ * lookup returns an instance created before, next to {@code getBean} of a Spring bean
+ * factory holding the same singletons.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.SimpleDIBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SimpleDIBenchmark {
+
+	private SimpleDI container;
+
+	private DefaultListableBeanFactory beanFactory;
+
+	@Setup
+	public void setup() throws Exception {
+		container = SimpleDI.getDIContainer();
+		container.getInstanceOf(Service.class);
+		beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerBeanDefinition("repository", new RootBeanDefinition(Repository.class));
+		RootBeanDefinition service = new RootBeanDefinition(Service.class);
+		service.setAutowireMode(RootBeanDefinition.AUTOWIRE_CONSTRUCTOR);
+		beanFactory.registerBeanDefinition("service", service);
+		beanFactory.preInstantiateSingletons();
+	}
+
+	@Benchmark
+	public Object getInstanceOf() throws Exception {
+		return container.getInstanceOf(Service.class);
+	}
+
+	@Benchmark
+	public Object springGetBean() {
+		return beanFactory.getBean(Service.class);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SimpleDIBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	public static class Repository {
+
+	}
+
+	public static class Service {
+
+		final Repository repository;
+
+		public Service(Repository repository) {
+			this.repository = repository;
+		}
+
+	}
+
+}
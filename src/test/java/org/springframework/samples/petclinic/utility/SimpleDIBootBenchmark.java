@@ -0,0 +1,186 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures the wall-clock boot time of a container of 200 singletons, created one after
+ * another by lookups, and by {@link SimpleDI#initialize(ForkJoinPool)} in parallel. The
+ * singletons form {@value #LAYERS} layers of {@value #WIDTH} classes, every class
+ * depending on two classes of the layer below, every fifth one through a
+ * {@link SimpleDI.Provider}. Every class spends {@code initMicros} in its constructor,
+ * as a repository, cache or data source opening its resources would; with none, the
+ * measurement is the overhead of the container.
+ * <p>
+ * The classes are generated and compiled when the benchmark starts, which needs the
+ * Java compiler of a JDK.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.SimpleDIBootBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class SimpleDIBootBenchmark {
+
+	static final int LAYERS = 10;
+
+	static final int WIDTH = 20;
+
+	private static final String PACKAGE = "simpledi.boot";
+
+	@Param({ "0", "1000" })
+	public int initMicros;
+
+	private Path sources;
+
+	private List<Class<?>> types;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() throws Exception {
+		Bean.initNanos = TimeUnit.MICROSECONDS.toNanos(initMicros);
+		sources = Files.createTempDirectory("simpledi-boot");
+		types = compile(sources);
+		// the constructors wait rather than compute, so a layer is created at once
+		pool = new ForkJoinPool(WIDTH);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		pool.shutdown();
+		try (Stream<Path> files = Files.walk(sources)) {
+			files.sorted(Collections.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public SimpleDI sequential() throws Exception {
+		SimpleDI container = new SimpleDIContainer(Collections.emptyList());
+		for (Class<?> type : types) {
+			container.getInstanceOf(type);
+		}
+		return container;
+	}
+
+	@Benchmark
+	public SimpleDI parallel() throws Exception {
+		SimpleDI container = new SimpleDIContainer(Collections.emptyList());
+		container.registerEager(types.toArray(new Class<?>[0]));
+		container.initialize(pool);
+		return container;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SimpleDIBootBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * Generates and compiles the classes of the graph, returning them bottom layer first.
+	 */
+	private static List<Class<?>> compile(Path directory) throws Exception {
+		List<String> files = new ArrayList<>();
+		for (int layer = 0; layer < LAYERS; layer++) {
+			for (int i = 0; i < WIDTH; i++) {
+				Path file = directory.resolve(name(layer, i) + ".java");
+				Files.write(file, source(layer, i).getBytes(StandardCharsets.UTF_8));
+				files.add(file.toString());
+			}
+		}
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException("The benchmark needs the Java compiler of a JDK");
+		}
+		List<String> arguments = new ArrayList<>();
+		Collections.addAll(arguments, "-d", directory.toString(), "-cp", System.getProperty("java.class.path"));
+		arguments.addAll(files);
+		if (compiler.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+			throw new IllegalStateException("Compiling the graph failed");
+		}
+		ClassLoader loader = new URLClassLoader(new URL[] { directory.toUri().toURL() },
+				SimpleDIBootBenchmark.class.getClassLoader());
+		List<Class<?>> types = new ArrayList<>();
+		for (int layer = 0; layer < LAYERS; layer++) {
+			for (int i = 0; i < WIDTH; i++) {
+				types.add(loader.loadClass(PACKAGE + "." + name(layer, i)));
+			}
+		}
+		return types;
+	}
+
+	private static String source(int layer, int i) {
+		StringBuilder source = new StringBuilder();
+		source.append("package ").append(PACKAGE).append(";\n");
+		source.append("public class ").append(name(layer, i)).append(" extends ")
+				.append(Bean.class.getCanonicalName()).append(" {\n");
+		source.append("\tpublic ").append(name(layer, i)).append('(');
+		if (layer > 0) {
+			String second = name(layer - 1, (i + 1) % WIDTH);
+			source.append(name(layer - 1, i)).append(" first, ");
+			if (i % 5 == 0) {
+				source.append(SimpleDI.Provider.class.getCanonicalName()).append('<').append(second).append('>');
+			}
+			else {
+				source.append(second);
+			}
+			source.append(" second");
+		}
+		source.append(") {\n\t}\n}\n");
+		return source.toString();
+	}
+
+	private static String name(int layer, int i) {
+		return "Bean" + layer + "_" + i;
+	}
+
+	/**
+	 * The superclass of the generated classes, spending the initialization time.
+	 */
+	public static class Bean {
+
+		static volatile long initNanos;
+
+		public Bean() {
+			long deadline = System.nanoTime() + initNanos;
+			for (long left = initNanos; left > 0; left = deadline - System.nanoTime()) {
+				LockSupport.parkNanos(left);
+			}
+		}
+
+	}
+
+}
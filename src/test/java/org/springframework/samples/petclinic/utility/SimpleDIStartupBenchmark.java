@@ -0,0 +1,120 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.samples.petclinic.PetClinicApplication;
+
+import java.util.Collections;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold start of a batch job: the time from a fresh JVM to a wired object
+ * graph, with the {@link SimpleDIWiring} generated at compile time, with the reflective
+ * injection plans, and with the full {@link PetClinicApplication} Spring context. Every
+ * measurement runs in its own fork, so that class loading and the interpreter are part
+ * of it, as they are for a short-lived job.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.SimpleDIStartupBenchmark}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class SimpleDIStartupBenchmark {
+
+	@Benchmark
+	public Object generatedWiring() throws Exception {
+		return new SimpleDIContainer(ServiceLoader.load(SimpleDIWiring.class)).getInstanceOf(Job.class);
+	}
+
+	@Benchmark
+	public Object reflectiveWiring() throws Exception {
+		return new SimpleDIContainer(Collections.emptyList()).getInstanceOf(Job.class);
+	}
+
+	@Benchmark
+	public void springContext() {
+		ConfigurableApplicationContext context = SpringApplication.run(PetClinicApplication.class,
+				"--server.port=0");
+		context.close();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SimpleDIStartupBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Wired
+	public static class Settings {
+
+	}
+
+	@Wired
+	public static class Connections {
+
+		public Connections(Settings settings) {
+		}
+
+	}
+
+	@Wired
+	public static class Owners {
+
+		public Owners(Connections connections) {
+		}
+
+	}
+
+	@Wired
+	public static class Pets {
+
+		public Pets(Connections connections) {
+		}
+
+	}
+
+	@Wired
+	public static class Visits {
+
+		public Visits(Connections connections) {
+		}
+
+	}
+
+	@Wired
+	public static class Reminders {
+
+		public Reminders(Owners owners, Pets pets, Visits visits) {
+		}
+
+	}
+
+	@Wired
+	public static class Mailer {
+
+		public Mailer(Settings settings) {
+		}
+
+	}
+
+	@Wired
+	public static class Job {
+
+		public Job(Reminders reminders, Mailer mailer, Settings settings) {
+		}
+
+	}
+
+}
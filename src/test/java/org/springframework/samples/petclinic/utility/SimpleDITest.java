@@ -1,16 +1,23 @@
 package org.springframework.samples.petclinic.utility;
 
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.springframework.samples.petclinic.owner.PetRepository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 
-// todo pass these tests
-@Disabled
 class SimpleDITest {
 
 	@Test
@@ -33,4 +40,272 @@ class SimpleDITest {
 		});
 		assertNotNull(simpleDi.getInstanceOf(PetRepository.class));
 	}
+
+	@Test
+	void providerFunctionIsCalledOnce() throws Exception {
+		SimpleDI container = SimpleDI.getDIContainer();
+		AtomicInteger calls = new AtomicInteger();
+		container.provideByAConstructorFunction(Clock.class, () -> new Clock(calls.incrementAndGet()));
+		assertSame(container.getInstanceOf(Clock.class), container.getInstanceOf(Clock.class));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void constructorsAreInjectedWithSingletons() throws Exception {
+		SimpleDI container = SimpleDI.getDIContainer();
+		Report report = (Report) container.getInstanceOf(Report.class);
+		Summary summary = (Summary) container.getInstanceOf(Summary.class);
+		assertSame(summary, report.summary);
+		assertSame(summary.source, report.source);
+		assertSame(report, container.getInstanceOf(Report.class));
+	}
+
+	@Test
+	void wiredClassesAreCreatedByTheGeneratedWiring() throws Exception {
+		SimpleDIContainer container = (SimpleDIContainer) SimpleDI.getDIContainer();
+		assertTrue(container.isWired(Report.class));
+		assertTrue(container.isWired(Summary.class));
+		assertFalse(container.isWired(Source.class));
+
+		SimpleDIContainer reflective = new SimpleDIContainer(Collections.emptyList());
+		Report report = (Report) reflective.getInstanceOf(Report.class);
+		assertSame(reflective.getInstanceOf(Source.class), report.source);
+	}
+
+	@Test
+	void concurrentLookupsCreateOneInstance() throws Exception {
+		SimpleDI container = SimpleDI.getDIContainer();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<?>[] lookups = new Future<?>[32];
+			for (int i = 0; i < lookups.length; i++) {
+				lookups[i] = executor.submit(() -> container.getInstanceOf(Counted.class));
+			}
+			for (Future<?> lookup : lookups) {
+				assertSame(lookups[0].get(), lookup.get());
+			}
+			assertEquals(1, Counted.created.get());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void unresolvableTypesAndCyclesAreReported() throws Exception {
+		SimpleDI container = SimpleDI.getDIContainer();
+		assertThrows(IllegalStateException.class, () -> container.getInstanceOf(Runnable.class));
+		IllegalStateException ex = assertThrows(IllegalStateException.class,
+				() -> container.getInstanceOf(Chicken.class));
+		assertTrue(ex.getMessage().contains("Chicken -> "), ex.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> container.provideByInstance(Clock.class, "now"));
+	}
+
+	@Test
+	void providersCreateTheirTypeOnFirstUse() throws Exception {
+		SimpleDI container = new SimpleDIContainer();
+		Reminders reminders = (Reminders) container.getInstanceOf(Reminders.class);
+		assertEquals(0, Archive.created.get());
+		Archive archive = reminders.archive.get();
+		assertSame(container.getInstanceOf(Archive.class), archive);
+		assertSame(archive, reminders.archive.get());
+		assertEquals(1, Archive.created.get());
+	}
+
+	@Test
+	void providersBreakCycles() throws Exception {
+		SimpleDI container = new SimpleDIContainer();
+		Nest nest = (Nest) container.getInstanceOf(Nest.class);
+		assertSame(nest, nest.hen.nest.get());
+	}
+
+	@Test
+	void analysisOrdersTypesAfterTheirDependencies() {
+		SimpleDIContainer container = new SimpleDIContainer();
+		assertEquals(Arrays.asList(Source.class, Summary.class, Report.class),
+				new ArrayList<>(container.analyze(Collections.singleton(Report.class)).keySet()));
+		assertEquals(Arrays.asList(Hen.class, Nest.class),
+				new ArrayList<>(container.analyze(Collections.singleton(Nest.class)).keySet()));
+	}
+
+	@Test
+	void initializeCreatesIndependentTypesInParallel() throws Exception {
+		SimpleDI container = new SimpleDIContainer();
+		container.registerEager(Both.class);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			container.initialize(pool);
+		}
+		finally {
+			pool.shutdown();
+		}
+		Both both = (Both) container.getInstanceOf(Both.class);
+		assertSame(container.getInstanceOf(Left.class), both.left);
+		assertSame(container.getInstanceOf(Right.class), both.right);
+	}
+
+	@Test
+	void initializeReportsCyclesBeforeCreatingTypes() throws Exception {
+		SimpleDI container = new SimpleDIContainer();
+		AtomicInteger calls = new AtomicInteger();
+		container.provideByAConstructorFunction(Clock.class, () -> new Clock(calls.incrementAndGet()));
+		container.registerEager(Clock.class, Chicken.class);
+		IllegalStateException ex = assertThrows(IllegalStateException.class, container::initialize);
+		assertTrue(ex.getMessage().contains("Chicken -> "), ex.getMessage());
+		assertEquals(0, calls.get());
+	}
+
+	@Test
+	void providerFunctionsLookingUpTheirOwnTypeAreReported() throws Exception {
+		SimpleDI container = new SimpleDIContainer();
+		container.provideByAConstructorFunction(Clock.class, () -> container.getInstanceOf(Clock.class));
+		IllegalStateException ex = assertThrows(IllegalStateException.class,
+				() -> container.getInstanceOf(Clock.class));
+		assertTrue(ex.getMessage().startsWith("Dependency cycle: "), ex.getMessage());
+	}
+
+	static class Clock {
+
+		final int id;
+
+		Clock(int id) {
+			this.id = id;
+		}
+
+	}
+
+	static class Source {
+
+	}
+
+	@Wired
+	static class Summary {
+
+		final Source source;
+
+		Summary(Source source) {
+			this.source = source;
+		}
+
+	}
+
+	@Wired
+	static class Report {
+
+		final Source source;
+
+		final Summary summary;
+
+		Report(Source source, Summary summary) {
+			this.source = source;
+			this.summary = summary;
+		}
+
+	}
+
+	static class Counted {
+
+		static final AtomicInteger created = new AtomicInteger();
+
+		Counted() {
+			created.incrementAndGet();
+			try {
+				Thread.sleep(10);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	static class Chicken {
+
+		Chicken(Egg egg) {
+		}
+
+	}
+
+	static class Egg {
+
+		Egg(Chicken chicken) {
+		}
+
+	}
+
+	static class Archive {
+
+		static final AtomicInteger created = new AtomicInteger();
+
+		Archive() {
+			created.incrementAndGet();
+		}
+
+	}
+
+	@Wired
+	static class Reminders {
+
+		final SimpleDI.Provider<Archive> archive;
+
+		Reminders(SimpleDI.Provider<Archive> archive) {
+			this.archive = archive;
+		}
+
+	}
+
+	static class Hen {
+
+		final SimpleDI.Provider<Nest> nest;
+
+		Hen(SimpleDI.Provider<Nest> nest) {
+			this.nest = nest;
+		}
+
+	}
+
+	static class Nest {
+
+		final Hen hen;
+
+		Nest(Hen hen) {
+			this.hen = hen;
+		}
+
+	}
+
+	/**
+	 * Created by two threads at once, or not at all.
+	 */
+	static class Left {
+
+		static final CyclicBarrier barrier = new CyclicBarrier(2);
+
+		Left() throws Exception {
+			barrier.await(10, TimeUnit.SECONDS);
+		}
+
+	}
+
+	static class Right {
+
+		Right() throws Exception {
+			Left.barrier.await(10, TimeUnit.SECONDS);
+		}
+
+	}
+
+	static class Both {
+
+		final Left left;
+
+		final Right right;
+
+		Both(Left left, Right right) {
+			this.left = left;
+			this.right = right;
+		}
+
+	}
+
 }
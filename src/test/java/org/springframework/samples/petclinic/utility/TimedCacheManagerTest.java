@@ -0,0 +1,119 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimedCacheManagerTest {
+
+	private final CacheScheduler scheduler = new CacheScheduler(1, 10);
+
+	private TimedCacheManager cacheManager;
+
+	@BeforeEach
+	void setup() {
+		TimedCachesProperties properties = new TimedCachesProperties();
+		TimedCacheProperties owners = new TimedCacheProperties();
+		owners.setNegativeExpiry(Duration.ofSeconds(5));
+		properties.getCaches().put("owners", owners);
+		cacheManager = new TimedCacheManager(properties, scheduler);
+		cacheManager.afterPropertiesSet();
+	}
+
+	@AfterEach
+	void close() throws Exception {
+		cacheManager.close();
+		scheduler.stop();
+	}
+
+	@Test
+	void configuredCachesAreCreatedUpfront() {
+		assertTrue(cacheManager.getCacheNames().contains("owners"));
+		assertNotNull(cacheManager.getCache("visits"));
+		assertTrue(cacheManager.getCacheNames().contains("visits"));
+	}
+
+	@Test
+	void readsReturnCopiesOfTheCachedValue() {
+		Cache cache = cacheManager.getCache("owners");
+		List<String> pets = new ArrayList<>();
+		pets.add("Leo");
+		cache.put(1, pets);
+		pets.add("Basil");
+
+		@SuppressWarnings("unchecked")
+		List<String> cached = (List<String>) cache.get(1).get();
+		assertEquals(1, cached.size());
+		cached.add("Rosy");
+		assertEquals(1, ((List<?>) cache.get(1).get()).size());
+	}
+
+	@Test
+	void nullResultsAreCachedAndEvictionRemovesThem() {
+		Cache cache = cacheManager.getCache("owners");
+		AtomicInteger loads = new AtomicInteger();
+		assertNull(cache.get(1, () -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		assertNull(cache.get(1, loads::incrementAndGet));
+		assertEquals(1, loads.get());
+
+		cache.evict(1);
+		assertNull(cache.get(1));
+	}
+
+	@Test
+	void nullResultsAreNotCachedWithoutNegativeExpiry() {
+		Cache cache = cacheManager.getCache("visits");
+		AtomicInteger loads = new AtomicInteger();
+		assertNull(cache.get(1, () -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		cache.put(2, null);
+		assertNull(cache.get(2));
+		assertEquals(2, cache.get(1, loads::incrementAndGet));
+	}
+
+	@Test
+	void failedLoadIsWrapped() {
+		Cache cache = cacheManager.getCache("owners");
+		assertThrows(Cache.ValueRetrievalException.class, () -> cache.get(1, () -> {
+			throw new Exception("database down");
+		}));
+	}
+
+	@Test
+	void schedulerRefreshesOnlyWhileRunning() throws Exception {
+		TimedCacheProperties properties = new TimedCacheProperties();
+		properties.setExpiry(Duration.ofMillis(500));
+		properties.setRefreshAhead(Duration.ofMillis(500));
+		AtomicInteger loads = new AtomicInteger();
+		TimedCache<String, Integer> cache = TimedCache.<String, Integer>builder("loads", properties)
+				.loader(key -> loads.incrementAndGet()).scheduler(scheduler).build();
+
+		assertEquals(1, cache.get("george"));
+		assertEquals(1, cache.get("george"));
+		assertEquals(1, loads.get());
+
+		scheduler.start();
+		assertEquals(1, cache.get("george"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while ((loads.get() < 2) && (System.nanoTime() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, loads.get());
+		cache.close();
+	}
+
+}
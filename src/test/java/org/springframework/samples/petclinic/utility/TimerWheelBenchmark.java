@@ -0,0 +1,112 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of one expiration sweep of the {@link TimerWheel} against the full
+ * scan performed by the former polling cleaner, as the number of live entries grows.
+ * Every sweep expires the same number of entries, so a flat score across
+ * {@code size} means live entries are not visited.
+ * <p>
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.springframework.samples.petclinic.utility.TimerWheelBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimerWheelBenchmark {
+
+	private static final int EXPIRING_PER_TICK = 100;
+
+	private static final long TICK = TimerWheel.SPANS[0];
+
+	@Param({ "1000", "100000", "1000000" })
+	int size;
+
+	private TimerWheel wheel;
+
+	private long nanos;
+
+	private Map<Integer, Long> timeMap;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		nanos = 0L;
+		wheel = new TimerWheel(nanos, node -> {
+			// re-arm so that every tick has the same amount of expiration work
+			((Timer) node).deadline += TICK;
+			return false;
+		});
+		for (int i = 0; i < EXPIRING_PER_TICK; i++) {
+			wheel.schedule(new Timer(TICK));
+		}
+		long liveDeadline = TimeUnit.DAYS.toNanos(30);
+		for (int i = EXPIRING_PER_TICK; i < size; i++) {
+			wheel.schedule(new Timer(liveDeadline));
+		}
+
+		timeMap = new ConcurrentHashMap<>();
+		for (int i = 0; i < size; i++) {
+			timeMap.put(i, (i < EXPIRING_PER_TICK) ? 0L : Long.MAX_VALUE / 2);
+		}
+	}
+
+	@Benchmark
+	public void timerWheelSweep() {
+		nanos += TICK;
+		wheel.advance(nanos);
+	}
+
+	@Benchmark
+	public int pollingScanSweep() {
+		long currentTime = System.currentTimeMillis();
+		int expired = 0;
+		for (Integer key : timeMap.keySet()) {
+			if (currentTime > timeMap.get(key)) {
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TimerWheelBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	static final class Timer extends TimerWheel.Node {
+
+		long deadline;
+
+		Timer(long deadline) {
+			this.deadline = deadline;
+		}
+
+		@Override
+		long getDeadline() {
+			return deadline;
+		}
+
+	}
+
+}
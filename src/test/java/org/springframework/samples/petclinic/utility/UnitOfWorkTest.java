@@ -0,0 +1,86 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.samples.petclinic.model.BaseEntity;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitOfWorkTest {
+
+	private final AtomicInteger queries = new AtomicInteger();
+
+	private final Function<Integer, BaseEntity> loader = id -> {
+		queries.incrementAndGet();
+		if (id < 0) {
+			return null;
+		}
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	};
+
+	@AfterEach
+	void resetRequest() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	void lookupsOutsideOfARequestGoToTheLoader() {
+		assertNull(UnitOfWork.current());
+		UnitOfWork.find(BaseEntity.class, 1, loader);
+		UnitOfWork.find(BaseEntity.class, 1, loader);
+		assertEquals(2, queries.get());
+	}
+
+	@Test
+	void entityIsLoadedOncePerRequest() {
+		UnitOfWork unitOfWork = bindUnitOfWork();
+		BaseEntity first = UnitOfWork.find(BaseEntity.class, 1, loader);
+		assertSame(first, UnitOfWork.find(BaseEntity.class, 1, loader));
+		UnitOfWork.find(BaseEntity.class, 2, loader);
+
+		assertEquals(2, queries.get());
+		assertEquals(2, unitOfWork.getLoads());
+		assertEquals(1, unitOfWork.getHits());
+	}
+
+	@Test
+	void evictedAndMissingEntitiesAreLoadedAgain() {
+		UnitOfWork unitOfWork = bindUnitOfWork();
+		BaseEntity first = UnitOfWork.find(BaseEntity.class, 1, loader);
+		UnitOfWork.evict(BaseEntity.class, 1);
+		assertNotSame(first, UnitOfWork.find(BaseEntity.class, 1, loader));
+
+		assertNull(UnitOfWork.find(BaseEntity.class, -1, loader));
+		assertNull(UnitOfWork.find(BaseEntity.class, -1, loader));
+		assertEquals(4, unitOfWork.getLoads());
+		assertEquals(0, unitOfWork.getHits());
+	}
+
+	@Test
+	void statementsAreCountedApartFromLoaderCalls() {
+		UnitOfWork unitOfWork = bindUnitOfWork();
+		UnitOfWork.find(BaseEntity.class, 1, loader);
+		unitOfWork.recordStatement();
+		unitOfWork.recordStatement();
+
+		assertEquals(1, unitOfWork.getLoads());
+		assertEquals(2, unitOfWork.getStatements());
+	}
+
+	private UnitOfWork bindUnitOfWork() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		UnitOfWork unitOfWork = new UnitOfWork();
+		request.setAttribute(UnitOfWork.ATTRIBUTE, unitOfWork);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		return unitOfWork;
+	}
+
+}